@@ -18,6 +18,12 @@ CREATE TABLE IF NOT EXISTS productos (
     fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+CREATE TABLE IF NOT EXISTS reservas_stock (
+    referencia VARCHAR(100) PRIMARY KEY,
+    liberada BOOLEAN NOT NULL DEFAULT false,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 CREATE INDEX idx_productos_activo ON productos(activo);
 CREATE INDEX idx_productos_stock ON productos(stock);
 
@@ -72,9 +78,12 @@ CREATE TABLE IF NOT EXISTS pedidos (
     cliente VARCHAR(255) NOT NULL,
     fecha TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     total DECIMAL(10,2) NOT NULL,
-    estado VARCHAR(50) DEFAULT 'PENDIENTE'
+    estado VARCHAR(50) DEFAULT 'PENDIENTE',
+    version INTEGER NOT NULL DEFAULT 0
 );
 
+ALTER TABLE pedidos ADD COLUMN IF NOT EXISTS version INTEGER NOT NULL DEFAULT 0;
+
 CREATE TABLE IF NOT EXISTS detalle_pedidos (
     id SERIAL PRIMARY KEY,
     pedido_id INTEGER NOT NULL,
@@ -84,9 +93,59 @@ CREATE TABLE IF NOT EXISTS detalle_pedidos (
     FOREIGN KEY (pedido_id) REFERENCES pedidos(id) ON DELETE CASCADE
 );
 
+CREATE TABLE IF NOT EXISTS claves_idempotencia (
+    clave VARCHAR(255) PRIMARY KEY,
+    pedido_id INTEGER REFERENCES pedidos(id) ON DELETE SET NULL,
+    respuesta TEXT,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS outbox_eventos (
+    id BIGSERIAL PRIMARY KEY,
+    tipo VARCHAR(100) NOT NULL,
+    agregado_id BIGINT NOT NULL,
+    payload TEXT NOT NULL,
+    estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE',
+    intentos INTEGER NOT NULL DEFAULT 0,
+    ultimo_error TEXT,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    disponible_desde TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS sagas_pedido (
+    pedido_id INTEGER PRIMARY KEY REFERENCES pedidos(id) ON DELETE CASCADE,
+    paso VARCHAR(30) NOT NULL,
+    reserva TEXT NOT NULL,
+    fecha_actualizacion TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS productos_replica (
+    id BIGINT PRIMARY KEY,
+    nombre VARCHAR(255),
+    descripcion TEXT,
+    precio DECIMAL(10,2),
+    stock INTEGER,
+    activo BOOLEAN NOT NULL DEFAULT true,
+    fecha_actualizacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS productos_replica_offsets (
+    particion INTEGER PRIMARY KEY,
+    offset_siguiente BIGINT NOT NULL
+);
+
 CREATE INDEX idx_pedidos_cliente ON pedidos(cliente);
 CREATE INDEX idx_pedidos_estado ON pedidos(estado);
 CREATE INDEX idx_detalle_pedido ON detalle_pedidos(pedido_id);
+CREATE INDEX IF NOT EXISTS idx_pedidos_fecha ON pedidos (fecha);
+CREATE INDEX IF NOT EXISTS idx_pedidos_cliente_id ON pedidos (cliente, id);
+CREATE INDEX IF NOT EXISTS idx_pedidos_estado_id ON pedidos (estado, id);
+CREATE INDEX IF NOT EXISTS idx_pedidos_pendientes ON pedidos (id) WHERE estado = 'PENDIENTE';
+CREATE INDEX IF NOT EXISTS idx_pedidos_recibidos ON pedidos (fecha) WHERE estado = 'RECIBIDO';
+CREATE INDEX IF NOT EXISTS idx_outbox_eventos_pendientes ON outbox_eventos (disponible_desde, id) WHERE estado = 'PENDIENTE';
+CREATE INDEX IF NOT EXISTS idx_outbox_eventos_pendientes_agregado ON outbox_eventos (agregado_id, tipo, id) WHERE estado = 'PENDIENTE';
+CREATE INDEX IF NOT EXISTS idx_sagas_pedido_en_curso ON sagas_pedido (fecha_actualizacion)
+    WHERE paso IN ('RESERVA_SOLICITADA', 'STOCK_RESERVADO', 'COMPENSACION_SOLICITADA');
 
 INSERT INTO pedidos (cliente, total, estado) VALUES
 ('Juan Perez', 469.95, 'PENDIENTE'),
@@ -15,6 +15,15 @@ CREATE TABLE IF NOT EXISTS productos (
     fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Reservas de stock aplicadas (idempotencia de POST /stock/reservations). liberada marca las
+-- reservas devueltas por POST /stock/releases; una liberación que llega antes que su reserva deja la
+-- fila ya liberada y la reserva posterior se ignora
+CREATE TABLE IF NOT EXISTS reservas_stock (
+    referencia VARCHAR(100) PRIMARY KEY,
+    liberada BOOLEAN NOT NULL DEFAULT false,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- Datos de ejemplo
 INSERT INTO productos (nombre, descripcion, precio, stock, activo) VALUES
 ('Mouse Logitech MX Master', 'Mouse inalámbrico ergonómico', 99.99, 50, true),
@@ -10,9 +10,14 @@ CREATE TABLE IF NOT EXISTS pedidos (
     cliente VARCHAR(255) NOT NULL,
     fecha TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     total DECIMAL(10,2) NOT NULL,
-    estado VARCHAR(50) DEFAULT 'PENDIENTE'
+    estado VARCHAR(50) DEFAULT 'PENDIENTE',
+    -- Se incrementa en cada UPDATE del pedido; es el ETag de GET /api/pedidos/{id}
+    version INTEGER NOT NULL DEFAULT 0
 );
 
+-- Bases creadas antes de la columna version: CREATE TABLE IF NOT EXISTS no la agrega
+ALTER TABLE pedidos ADD COLUMN IF NOT EXISTS version INTEGER NOT NULL DEFAULT 0;
+
 -- Tabla detalle_pedidos
 CREATE TABLE IF NOT EXISTS detalle_pedidos (
     id SERIAL PRIMARY KEY,
@@ -23,6 +28,78 @@ CREATE TABLE IF NOT EXISTS detalle_pedidos (
     FOREIGN KEY (pedido_id) REFERENCES pedidos(id) ON DELETE CASCADE
 );
 
+-- Índice para buscar detalles por pedido (pedido_id = ANY(...))
+CREATE INDEX IF NOT EXISTS idx_detalle_pedidos_pedido_id ON detalle_pedidos (pedido_id);
+
+-- Índice para rangos de fecha (purga de pedidos antiguos)
+CREATE INDEX IF NOT EXISTS idx_pedidos_fecha ON pedidos (fecha);
+
+-- Búsqueda por cliente o por estado con paginación por id (GET /api/pedidos/search)
+CREATE INDEX IF NOT EXISTS idx_pedidos_cliente_id ON pedidos (cliente, id);
+CREATE INDEX IF NOT EXISTS idx_pedidos_estado_id ON pedidos (estado, id);
+
+-- Índice parcial para la bandeja de pedidos pendientes, la consulta de back-office más frecuente
+CREATE INDEX IF NOT EXISTS idx_pedidos_pendientes ON pedidos (id) WHERE estado = 'PENDIENTE';
+
+-- Índice parcial para recuperar pedidos RECIBIDO que quedaron fuera de la cola de recepción
+CREATE INDEX IF NOT EXISTS idx_pedidos_recibidos ON pedidos (fecha) WHERE estado = 'RECIBIDO';
+
+-- Claves Idempotency-Key de POST /api/pedidos; se insertan en la misma transacción que el pedido
+CREATE TABLE IF NOT EXISTS claves_idempotencia (
+    clave VARCHAR(255) PRIMARY KEY,
+    pedido_id INTEGER REFERENCES pedidos(id) ON DELETE SET NULL,
+    respuesta TEXT,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Outbox: eventos confirmados junto con el pedido y publicados después por OutboxRelay
+CREATE TABLE IF NOT EXISTS outbox_eventos (
+    id BIGSERIAL PRIMARY KEY,
+    tipo VARCHAR(100) NOT NULL,
+    agregado_id BIGINT NOT NULL,
+    payload TEXT NOT NULL,
+    estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE',
+    intentos INTEGER NOT NULL DEFAULT 0,
+    ultimo_error TEXT,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    disponible_desde TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Índice parcial: el relay solo recorre eventos pendientes
+CREATE INDEX IF NOT EXISTS idx_outbox_eventos_pendientes ON outbox_eventos (disponible_desde, id) WHERE estado = 'PENDIENTE';
+-- Eventos pendientes por pedido y tipo: reclamarLote verifica que no haya uno anterior sin publicar
+CREATE INDEX IF NOT EXISTS idx_outbox_eventos_pendientes_agregado ON outbox_eventos (agregado_id, tipo, id) WHERE estado = 'PENDIENTE';
+
+-- Saga de creación de cada pedido: paso en que quedó la reserva de stock y su compensación.
+-- reserva guarda el payload enviado a ms-productos para poder liberarlo después
+CREATE TABLE IF NOT EXISTS sagas_pedido (
+    pedido_id INTEGER PRIMARY KEY REFERENCES pedidos(id) ON DELETE CASCADE,
+    paso VARCHAR(30) NOT NULL,
+    reserva TEXT NOT NULL,
+    fecha_actualizacion TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Índice parcial: el escáner de recuperación solo recorre sagas sin terminar
+CREATE INDEX IF NOT EXISTS idx_sagas_pedido_en_curso ON sagas_pedido (fecha_actualizacion)
+    WHERE paso IN ('RESERVA_SOLICITADA', 'STOCK_RESERVADO', 'COMPENSACION_SOLICITADA');
+
+-- Réplica local de productos, alimentada por el tópico producto-events
+CREATE TABLE IF NOT EXISTS productos_replica (
+    id BIGINT PRIMARY KEY,
+    nombre VARCHAR(255),
+    descripcion TEXT,
+    precio DECIMAL(10,2),
+    stock INTEGER,
+    activo BOOLEAN NOT NULL DEFAULT true,
+    fecha_actualizacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Siguiente offset de producto-events a aplicar en productos_replica, por partición
+CREATE TABLE IF NOT EXISTS productos_replica_offsets (
+    particion INTEGER PRIMARY KEY,
+    offset_siguiente BIGINT NOT NULL
+);
+
 -- Datos de ejemplo
 INSERT INTO pedidos (cliente, total, estado) VALUES
 ('Juan Perez', 469.95, 'PENDIENTE'),
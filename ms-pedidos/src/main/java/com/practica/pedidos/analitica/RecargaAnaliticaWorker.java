@@ -0,0 +1,55 @@
+package com.practica.pedidos.analitica;
+
+import com.practica.pedidos.service.AnaliticaVentasService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Carga la analítica de ventas al arrancar y la reconstruye cada intervalo-recarga, para reflejar
+ * cancelaciones, importaciones y cambios hechos por otras réplicas que no pasan por registrar.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pedidos.analitica.enabled", havingValue = "true", matchIfMissing = true)
+public class RecargaAnaliticaWorker {
+
+    private final AnaliticaVentasService analiticaVentasService;
+    private final Duration intervaloRecarga;
+
+    private Disposable suscripcion;
+
+    public RecargaAnaliticaWorker(AnaliticaVentasService analiticaVentasService,
+                                  @Value("${pedidos.analitica.intervalo-recarga:1h}") Duration intervaloRecarga) {
+        this.analiticaVentasService = analiticaVentasService;
+        this.intervaloRecarga = intervaloRecarga;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        log.info("Iniciando carga de la analítica de ventas (recarga cada {})", intervaloRecarga);
+        suscripcion = Flux.interval(Duration.ZERO, intervaloRecarga)
+                .onBackpressureDrop()
+                .concatMap(tick -> analiticaVentasService.recargar()
+                        .onErrorResume(error -> {
+                            log.error("Error cargando la analítica de ventas", error);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.practica.pedidos.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight por clave: las llamadas concurrentes con la misma clave comparten un único Mono en
+ * vuelo en lugar de salir cada una por la red. Un resultado exitoso se sigue reutilizando durante
+ * la ventana configurada; un error o una cancelación liberan la clave de inmediato.
+ */
+class CoalescedorSolicitudes<K, V> {
+
+    private final Map<K, Mono<V>> enVuelo = new ConcurrentHashMap<>();
+    private final Duration ventana;
+    // lider = la llamada que salió por la red; seguidor = la que se unió a una ya en vuelo
+    private final Counter lideres;
+    private final Counter seguidores;
+
+    CoalescedorSolicitudes(String nombre, Duration ventana, MeterRegistry meterRegistry) {
+        this.ventana = ventana;
+        this.lideres = Counter.builder(nombre + ".coalescing.solicitudes")
+                .description("Solicitudes por rol en el coalescing")
+                .tag("rol", "lider")
+                .register(meterRegistry);
+        this.seguidores = Counter.builder(nombre + ".coalescing.solicitudes")
+                .description("Solicitudes por rol en el coalescing")
+                .tag("rol", "seguidor")
+                .register(meterRegistry);
+        Gauge.builder(nombre + ".coalescing.en_vuelo", enVuelo, Map::size)
+                .description("Claves con una llamada en vuelo o dentro de la ventana de reutilización")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve la llamada ya registrada para la clave o registra la que produce el supplier, que
+     * solo se invoca cuando esta llamada es la líder. El registro ocurre al invocar el método, no al
+     * suscribirse, para que quien agrupa varias claves sepa de inmediato cuáles le tocan.
+     */
+    Mono<V> ejecutar(K clave, Supplier<Mono<V>> llamada) {
+        boolean[] lider = {false};
+        Mono<V> compartido = enVuelo.computeIfAbsent(clave, k -> {
+            lider[0] = true;
+            return compartir(k, llamada.get());
+        });
+        (lider[0] ? lideres : seguidores).increment();
+        return compartido;
+    }
+
+    void invalidar(K clave) {
+        enVuelo.remove(clave);
+    }
+
+    private Mono<V> compartir(K clave, Mono<V> llamada) {
+        AtomicReference<Mono<V>> registrado = new AtomicReference<>();
+        Mono<V> compartido = llamada
+                .doFinally(senal -> liberar(clave, registrado.get(), senal))
+                .cache();
+        registrado.set(compartido);
+        return compartido;
+    }
+
+    private void liberar(K clave, Mono<V> compartido, SignalType senal) {
+        if (senal != SignalType.ON_COMPLETE || ventana.isZero()) {
+            enVuelo.remove(clave, compartido);
+            return;
+        }
+        Mono.delay(ventana).subscribe(ignorado -> enVuelo.remove(clave, compartido));
+    }
+}
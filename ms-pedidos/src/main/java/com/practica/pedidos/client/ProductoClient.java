@@ -1,33 +1,89 @@
 package com.practica.pedidos.client;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.exception.ResourceNotFoundException;
+import com.practica.pedidos.plazo.Plazo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class ProductoClient {
+    // Tamaño máximo de lote por solicitud, para acotar el largo de la URL
+    private static final int IDS_POR_LOTE = 100;
+
     private final WebClient webClient;
+    // Caché acotada de productos; se invalida con los eventos de producto-events (ver ProductoEventConsumer)
+    private final Cache<Long, ProductoDTO> cache;
+    private final ResilienciaProductos resiliencia;
+    // Las consultas concurrentes por el mismo id comparten una sola llamada a ms-productos. Vale para
+    // obtenerProducto y los lotes por igual: un producto inexistente es un Mono vacío en ambos
+    private final CoalescedorSolicitudes<Long, ProductoDTO> coalescedor;
 
     public ProductoClient(WebClient.Builder webClientBuilder,
-                          @Value("${ms-productos.url:http://localhost:8081}") String productosUrl) {
+                          @Value("${ms-productos.url:http://localhost:8081}") String productosUrl,
+                          @Value("${productos.cache.max-size:10000}") long cacheMaxSize,
+                          @Value("${productos.cache.ttl:5m}") Duration cacheTtl,
+                          @Value("${productos.coalescing.ventana:100ms}") Duration ventanaCoalescing,
+                          MeterRegistry meterRegistry,
+                          ResilienciaProductos resiliencia) {
         this.webClient = webClientBuilder.baseUrl(productosUrl).build();
+        this.resiliencia = resiliencia;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        // Publica cache.gets (hit/miss), cache.evictions, cache.size, etc. en actuator
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productos");
+        this.coalescedor = new CoalescedorSolicitudes<>("productos", ventanaCoalescing, meterRegistry);
     }
 
+    /**
+     * La llamada remota se comparte con otras solicitudes y corre con su propio timeout; el plazo de
+     * la solicitud, si lo hay, solo acota cuánto espera esta.
+     * @throws ResourceNotFoundException si el producto no existe
+     */
     public Mono<ProductoDTO> obtenerProducto(Long id) {
-        return webClient.get()
-                .uri("/api/productos/{id}", id)
-                .retrieve()
-                .onStatus(status -> status.value() == HttpStatus.NOT_FOUND.value(),
-                        response -> Mono.error(new RuntimeException("Producto no encontrado con id: " + id)))
-                .onStatus(status -> status.is5xxServerError(),
-                        response -> Mono.error(new RuntimeException("Error del servidor al obtener producto: " + id)))
-                .bodyToMono(ProductoDTO.class)
-                .timeout(Duration.ofSeconds(5))
+        ProductoDTO cacheado = cache.getIfPresent(id);
+        if (cacheado != null) {
+            return Mono.just(cacheado);
+        }
+        // El 404 se convierte en vacío dentro de la llamada compartida y vuelve a ser error solo para
+        // este llamador: un lote unido a ella omite el id, como con su propia consulta
+        return Plazo.limitar(Mono.defer(() -> coalescedor.ejecutar(id, () -> obtenerProductoRemoto(id)
+                        .onErrorResume(ResourceNotFoundException.class, error -> Mono.empty())
+                        .doOnNext(producto -> cache.put(id, producto))
+                        .contextWrite(Plazo::quitar))), null, "obtener producto " + id)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Producto no encontrado con id: " + id)));
+    }
+
+    private Mono<ProductoDTO> obtenerProductoRemoto(Long id) {
+        return resiliencia.conHedging(() -> webClient.get()
+                        .uri("/api/productos/{id}", id)
+                        .retrieve()
+                        .onStatus(status -> status.value() == HttpStatus.NOT_FOUND.value(),
+                                response -> Mono.error(new ResourceNotFoundException("Producto no encontrado con id: " + id)))
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al obtener producto: " + id)))
+                        .bodyToMono(ProductoDTO.class)
+                        .timeout(Duration.ofSeconds(5)))
                 .onErrorResume(error -> {
                     if (error instanceof java.util.concurrent.TimeoutException) {
                         return Mono.error(new RuntimeException("Timeout al obtener producto: " + id, error));
@@ -36,21 +92,112 @@ public class ProductoClient {
                 });
     }
 
+    /**
+     * Obtiene varios productos con una solicitud por lote de ids en lugar de una por producto.
+     * Los productos en caché se devuelven sin ir a ms-productos; solo los faltantes viajan por HTTP.
+     * Los ids que ya están en vuelo (por obtenerProducto u otro lote) se unen a esa llamada.
+     * Los ids que no existen simplemente no aparecen en el resultado, también si se unieron a un
+     * obtenerProducto que respondió 404.
+     * @param ids ids de productos a consultar
+     * @return Flux con los productos encontrados
+     */
+    public Flux<ProductoDTO> obtenerProductos(Collection<Long> ids) {
+        List<ProductoDTO> cacheados = new ArrayList<>();
+        List<Long> faltantes = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            ProductoDTO cacheado = cache.getIfPresent(id);
+            if (cacheado != null) {
+                cacheados.add(cacheado);
+            } else {
+                faltantes.add(id);
+            }
+        }
+        Flux<ProductoDTO> remotos = Plazo.limitar(Flux.fromIterable(faltantes)
+                .buffer(IDS_POR_LOTE)
+                .flatMap(this::obtenerLoteCompartido), "obtener productos");
+        return Flux.concat(Flux.fromIterable(cacheados), remotos);
+    }
+
+    // Registra cada id en el coalescedor; solo los ids sin llamada en vuelo viajan en la solicitud del lote
+    private Flux<ProductoDTO> obtenerLoteCompartido(List<Long> ids) {
+        List<Long> propios = new ArrayList<>();
+        Mono<Map<Long, ProductoDTO>> consulta = Mono.defer(() -> obtenerLote(propios)
+                        .doOnNext(producto -> cache.put(producto.getId(), producto))
+                        .collectMap(ProductoDTO::getId))
+                .contextWrite(Plazo::quitar)
+                .cache();
+        List<Mono<ProductoDTO>> productos = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            productos.add(coalescedor.ejecutar(id, () -> {
+                propios.add(id);
+                return consulta.mapNotNull(encontrados -> encontrados.get(id));
+            }));
+        }
+        return Flux.merge(productos);
+    }
+
+    /**
+     * Catálogo completo de ms-productos, usado solo para el snapshot inicial de la réplica local.
+     */
+    public Flux<ProductoDTO> obtenerTodos() {
+        return resiliencia.proteger(webClient.get()
+                        .uri("/api/productos")
+                        .retrieve()
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al obtener el catálogo de productos")))
+                        .bodyToFlux(ProductoDTO.class)
+                        .timeout(Duration.ofSeconds(30)))
+                .onErrorResume(error -> {
+                    if (error instanceof java.util.concurrent.TimeoutException) {
+                        return Flux.error(new RuntimeException("Timeout al obtener el catálogo de productos", error));
+                    }
+                    return Flux.error(error);
+                });
+    }
+
+    public void invalidarCache(Long id) {
+        cache.invalidate(id);
+        coalescedor.invalidar(id);
+    }
+
+    // El lote se recolecta en una lista para que el hedging compare respuestas completas
+    private Flux<ProductoDTO> obtenerLote(Collection<Long> ids) {
+        return resiliencia.conHedging(() -> webClient.get()
+                        .uri(uriBuilder -> uriBuilder
+                                .path("/api/productos")
+                                .queryParam("ids", ids)
+                                .build())
+                        .retrieve()
+                        .onStatus(status -> status.value() == HttpStatus.BAD_REQUEST.value(),
+                                response -> Mono.error(new BadRequestException("Lote de productos inválido: " + ids)))
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al obtener productos: " + ids)))
+                        .bodyToFlux(ProductoDTO.class)
+                        .collectList()
+                        .timeout(Duration.ofSeconds(5)))
+                .flatMapIterable(productos -> productos)
+                .onErrorResume(error -> {
+                    if (error instanceof java.util.concurrent.TimeoutException) {
+                        return Flux.error(new RuntimeException("Timeout al obtener productos: " + ids, error));
+                    }
+                    return Flux.error(error);
+                });
+    }
+
     public Mono<Void> actualizarStock(Long id, Integer cantidad) {
-        return webClient.put()
-                .uri(uriBuilder -> uriBuilder
-                        .path("/api/productos/{id}/stock")
-                        .queryParam("cantidad", cantidad)
-                        .build(id))
-                .retrieve()
-                .onStatus(status -> status.value() == HttpStatus.NOT_FOUND.value(),
-                        response -> Mono.error(new RuntimeException("Producto no encontrado con id: " + id)))
-                .onStatus(status -> status.value() == HttpStatus.BAD_REQUEST.value(),
-                        response -> Mono.error(new RuntimeException("Stock insuficiente para producto: " + id)))
-                .onStatus(status -> status.is5xxServerError(),
-                        response -> Mono.error(new RuntimeException("Error del servidor al actualizar stock: " + id)))
-                .bodyToMono(Void.class)
-                .timeout(Duration.ofSeconds(5))
+        return resiliencia.proteger(Plazo.limitar(webClient.put()
+                        .uri(uriBuilder -> uriBuilder
+                                .path("/api/productos/{id}/stock")
+                                .queryParam("cantidad", cantidad)
+                                .build(id))
+                        .retrieve()
+                        .onStatus(status -> status.value() == HttpStatus.NOT_FOUND.value(),
+                                response -> Mono.error(new ResourceNotFoundException("Producto no encontrado con id: " + id)))
+                        .onStatus(status -> status.value() == HttpStatus.BAD_REQUEST.value(),
+                                response -> Mono.error(new BadRequestException("Stock insuficiente para producto: " + id)))
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al actualizar stock: " + id)))
+                        .bodyToMono(Void.class), Duration.ofSeconds(5), "actualizar stock " + id))
                 .onErrorResume(error -> {
                     if (error instanceof java.util.concurrent.TimeoutException) {
                         return Mono.error(new RuntimeException("Timeout al actualizar stock: " + id, error));
@@ -58,4 +205,54 @@ public class ProductoClient {
                     return Mono.error(error);
                 });
     }
+
+    /**
+     * Descuenta el stock de todas las líneas de un pedido en una sola llamada. ms-productos aplica
+     * la reserva completa o ninguna línea; con la misma referencia, un reintento no descuenta dos veces.
+     * Un 400 (stock insuficiente o producto inactivo) se propaga como BadRequestException.
+     */
+    public Mono<Void> reservarStock(ReservaStockDTO reserva) {
+        return resiliencia.proteger(Plazo.limitar(webClient.post()
+                        .uri("/api/productos/stock/reservations")
+                        .bodyValue(reserva)
+                        .retrieve()
+                        .onStatus(status -> status.value() == HttpStatus.BAD_REQUEST.value(),
+                                response -> response.bodyToMono(String.class)
+                                        .defaultIfEmpty("")
+                                        .flatMap(cuerpo -> Mono.error(new BadRequestException(
+                                                "No se pudo reservar stock para el pedido " + reserva.getReferencia() + ": " + cuerpo))))
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al reservar stock: " + reserva.getReferencia())))
+                        .bodyToMono(Void.class), Duration.ofSeconds(5), "reservar stock " + reserva.getReferencia()))
+                .doOnSuccess(ignorado -> reserva.getItems().forEach(item -> invalidarCache(item.getProductoId())))
+                .onErrorResume(error -> {
+                    if (error instanceof java.util.concurrent.TimeoutException) {
+                        return Mono.error(new RuntimeException("Timeout al reservar stock: " + reserva.getReferencia(), error));
+                    }
+                    return Mono.error(error);
+                });
+    }
+
+    // Compensación de reservarStock; ms-productos la aplica una sola vez por referencia
+    public Mono<Void> liberarStock(ReservaStockDTO reserva) {
+        return resiliencia.proteger(Plazo.limitar(webClient.post()
+                        .uri("/api/productos/stock/releases")
+                        .bodyValue(reserva)
+                        .retrieve()
+                        .onStatus(status -> status.value() == HttpStatus.BAD_REQUEST.value(),
+                                response -> response.bodyToMono(String.class)
+                                        .defaultIfEmpty("")
+                                        .flatMap(cuerpo -> Mono.error(new BadRequestException(
+                                                "No se pudo liberar el stock del pedido " + reserva.getReferencia() + ": " + cuerpo))))
+                        .onStatus(status -> status.is5xxServerError(),
+                                response -> Mono.error(new RuntimeException("Error del servidor al liberar stock: " + reserva.getReferencia())))
+                        .bodyToMono(Void.class), Duration.ofSeconds(5), "liberar stock " + reserva.getReferencia()))
+                .doOnSuccess(ignorado -> reserva.getItems().forEach(item -> invalidarCache(item.getProductoId())))
+                .onErrorResume(error -> {
+                    if (error instanceof java.util.concurrent.TimeoutException) {
+                        return Mono.error(new RuntimeException("Timeout al liberar stock: " + reserva.getReferencia(), error));
+                    }
+                    return Mono.error(error);
+                });
+    }
 }
@@ -0,0 +1,172 @@
+package com.practica.pedidos.client;
+
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.exception.PlazoAgotadoException;
+import com.practica.pedidos.exception.ResourceNotFoundException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Capa de resiliencia para las llamadas a ms-productos: circuit breaker, bulkhead de concurrencia
+ * y hedging de GETs. Un pod lento de ms-productos ya no retiene todas las conexiones del WebClient:
+ * el bulkhead rechaza el exceso de llamadas concurrentes y el circuito se abre cuando los fallos o
+ * las llamadas lentas superan el umbral.
+ */
+@Slf4j
+@Component
+public class ResilienciaProductos {
+    static final String NOMBRE = "productos";
+    private static final double PERCENTIL_HEDGING = 0.95;
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    // Latencia de los GET exitosos; su p95 es el retraso antes de lanzar la solicitud de respaldo
+    private final Timer latencia;
+    private final Counter hedgesLanzados;
+    private final boolean hedgingHabilitado;
+    private final Duration retrasoMinimo;
+    private final Duration retrasoMaximo;
+
+    public ResilienciaProductos(MeterRegistry meterRegistry,
+                                @Value("${productos.resiliencia.circuit-breaker.umbral-fallos:50}") float umbralFallos,
+                                @Value("${productos.resiliencia.circuit-breaker.llamada-lenta:2s}") Duration llamadaLenta,
+                                @Value("${productos.resiliencia.circuit-breaker.espera-abierto:10s}") Duration esperaAbierto,
+                                @Value("${productos.resiliencia.bulkhead.max-concurrentes:50}") int maxConcurrentes,
+                                @Value("${productos.resiliencia.hedging.enabled:true}") boolean hedgingHabilitado,
+                                @Value("${productos.resiliencia.hedging.retraso-minimo:20ms}") Duration retrasoMinimo,
+                                @Value("${productos.resiliencia.hedging.retraso-maximo:1s}") Duration retrasoMaximo) {
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slidingWindowSize(50)
+                .minimumNumberOfCalls(20)
+                .failureRateThreshold(umbralFallos)
+                .slowCallDurationThreshold(llamadaLenta)
+                .slowCallRateThreshold(80)
+                .waitDurationInOpenState(esperaAbierto)
+                .permittedNumberOfCallsInHalfOpenState(5)
+                // Un 400 o 404 es una respuesta válida de ms-productos, no un síntoma de falla; un plazo
+                // agotado depende del presupuesto de quien llama
+                .ignoreExceptions(BadRequestException.class, ResourceNotFoundException.class, PlazoAgotadoException.class)
+                .build());
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentes)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(NOMBRE);
+        this.bulkhead = bulkheadRegistry.bulkhead(NOMBRE);
+
+        // Publica resilience4j.circuitbreaker.state/calls y resilience4j.bulkhead.* en actuator
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        circuitBreaker.getEventPublisher().onStateTransition(evento -> {
+            log.warn("Circuit breaker de ms-productos: {} -> {}",
+                    evento.getStateTransition().getFromState(), evento.getStateTransition().getToState());
+            meterRegistry.counter("productos.circuitbreaker.transiciones",
+                    "desde", evento.getStateTransition().getFromState().name(),
+                    "hacia", evento.getStateTransition().getToState().name()).increment();
+        });
+
+        this.latencia = Timer.builder("productos.http.latencia")
+                .description("Latencia de los GET exitosos a ms-productos")
+                .publishPercentiles(PERCENTIL_HEDGING)
+                .register(meterRegistry);
+        this.hedgesLanzados = Counter.builder("productos.http.hedges")
+                .description("Solicitudes de respaldo lanzadas porque la primera superó el p95")
+                .register(meterRegistry);
+        this.hedgingHabilitado = hedgingHabilitado;
+        this.retrasoMinimo = retrasoMinimo;
+        this.retrasoMaximo = retrasoMaximo;
+    }
+
+    /**
+     * Ejecuta la llamada dentro del bulkhead y del circuit breaker. Un circuito abierto falla con
+     * CallNotPermittedException y un bulkhead lleno con BulkheadFullException, sin llegar a la red.
+     */
+    public <T> Mono<T> proteger(Mono<T> llamada) {
+        return llamada
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    public <T> Flux<T> proteger(Flux<T> llamada) {
+        return llamada
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(BulkheadOperator.of(bulkhead));
+    }
+
+    /**
+     * Para GETs idempotentes: si la primera solicitud no respondió tras el p95 observado, lanza una
+     * segunda y se queda con la primera respuesta exitosa. Una vez lanzado el respaldo, la solicitud
+     * que falla primero cede ante la otra y el error se propaga solo si fallan las dos: un 5xx rápido
+     * del pod lento no cancela el respaldo, y un respaldo rechazado por el bulkhead o el circuito no
+     * le gana a la solicitud original. Un error antes del respaldo se propaga de inmediato.
+     */
+    public <T> Mono<T> conHedging(Supplier<Mono<T>> llamada) {
+        Mono<T> intento = Mono.defer(() -> medir(proteger(llamada.get())));
+        if (!hedgingHabilitado) {
+            return intento;
+        }
+        return Mono.defer(() -> {
+            AtomicBoolean lanzado = new AtomicBoolean();
+            AtomicInteger fallos = new AtomicInteger();
+            Function<Throwable, Mono<T>> ceder = error -> lanzado.get() && fallos.incrementAndGet() < 2
+                    ? Mono.never()
+                    : Mono.error(error);
+            Mono<T> respaldo = Mono.delay(retrasoHedging())
+                    .doOnNext(ignorado -> {
+                        lanzado.set(true);
+                        hedgesLanzados.increment();
+                    })
+                    .then(intento.onErrorResume(ceder));
+            return Mono.firstWithSignal(intento.onErrorResume(ceder), respaldo);
+        });
+    }
+
+    Duration retrasoHedging() {
+        double p95 = 0;
+        for (ValueAtPercentile percentil : latencia.takeSnapshot().percentileValues()) {
+            if (percentil.percentile() == PERCENTIL_HEDGING) {
+                p95 = percentil.value(TimeUnit.NANOSECONDS);
+            }
+        }
+        Duration retraso = Duration.ofNanos((long) p95);
+        if (retraso.compareTo(retrasoMinimo) < 0) {
+            return retrasoMinimo;
+        }
+        return retraso.compareTo(retrasoMaximo) > 0 ? retrasoMaximo : retraso;
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private <T> Mono<T> medir(Mono<T> llamada) {
+        return Mono.defer(() -> {
+            long inicio = System.nanoTime();
+            return llamada.doOnSuccess(ignorado -> latencia.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS));
+        });
+    }
+}
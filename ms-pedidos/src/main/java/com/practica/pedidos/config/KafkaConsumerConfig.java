@@ -0,0 +1,65 @@
+package com.practica.pedidos.config;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "kafka.consumer.enabled", havingValue = "true", matchIfMissing = true)
+public class KafkaConsumerConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${kafka.topic.producto-events}")
+    private String productoEventsTopic;
+
+    // Grupo propio por instancia: cada réplica de ms-pedidos debe ver todas las invalidaciones
+    @Value("${kafka.consumer.cache-group-id}")
+    private String cacheGroupId;
+
+    // También propio por instancia: cada réplica mantiene su copia en memoria de todos los productos.
+    // El avance real se guarda en productos_replica_offsets, no en Kafka
+    @Value("${kafka.consumer.replica-group-id}")
+    private String replicaGroupId;
+
+    @Bean
+    public KafkaReceiver<String, String> productoEventsCacheReceiver() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, cacheGroupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        // Solo interesan los cambios posteriores al arranque: la caché empieza vacía
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        ReceiverOptions<String, String> options = ReceiverOptions.<String, String>create(props)
+                .subscription(Collections.singleton(productoEventsTopic));
+        return KafkaReceiver.create(options);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "productos.replica.enabled", havingValue = "true", matchIfMissing = true)
+    public ReceiverOptions<String, String> productoEventsReplicaOptions() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, replicaGroupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        return ReceiverOptions.<String, String>create(props)
+                .subscription(Collections.singleton(productoEventsTopic));
+    }
+}
@@ -0,0 +1,96 @@
+package com.practica.pedidos.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverRecord;
+
+import java.util.Map;
+
+/**
+ * Consume los eventos publicados por ProductoEventProducer en el topic producto-events
+ * y mantiene coherente la caché de productos de ProductoClient.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "kafka.consumer.enabled", havingValue = "true", matchIfMissing = true)
+public class ProductoEventConsumer {
+
+    private final KafkaReceiver<String, String> productoEventsCacheReceiver;
+    private final ProductoClient productoClient;
+    private final ObjectMapper objectMapper;
+
+    private Disposable suscripcion;
+
+    @PostConstruct
+    public void startConsuming() {
+        log.info("Iniciando consumidor de eventos de productos para la caché...");
+
+        suscripcion = productoEventsCacheReceiver.receive()
+                .concatMap(this::processRecord)
+                .doOnError(error -> log.error("Error en el flujo del consumidor de eventos de productos", error))
+                .retry()
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopConsuming() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    private Mono<Void> processRecord(ReceiverRecord<String, String> record) {
+        return Mono.fromCallable(() -> parseJsonToMap(record.value()))
+                .doOnNext(this::processEvent)
+                .onErrorResume(error -> {
+                    log.error("Error procesando evento de producto - Partition: {}, Offset: {}, Key: {}",
+                            record.partition(), record.offset(), record.key(), error);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> record.receiverOffset().acknowledge())
+                .then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseJsonToMap(String json) throws Exception {
+        return objectMapper.readValue(json, Map.class);
+    }
+
+    private void processEvent(Map<String, Object> event) {
+        String eventType = (String) event.get("eventType");
+        if (eventType == null) {
+            log.warn("Evento de producto sin eventType, se ignora");
+            return;
+        }
+        switch (eventType) {
+            case "PRODUCTO_UPDATED", "STOCK_UPDATED", "PRODUCTO_DELETED" -> {
+                Long productoId = extractProductoId(event);
+                if (productoId != null) {
+                    log.debug("Invalidando producto {} en caché por evento {}", productoId, eventType);
+                    productoClient.invalidarCache(productoId);
+                }
+            }
+            // PRODUCTO_CREATED no afecta la caché: un producto nuevo todavía no puede estar cacheado
+            default -> log.debug("Evento {} ignorado por la caché de productos", eventType);
+        }
+    }
+
+    private Long extractProductoId(Map<String, Object> event) {
+        Object productoId = event.get("productoId");
+        if (productoId instanceof Number numero) {
+            return numero.longValue();
+        }
+        log.warn("Evento {} sin productoId válido: {}", event.get("eventType"), productoId);
+        return null;
+    }
+}
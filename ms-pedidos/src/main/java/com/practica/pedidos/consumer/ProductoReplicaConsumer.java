@@ -0,0 +1,97 @@
+package com.practica.pedidos.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.entity.ReplicaOffset;
+import com.practica.pedidos.repository.ReplicaOffsetRepository;
+import com.practica.pedidos.service.ProductoReplicaService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverPartition;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Mantiene productos_replica al día con producto-events. El offset aplicado por partición se guarda
+ * en productos_replica_offsets: al reiniciar se retoma desde ahí en lugar de volver a cargar el snapshot.
+ * Un error de base de datos reinicia el flujo desde los offsets guardados.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = {"kafka.consumer.enabled", "productos.replica.enabled"}, havingValue = "true", matchIfMissing = true)
+public class ProductoReplicaConsumer {
+
+    private final ReceiverOptions<String, String> productoEventsReplicaOptions;
+    private final ProductoReplicaService productoReplicaService;
+    private final ReplicaOffsetRepository replicaOffsetRepository;
+    private final ObjectMapper objectMapper;
+
+    private Disposable suscripcion;
+
+    @PostConstruct
+    public void startConsuming() {
+        log.info("Iniciando réplica local de productos...");
+
+        suscripcion = productoReplicaService.inicializar()
+                .then(replicaOffsetRepository.findAll()
+                        .collectMap(ReplicaOffset::getParticion, ReplicaOffset::getOffsetSiguiente))
+                .flatMapMany(offsets -> KafkaReceiver.create(productoEventsReplicaOptions
+                                .addAssignListener(particiones -> posicionar(particiones, offsets)))
+                        .receive())
+                .concatMap(this::processRecord)
+                .doOnError(error -> log.error("Error en la réplica de productos, se reanuda desde el último offset guardado", error))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopConsuming() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    // Sin offset guardado se lee la historia retenida completa: los eventos son absolutos y convergen
+    // sobre el snapshot inicial
+    private void posicionar(Collection<ReceiverPartition> particiones, Map<Integer, Long> offsets) {
+        for (ReceiverPartition particion : particiones) {
+            Long offset = offsets.get(particion.topicPartition().partition());
+            if (offset != null) {
+                particion.seek(offset);
+            } else {
+                particion.seekToBeginning();
+            }
+        }
+    }
+
+    private Mono<Void> processRecord(ReceiverRecord<String, String> record) {
+        return Mono.fromCallable(() -> parseJsonToMap(record.value()))
+                .onErrorResume(error -> {
+                    // Mensaje ilegible: se salta, pero se avanza el offset para no bloquear la partición
+                    log.error("Evento de producto ilegible - Partition: {}, Offset: {}, Key: {}",
+                            record.partition(), record.offset(), record.key(), error);
+                    return Mono.empty();
+                })
+                .flatMap(productoReplicaService::aplicarEvento)
+                .then(Mono.defer(() -> replicaOffsetRepository.avanzar(record.partition(), record.offset() + 1)))
+                .then();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseJsonToMap(String json) throws Exception {
+        return objectMapper.readValue(json, Map.class);
+    }
+}
@@ -0,0 +1,114 @@
+package com.practica.pedidos.controller;
+
+import com.practica.pedidos.dto.EstadisticasEnVivoDTO;
+import com.practica.pedidos.dto.ProductoVendidoDTO;
+import com.practica.pedidos.dto.SketchVentanaDTO;
+import com.practica.pedidos.dto.TicketPromedioDTO;
+import com.practica.pedidos.dto.VentaDiariaDTO;
+import com.practica.pedidos.service.AnaliticaVentasService;
+import com.practica.pedidos.service.EstadisticasEnVivoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Tag(name = "Analítica de ventas", description = "Agregados de ventas calculados en memoria, sin consultar la base de datos")
+@RestController
+@RequestMapping("/api/pedidos/analytics")
+@RequiredArgsConstructor
+public class AnaliticaController {
+
+    private final AnaliticaVentasService analiticaVentasService;
+    private final EstadisticasEnVivoService estadisticasEnVivoService;
+
+    @Operation(summary = "Ventas por día", description = "Importe, unidades y pedidos de cada día del rango [desde, hasta)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ventas diarias"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas inválido"),
+            @ApiResponse(responseCode = "503", description = "La analítica todavía se está cargando")
+    })
+    @GetMapping("/ventas-diarias")
+    public Mono<List<VentaDiariaDTO>> ventasPorDia(
+            @Parameter(description = "Día inicial, inclusive (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @Parameter(description = "Día final, exclusivo (ISO-8601)")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return analiticaVentasService.ventasPorDia(desde, hasta);
+    }
+
+    @Operation(summary = "Productos más vendidos", description = "Los productos con mayor importe o unidades vendidas en el rango [desde, hasta)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ranking de productos"),
+            @ApiResponse(responseCode = "400", description = "Rango, límite u orden inválido"),
+            @ApiResponse(responseCode = "503", description = "La analítica todavía se está cargando")
+    })
+    @GetMapping("/top-productos")
+    public Mono<List<ProductoVendidoDTO>> topProductos(
+            @Parameter(description = "Día inicial, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @Parameter(description = "Día final, exclusivo (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @Parameter(description = "Cantidad de productos (1-100)") @RequestParam(defaultValue = "10") int limite,
+            @Parameter(description = "importe o unidades") @RequestParam(defaultValue = "importe") String orden) {
+        return analiticaVentasService.topProductos(desde, hasta, limite, orden);
+    }
+
+    @Operation(summary = "Ticket promedio", description = "Importe, unidades y líneas promedio por pedido en el rango [desde, hasta)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Ticket promedio"),
+            @ApiResponse(responseCode = "400", description = "Rango de fechas inválido"),
+            @ApiResponse(responseCode = "503", description = "La analítica todavía se está cargando")
+    })
+    @GetMapping("/ticket-promedio")
+    public Mono<TicketPromedioDTO> ticketPromedio(
+            @Parameter(description = "Día inicial, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @Parameter(description = "Día final, exclusivo (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return analiticaVentasService.ticketPromedio(desde, hasta);
+    }
+
+    @Operation(summary = "Estadísticas en vivo",
+            description = "Clientes distintos y productos con más unidades en la ventana deslizante, estimados con sketches")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Estimaciones de la ventana")
+    })
+    @GetMapping("/en-vivo")
+    public Mono<EstadisticasEnVivoDTO> enVivo() {
+        return estadisticasEnVivoService.resumen();
+    }
+
+    @Operation(summary = "Exportar sketches de la ventana",
+            description = "Sketches serializados de esta réplica, para combinarlos con los de otras en /en-vivo/combinar")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Sketches de la ventana")
+    })
+    @GetMapping("/en-vivo/sketch")
+    public Mono<SketchVentanaDTO> sketch() {
+        return estadisticasEnVivoService.sketch();
+    }
+
+    @Operation(summary = "Combinar sketches de varias réplicas",
+            description = "Fusiona los sketches exportados por cada réplica y devuelve las estimaciones del conjunto")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Estimaciones combinadas"),
+            @ApiResponse(responseCode = "400", description = "Sketches vacíos o inválidos")
+    })
+    @PostMapping("/en-vivo/combinar")
+    public Mono<EstadisticasEnVivoDTO> combinar(@RequestBody List<SketchVentanaDTO> sketches) {
+        return estadisticasEnVivoService.combinar(sketches);
+    }
+}
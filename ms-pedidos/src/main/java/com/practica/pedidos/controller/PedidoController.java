@@ -1,19 +1,42 @@
 package com.practica.pedidos.controller;
 
+import com.practica.pedidos.dto.EventoPedidoDTO;
+import com.practica.pedidos.dto.PaginaPedidosDTO;
 import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ResultadoImportacionDTO;
+import com.practica.pedidos.dto.ResultadoPurgaDTO;
+import com.practica.pedidos.plazo.Plazo;
+import com.practica.pedidos.service.EventosPedidoService;
+import com.practica.pedidos.service.ExportacionPedidosService;
+import com.practica.pedidos.service.IdempotenciaService;
+import com.practica.pedidos.service.ImportacionPedidosService;
 import com.practica.pedidos.service.PedidoService;
+import com.practica.pedidos.service.RecepcionPedidosService;
+import com.practica.pedidos.service.TiemposSolicitud;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
 @Tag(name = "Pedidos", description = "API para gestión de pedidos")
 @RestController
 @RequestMapping("/api/pedidos")
@@ -21,6 +44,19 @@ import reactor.core.publisher.Mono;
 public class PedidoController {
 
     private final PedidoService pedidoService;
+    private final IdempotenciaService idempotenciaService;
+    private final RecepcionPedidosService recepcionPedidosService;
+    private final ImportacionPedidosService importacionPedidosService;
+    private final ExportacionPedidosService exportacionPedidosService;
+    private final EventosPedidoService eventosPedidoService;
+
+    // Plazo de POST /api/pedidos; X-Request-Timeout solo puede acortarlo
+    @Value("${pedidos.plazo.creacion:10s}")
+    private Duration plazoCreacion;
+
+    // Comentario SSE periódico para que proxies y balanceadores no cierren la conexión inactiva
+    @Value("${pedidos.eventos.heartbeat:15s}")
+    private Duration heartbeatEventos;
 
     @Operation(summary = "Listar todos los pedidos", description = "Obtiene una lista de todos los pedidos")
     @ApiResponses(value = {
@@ -31,44 +67,217 @@ public class PedidoController {
         return pedidoService.getAll();
     }
 
-    @Operation(summary = "Obtener pedido por ID", description = "Busca un pedido específico por su ID")
+    @Operation(summary = "Transmitir todos los pedidos",
+            description = "Emite los pedidos como NDJSON, uno por línea, a medida que se ensamblan sus detalles")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Flujo de pedidos")
+    })
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PedidoDTO> stream() {
+        return pedidoService.stream();
+    }
+
+    @Operation(summary = "Eventos de pedidos en vivo",
+            description = "Server-Sent Events con la creación, los cambios de estado y la eliminación de los pedidos, opcionalmente de un cliente o un pedido. "
+                    + "Solo llegan los eventos posteriores a la conexión; cada evento lleva la versión del pedido. "
+                    + "Las eliminaciones solo traen el id, así que no pasan el filtro por cliente")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Flujo de eventos")
+    })
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<EventoPedidoDTO>> streamEventos(
+            @Parameter(description = "Solo eventos de este cliente") @RequestParam(required = false) String cliente,
+            @Parameter(description = "Solo eventos de este pedido") @RequestParam(required = false) Long id) {
+        Flux<ServerSentEvent<EventoPedidoDTO>> eventos = eventosPedidoService.suscribir(cliente, id)
+                .map(evento -> ServerSentEvent.builder(evento)
+                        .id(evento.getPedidoId() + "-" + (evento.getVersion() != null ? evento.getVersion() : "eliminado"))
+                        .event(evento.getTipo())
+                        .build());
+        Flux<ServerSentEvent<EventoPedidoDTO>> heartbeat = Flux.interval(heartbeatEventos)
+                .map(tick -> ServerSentEvent.<EventoPedidoDTO>builder().comment("heartbeat").build());
+        return Flux.merge(eventos, heartbeat);
+    }
+
+    @Operation(summary = "Listar pedidos por páginas",
+            description = "Obtiene una página de pedidos ordenada por id. Para la página siguiente se envía como cursor el valor siguienteCursor de la respuesta")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Página de pedidos obtenida exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Límite inválido")
+    })
+    @GetMapping("/page")
+    public Mono<PaginaPedidosDTO> getPage(
+            @Parameter(description = "Id del último pedido de la página anterior") @RequestParam(required = false) Long cursor,
+            @Parameter(description = "Cantidad máxima de pedidos por página (1-500)") @RequestParam(defaultValue = "50") int limit) {
+        return pedidoService.getPagina(cursor, limit);
+    }
+
+    @Operation(summary = "Buscar pedidos",
+            description = "Página de pedidos ordenada por id, filtrada por cliente, estado y rango de fechas [desde, hasta). "
+                    + "Para la página siguiente se envía como cursor el valor siguienteCursor de la respuesta")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Página de pedidos obtenida exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Filtros o límite inválidos")
+    })
+    @GetMapping("/search")
+    public Mono<PaginaPedidosDTO> search(
+            @Parameter(description = "Cliente exacto") @RequestParam(required = false) String cliente,
+            @Parameter(description = "Estado (RECIBIDO, PENDIENTE, PROCESADO, CANCELADO, RECHAZADO)") @RequestParam(required = false) String estado,
+            @Parameter(description = "Fecha inicial, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Fecha final, exclusiva (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @Parameter(description = "Id del último pedido de la página anterior") @RequestParam(required = false) Long cursor,
+            @Parameter(description = "Cantidad máxima de pedidos por página (1-500)") @RequestParam(defaultValue = "50") int limit) {
+        return pedidoService.buscar(cliente, estado, desde, hasta, cursor, limit);
+    }
+
+    @Operation(summary = "Exportar pedidos con detalles",
+            description = "Descarga una fila por detalle (pedido ⋈ detalle_pedidos) como CSV o NDJSON, "
+                    + "escrita a medida que se lee de la base de datos")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Archivo de exportación"),
+            @ApiResponse(responseCode = "400", description = "Formato o rango de fechas inválido")
+    })
+    @GetMapping("/export")
+    public Flux<DataBuffer> exportar(
+            @Parameter(description = "csv o ndjson") @RequestParam(defaultValue = "csv") String formato,
+            @Parameter(description = "Fecha inicial, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Fecha final, exclusiva (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            ServerHttpResponse response) {
+        // Los headers del archivo se fijan recién con los parámetros validados: un 400 sale como JSON
+        return Flux.defer(() -> {
+            boolean csv = ExportacionPedidosService.validar(formato, desde, hasta);
+            response.getHeaders().setContentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.APPLICATION_NDJSON);
+            response.getHeaders().setContentDisposition(ContentDisposition.attachment()
+                    .filename(csv ? "pedidos.csv" : "pedidos.ndjson")
+                    .build());
+            return exportacionPedidosService.exportar(formato, desde, hasta, response.bufferFactory());
+        });
+    }
+
+    @Operation(summary = "Obtener pedido por ID",
+            description = "Busca un pedido específico por su ID. Responde con un ETag de la versión del pedido; "
+                    + "con If-None-Match y el pedido en caché, un pedido sin cambios responde 304 sin consultar la base")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Pedido encontrado"),
+            @ApiResponse(responseCode = "304", description = "El pedido no cambió desde el ETag enviado"),
             @ApiResponse(responseCode = "404", description = "Pedido no encontrado")
     })
     @GetMapping("/{id}")
     public Mono<ResponseEntity<PedidoDTO>> getById(
             @Parameter(description = "ID del pedido") @PathVariable Long id) {
-        return pedidoService.getById(id)
-                .map(ResponseEntity::ok)
+        // Spring compara el ETag con If-None-Match y responde 304 sin cuerpo si coincide
+        return pedidoService.getByIdVersionado(id)
+                .map(versionado -> ResponseEntity.ok()
+                        .eTag(String.valueOf(versionado.version()))
+                        .body(versionado.pedido()))
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
 
-    @Operation(summary = "Crear nuevo pedido", description = "Crea un nuevo pedido en el sistema")
+    @Operation(summary = "Crear nuevo pedido",
+            description = "Crea un nuevo pedido en el sistema. Con Idempotency-Key, los reintentos con la misma clave devuelven el pedido ya creado. "
+                    + "Si no termina dentro del plazo (X-Request-Timeout o el plazo por defecto), se corta y responde 504")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Pedido creado exitosamente"),
-            @ApiResponse(responseCode = "400", description = "Datos inválidos")
+            @ApiResponse(responseCode = "400", description = "Datos inválidos"),
+            @ApiResponse(responseCode = "504", description = "Plazo de la solicitud agotado")
     })
     @PostMapping
-    public Mono<ResponseEntity<PedidoDTO>> create(@RequestBody PedidoDTO pedidoDTO) {
-        return pedidoService.create(pedidoDTO)
-                .map(pedido -> ResponseEntity.status(HttpStatus.CREATED).body(pedido));
+    public Mono<ResponseEntity<PedidoDTO>> create(
+            @Parameter(description = "Clave única por intento lógico de compra, reutilizada en los reintentos")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @Parameter(description = "Milisegundos que el cliente (o el gateway) está dispuesto a esperar")
+            @RequestHeader(value = "X-Request-Timeout", required = false) Long timeoutMillis,
+            @RequestBody PedidoDTO pedidoDTO,
+            ServerHttpResponse response) {
+        // Desglose por etapa en Server-Timing, también en las respuestas de error
+        TiemposSolicitud tiempos = new TiemposSolicitud();
+        response.beforeCommit(() -> {
+            String serverTiming = tiempos.serverTiming();
+            if (!serverTiming.isEmpty()) {
+                response.getHeaders().add("Server-Timing", serverTiming);
+            }
+            return Mono.empty();
+        });
+        Mono<PedidoDTO> pedidoCreado = idempotencyKey == null
+                ? pedidoService.create(pedidoDTO)
+                : idempotenciaService.ejecutar(idempotencyKey, () -> pedidoService.create(pedidoDTO, idempotencyKey));
+        Duration plazo = timeoutMillis != null && timeoutMillis > 0 && timeoutMillis < plazoCreacion.toMillis()
+                ? Duration.ofMillis(timeoutMillis)
+                : plazoCreacion;
+        return pedidoCreado
+                .map(pedido -> ResponseEntity.status(HttpStatus.CREATED).body(pedido))
+                .contextWrite(Plazo.en(plazo)::escribir)
+                .contextWrite(tiempos::escribir);
+    }
+
+    @Operation(summary = "Recibir pedido de forma asíncrona",
+            description = "Valida el pedido sin consultar productos, lo guarda como RECIBIDO y responde de inmediato. "
+                    + "La validación de productos y la reserva de stock se hacen en segundo plano; el estado se consulta en la URL de Location")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Pedido recibido; pasará a PENDIENTE o RECHAZADO"),
+            @ApiResponse(responseCode = "400", description = "Datos inválidos"),
+            @ApiResponse(responseCode = "503", description = "Cola de recepción llena; reintentar según Retry-After")
+    })
+    @PostMapping("/async")
+    public Mono<ResponseEntity<PedidoDTO>> createAsync(@RequestBody PedidoDTO pedidoDTO) {
+        return recepcionPedidosService.recibir(pedidoDTO)
+                .map(pedido -> ResponseEntity.accepted()
+                        .location(URI.create("/api/pedidos/" + pedido.getId()))
+                        .body(pedido));
     }
 
-    @Operation(summary = "Actualizar estado del pedido", description = "Cambia el estado de un pedido existente")
+    @Operation(summary = "Importar pedidos en masa",
+            description = "Lee NDJSON (un pedido por línea) o CSV con encabezado (referencia,cliente,fecha,estado,producto_id,cantidad,precio_unitario; "
+                    + "las filas consecutivas con la misma referencia forman un pedido) sin cargar el cuerpo completo. "
+                    + "Emite como NDJSON un resultado por pedido, en el orden del archivo. No reserva stock")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Flujo de resultados; los pedidos rechazados traen el motivo en error")
+    })
+    @PostMapping(value = "/import",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ResultadoImportacionDTO> importar(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestBody Flux<DataBuffer> cuerpo) {
+        boolean csv = contentType.isCompatibleWith(MediaType.parseMediaType("text/csv"));
+        return importacionPedidosService.importar(cuerpo, csv);
+    }
+
+    @Operation(summary = "Actualizar estado del pedido",
+            description = "Cambia el estado de un pedido existente. Solo se permiten PENDIENTE -> PROCESADO, una vez reservado el stock, y PENDIENTE/RECIBIDO -> CANCELADO")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Estado actualizado exitosamente"),
-            @ApiResponse(responseCode = "400", description = "Estado inválido"),
+            @ApiResponse(responseCode = "400", description = "Estado inválido o transición no permitida"),
             @ApiResponse(responseCode = "404", description = "Pedido no encontrado")
     })
     @PutMapping("/{id}/status")
     public Mono<ResponseEntity<PedidoDTO>> updateStatus(
             @Parameter(description = "ID del pedido") @PathVariable Long id,
-            @Parameter(description = "Nuevo estado (PENDIENTE, PROCESADO, CANCELADO)") @RequestParam String estado) {
+            @Parameter(description = "Nuevo estado (PROCESADO, CANCELADO)") @RequestParam String estado) {
         return pedidoService.updateStatus(id, estado)
                 .map(ResponseEntity::ok);
     }
 
+    @Operation(summary = "Eliminar pedidos por rango",
+            description = "Elimina en lotes los pedidos de un rango de fechas [desde, hasta) o de ids [idDesde, idHasta], junto con sus detalles")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Purga completada; devuelve la cantidad de pedidos eliminados"),
+            @ApiResponse(responseCode = "400", description = "Rango inválido")
+    })
+    @DeleteMapping
+    public Mono<ResultadoPurgaDTO> purgar(
+            @Parameter(description = "Fecha inicial, inclusive (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Fecha final, exclusiva (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime hasta,
+            @Parameter(description = "Id inicial, inclusive") @RequestParam(required = false) Long idDesde,
+            @Parameter(description = "Id final, inclusive") @RequestParam(required = false) Long idHasta) {
+        return pedidoService.purgar(desde, hasta, idDesde, idHasta);
+    }
+
     @Operation(summary = "Eliminar pedido", description = "Elimina un pedido del sistema")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "204", description = "Pedido eliminado exitosamente"),
@@ -0,0 +1,19 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EstadisticasEnVivoDTO {
+    // Inicio de la ventana deslizante
+    private LocalDateTime desde;
+    // Estimaciones: error de alrededor de 1.6 % en clientes, sobreestimación acotada en unidades
+    private Long clientesDistintos;
+    private List<ProductoFrecuenteDTO> productosTop;
+}
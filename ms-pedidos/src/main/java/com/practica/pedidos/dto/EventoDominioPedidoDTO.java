@@ -0,0 +1,29 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Evento publicado en el tópico pedido-events, con clave = id del pedido.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoDominioPedidoDTO {
+    // PEDIDO_CREATED, PEDIDO_STATUS_CHANGED o PEDIDO_DELETED
+    private String tipo;
+    private Long pedidoId;
+    private String cliente;
+    private String estado;
+    private Double total;
+    // Versión de la fila tras el cambio. Los eventos de un pedido llegan en orden, pero la entrega es al
+    // menos una vez: un duplicado se reconoce por el header evento-id o por una versión ya vista
+    private Long version;
+    private LocalDateTime fecha;
+    // Solo en PEDIDO_CREATED
+    private List<DetallePedidoDTO> detalles;
+}
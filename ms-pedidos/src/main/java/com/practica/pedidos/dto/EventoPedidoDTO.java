@@ -0,0 +1,21 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoPedidoDTO {
+    // CREADO, ESTADO_ACTUALIZADO o ELIMINADO (este último solo con pedidoId)
+    private String tipo;
+    private Long pedidoId;
+    private String cliente;
+    private String estado;
+    // Versión de la fila tras el cambio: entre réplicas los eventos pueden llegar desordenados
+    private Long version;
+    private LocalDateTime fecha;
+}
@@ -0,0 +1,16 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaPedidosDTO {
+    private List<PedidoDTO> pedidos;
+    // Id del último pedido de la página; null cuando no hay más resultados
+    private Long siguienteCursor;
+}
@@ -0,0 +1,14 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductoVendidoDTO {
+    private Long productoId;
+    private Long unidades;
+    private Double importe;
+}
@@ -0,0 +1,15 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservaStockDTO {
+    private String referencia;
+    private List<ItemReservaDTO> items;
+}
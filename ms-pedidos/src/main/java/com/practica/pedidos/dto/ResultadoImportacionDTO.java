@@ -0,0 +1,19 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado de un pedido en la importación masiva. linea es la primera línea del pedido en el archivo;
+ * pedidoId queda en null y error explica el motivo cuando el pedido no se importó.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoImportacionDTO {
+    private Long linea;
+    private String referencia;
+    private Long pedidoId;
+    private String error;
+}
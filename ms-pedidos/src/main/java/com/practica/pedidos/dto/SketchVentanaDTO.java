@@ -0,0 +1,22 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sketches de la ventana deslizante de una réplica, serializados (base64 en JSON) para fusionarlos
+ * con los de otras réplicas.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SketchVentanaDTO {
+    private LocalDateTime desde;
+    // HyperLogLog de clientes
+    private byte[] clientes;
+    // Count-Min Sketch de unidades por producto
+    private byte[] productos;
+}
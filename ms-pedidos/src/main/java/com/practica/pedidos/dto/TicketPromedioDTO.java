@@ -0,0 +1,15 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TicketPromedioDTO {
+    private Long pedidos;
+    private Double importePromedio;
+    private Double unidadesPromedio;
+    private Double lineasPromedio;
+}
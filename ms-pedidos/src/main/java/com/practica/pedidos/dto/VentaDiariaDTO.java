@@ -0,0 +1,17 @@
+package com.practica.pedidos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaDiariaDTO {
+    private LocalDate fecha;
+    private Double importe;
+    private Long unidades;
+    private Long pedidos;
+}
@@ -0,0 +1,22 @@
+package com.practica.pedidos.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("claves_idempotencia")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClaveIdempotencia {
+    @Id
+    private String clave;
+    private Long pedidoId;
+    // PedidoDTO serializado en JSON, devuelto tal cual a los reintentos
+    private String respuesta;
+    private LocalDateTime fechaCreacion;
+}
@@ -0,0 +1,27 @@
+package com.practica.pedidos.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("outbox_eventos")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoOutbox {
+    @Id
+    private Long id;
+    private String tipo;
+    // Id del pedido al que pertenece el evento; los eventos de un mismo pedido se publican en orden
+    private Long agregadoId;
+    private String payload;
+    private String estado;
+    private Integer intentos;
+    private String ultimoError;
+    private LocalDateTime fechaCreacion;
+    private LocalDateTime disponibleDesde;
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.time.LocalDateTime;
@@ -22,6 +23,8 @@ public class Pedido {
     private LocalDateTime fecha;
     private Double total;
     private String estado;
+    @Version
+    private Long version;
 
     @Transient
     private List<DetallePedido> detalles = new ArrayList<>();
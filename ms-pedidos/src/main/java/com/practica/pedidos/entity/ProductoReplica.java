@@ -0,0 +1,21 @@
+package com.practica.pedidos.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+@Table("productos_replica")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductoReplica {
+    @Id
+    private Long id;
+    private String nombre;
+    private String descripcion;
+    private Double precio;
+    private Integer stock;
+    private Boolean activo;
+}
@@ -0,0 +1,19 @@
+package com.practica.pedidos.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+// Posición de productos_replica en el tópico producto-events, por partición
+@Table("productos_replica_offsets")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicaOffset {
+    @Id
+    private Integer particion;
+    // Siguiente offset a leer: todo lo anterior ya está aplicado en productos_replica
+    private Long offsetSiguiente;
+}
@@ -0,0 +1,23 @@
+package com.practica.pedidos.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+@Table("sagas_pedido")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaPedido {
+    @Id
+    private Long pedidoId;
+    // RESERVA_SOLICITADA, STOCK_RESERVADO, COMPENSACION_SOLICITADA, STOCK_LIBERADO o RESERVA_FALLIDA
+    private String paso;
+    // ReservaStockDTO serializado en JSON, el mismo que se envió a ms-productos
+    private String reserva;
+    private LocalDateTime fechaActualizacion;
+}
@@ -0,0 +1,145 @@
+package com.practica.pedidos.estadistica;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frecuencias aproximadas en una matriz de profundidad x ancho contadores, con los k elementos más
+ * frecuentes vistos hasta el momento como candidatos. La estimación nunca es menor que la real y la
+ * sobreestima como mucho en e/ancho del total con probabilidad 1 - e^-profundidad.
+ *
+ * Dos sketches de las mismas dimensiones se fusionan sumando contadores; los candidatos se unen y
+ * se vuelven a estimar sobre la matriz fusionada. No es seguro para hilos.
+ */
+public class CountMinSketch {
+
+    private final int profundidad;
+    private final int ancho;
+    private final int k;
+    private final long[] contadores;
+    // Elemento -> frecuencia estimada al momento de su última actualización
+    private final Map<Long, Long> candidatos = new HashMap<>();
+
+    public record Frecuencia(long elemento, long estimacion) {
+    }
+
+    public CountMinSketch(int profundidad, int ancho, int k) {
+        if (profundidad < 1 || ancho < 1 || k < 1) {
+            throw new IllegalArgumentException("Profundidad, ancho y k deben ser positivos");
+        }
+        this.profundidad = profundidad;
+        this.ancho = ancho;
+        this.k = k;
+        this.contadores = new long[profundidad * ancho];
+    }
+
+    public void agregar(long elemento, long cantidad) {
+        long hash = Hash64.de(elemento);
+        long minimo = Long.MAX_VALUE;
+        for (int fila = 0; fila < profundidad; fila++) {
+            int posicion = posicion(hash, fila);
+            contadores[posicion] += cantidad;
+            minimo = Math.min(minimo, contadores[posicion]);
+        }
+        considerar(elemento, minimo);
+    }
+
+    public long estimar(long elemento) {
+        long hash = Hash64.de(elemento);
+        long minimo = Long.MAX_VALUE;
+        for (int fila = 0; fila < profundidad; fila++) {
+            minimo = Math.min(minimo, contadores[posicion(hash, fila)]);
+        }
+        return minimo;
+    }
+
+    /**
+     * Los candidatos ordenados de mayor a menor frecuencia estimada.
+     */
+    public List<Frecuencia> top() {
+        List<Frecuencia> top = new ArrayList<>(candidatos.size());
+        candidatos.forEach((elemento, estimacion) -> top.add(new Frecuencia(elemento, estimar(elemento))));
+        top.sort(Comparator.comparingLong(Frecuencia::estimacion).reversed());
+        return top;
+    }
+
+    public void fusionar(CountMinSketch otro) {
+        if (otro.profundidad != profundidad || otro.ancho != ancho) {
+            throw new IllegalArgumentException("No se pueden fusionar Count-Min Sketch de distintas dimensiones");
+        }
+        for (int i = 0; i < contadores.length; i++) {
+            contadores[i] += otro.contadores[i];
+        }
+        List<Long> elementos = new ArrayList<>(candidatos.keySet());
+        elementos.addAll(otro.candidatos.keySet());
+        candidatos.clear();
+        for (Long elemento : elementos) {
+            considerar(elemento, estimar(elemento));
+        }
+    }
+
+    // Formato: profundidad, ancho, k, contadores, cantidad de candidatos y pares (elemento, estimación)
+    public byte[] aBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + contadores.length * Long.BYTES
+                + Integer.BYTES + candidatos.size() * 2 * Long.BYTES);
+        buffer.putInt(profundidad).putInt(ancho).putInt(k);
+        for (long contador : contadores) {
+            buffer.putLong(contador);
+        }
+        buffer.putInt(candidatos.size());
+        candidatos.forEach((elemento, estimacion) -> buffer.putLong(elemento).putLong(estimacion));
+        return buffer.array();
+    }
+
+    public static CountMinSketch desdeBytes(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int profundidad = buffer.getInt();
+            int ancho = buffer.getInt();
+            int k = buffer.getInt();
+            if ((long) profundidad * ancho * Long.BYTES > buffer.remaining()) {
+                throw new IllegalArgumentException("Count-Min Sketch serializado con tamaño inválido");
+            }
+            CountMinSketch sketch = new CountMinSketch(profundidad, ancho, k);
+            for (int i = 0; i < sketch.contadores.length; i++) {
+                sketch.contadores[i] = buffer.getLong();
+            }
+            int cantidad = buffer.getInt();
+            for (int i = 0; i < cantidad; i++) {
+                sketch.considerar(buffer.getLong(), buffer.getLong());
+            }
+            return sketch;
+        } catch (BufferUnderflowException | NullPointerException e) {
+            throw new IllegalArgumentException("Count-Min Sketch serializado incompleto", e);
+        }
+    }
+
+    // Mantiene los k candidatos de mayor estimación; con k chico la búsqueda lineal del mínimo basta
+    private void considerar(long elemento, long estimacion) {
+        if (candidatos.containsKey(elemento) || candidatos.size() < k) {
+            candidatos.put(elemento, estimacion);
+            return;
+        }
+        Map.Entry<Long, Long> menor = null;
+        for (Map.Entry<Long, Long> candidato : candidatos.entrySet()) {
+            if (menor == null || candidato.getValue() < menor.getValue()) {
+                menor = candidato;
+            }
+        }
+        if (estimacion > menor.getValue()) {
+            candidatos.remove(menor.getKey());
+            candidatos.put(elemento, estimacion);
+        }
+    }
+
+    // Doble hashing (Kirsch-Mitzenmacher): una función por fila a partir de un solo hash de 64 bits
+    private int posicion(long hash, int fila) {
+        int combinado = (int) hash + fila * (int) (hash >>> 32);
+        return fila * ancho + (combinado & Integer.MAX_VALUE) % ancho;
+    }
+}
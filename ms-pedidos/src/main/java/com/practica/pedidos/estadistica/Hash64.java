@@ -0,0 +1,39 @@
+package com.practica.pedidos.estadistica;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hash de 64 bits para los sketches: FNV-1a sobre los bytes y el mezclado final de MurmurHash3,
+ * para que los bits altos (que usa HyperLogLog) estén bien distribuidos. Es estable entre réplicas
+ * y reinicios, requisito para poder fusionar sketches de distintas instancias.
+ */
+final class Hash64 {
+
+    private static final long FNV_BASE = 0xcbf29ce484222325L;
+    private static final long FNV_PRIMO = 0x100000001b3L;
+
+    private Hash64() {
+    }
+
+    static long de(String texto) {
+        long hash = FNV_BASE;
+        for (byte b : texto.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIMO;
+        }
+        return mezclar(hash);
+    }
+
+    static long de(long valor) {
+        return mezclar(valor ^ FNV_BASE);
+    }
+
+    private static long mezclar(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,82 @@
+package com.practica.pedidos.estadistica;
+
+/**
+ * Cardinalidad aproximada con 2^precision registros de un byte; el error estándar es
+ * 1.04 / sqrt(2^precision), alrededor de 1.6 % con precisión 12 (4 KB). Dos sketches de la misma
+ * precisión se fusionan tomando el máximo de cada registro, y el resultado es el mismo que si todos
+ * los valores se hubieran agregado a uno solo. No es seguro para hilos.
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registros;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("La precisión debe estar entre 4 y 16");
+        }
+        this.precision = precision;
+        this.registros = new byte[1 << precision];
+    }
+
+    public void agregar(String valor) {
+        long hash = Hash64.de(valor);
+        int indice = (int) (hash >>> (64 - precision));
+        // El bit centinela acota el rango cuando los bits restantes son todos cero
+        long resto = (hash << precision) | (1L << (precision - 1));
+        byte rango = (byte) (Long.numberOfLeadingZeros(resto) + 1);
+        if (rango > registros[indice]) {
+            registros[indice] = rango;
+        }
+    }
+
+    public long estimar() {
+        int m = registros.length;
+        double suma = 0;
+        int ceros = 0;
+        for (byte registro : registros) {
+            suma += Math.scalb(1.0, -registro);
+            if (registro == 0) {
+                ceros++;
+            }
+        }
+        double alfa = 0.7213 / (1 + 1.079 / m);
+        double estimacion = alfa * m * m / suma;
+        // Rango bajo: conteo lineal sobre los registros vacíos
+        if (estimacion <= 2.5 * m && ceros > 0) {
+            estimacion = m * Math.log((double) m / ceros);
+        }
+        return Math.round(estimacion);
+    }
+
+    public void fusionar(HyperLogLog otro) {
+        if (otro.precision != precision) {
+            throw new IllegalArgumentException("No se pueden fusionar HyperLogLog de distinta precisión");
+        }
+        for (int i = 0; i < registros.length; i++) {
+            if (otro.registros[i] > registros[i]) {
+                registros[i] = otro.registros[i];
+            }
+        }
+    }
+
+    // Formato: precisión (1 byte) seguida de los registros
+    public byte[] aBytes() {
+        byte[] bytes = new byte[1 + registros.length];
+        bytes[0] = (byte) precision;
+        System.arraycopy(registros, 0, bytes, 1, registros.length);
+        return bytes;
+    }
+
+    public static HyperLogLog desdeBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < 1) {
+            throw new IllegalArgumentException("HyperLogLog serializado vacío");
+        }
+        HyperLogLog hll = new HyperLogLog(bytes[0]);
+        if (bytes.length != 1 + hll.registros.length) {
+            throw new IllegalArgumentException("HyperLogLog serializado con tamaño inválido");
+        }
+        System.arraycopy(bytes, 1, hll.registros, 0, hll.registros.length);
+        return hll;
+    }
+}
@@ -0,0 +1,92 @@
+package com.practica.pedidos.eventos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.EventoPedidoDTO;
+import com.practica.pedidos.service.EventosPedidoService;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+/**
+ * Escucha el canal de eventos de pedidos (LISTEN) en una conexión propia, fuera del pool, y entrega
+ * cada notificación a EventosPedidoService. Si la conexión se cae se reconecta con backoff; los
+ * eventos notificados mientras tanto se pierden para esta réplica.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pedidos.eventos.notify.enabled", havingValue = "true", matchIfMissing = true)
+public class NotificacionesPedidosListener {
+
+    private final ConnectionFactory connectionFactory;
+    private final EventosPedidoService eventosPedidoService;
+    private final ObjectMapper objectMapper;
+
+    private Disposable suscripcion;
+
+    public NotificacionesPedidosListener(ConnectionFactory connectionFactory,
+                                         EventosPedidoService eventosPedidoService,
+                                         ObjectMapper objectMapper) {
+        this.connectionFactory = connectionFactory;
+        this.eventosPedidoService = eventosPedidoService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        log.info("Escuchando eventos de pedidos en el canal {}", EventosPedidoService.CANAL);
+        suscripcion = Flux.usingWhen(Mono.from(sinPool(connectionFactory).create()),
+                        this::escuchar,
+                        Connection::close)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(senal -> log.warn("Conexión LISTEN de eventos de pedidos perdida, reconectando: {}",
+                                senal.failure().getMessage())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    private Flux<Void> escuchar(Connection conexion) {
+        PostgresqlConnection postgres = (PostgresqlConnection) conexion;
+        return postgres.createStatement("LISTEN " + EventosPedidoService.CANAL)
+                .execute()
+                .flatMap(PostgresqlResult::getRowsUpdated)
+                .thenMany(postgres.getNotifications())
+                .concatMap(notificacion -> Mono.fromRunnable(() -> entregar(notificacion.getParameter())));
+    }
+
+    private void entregar(String payload) {
+        try {
+            eventosPedidoService.emitir(objectMapper.readValue(payload, EventoPedidoDTO.class));
+        } catch (Exception e) {
+            log.warn("Evento de pedido inválido en {}: {}", EventosPedidoService.CANAL, e.getMessage());
+        }
+    }
+
+    // La conexión queda tomada mientras la réplica vive: se abre contra la fábrica subyacente del pool
+    private static ConnectionFactory sinPool(ConnectionFactory fabrica) {
+        ConnectionFactory actual = fabrica;
+        while (actual instanceof Wrapped<?> envoltorio && envoltorio.unwrap() instanceof ConnectionFactory interna) {
+            actual = interna;
+        }
+        return actual;
+    }
+}
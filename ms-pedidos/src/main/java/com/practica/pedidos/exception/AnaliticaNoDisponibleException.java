@@ -0,0 +1,7 @@
+package com.practica.pedidos.exception;
+
+public class AnaliticaNoDisponibleException extends RuntimeException {
+    public AnaliticaNoDisponibleException(String message) {
+        super(message);
+    }
+}
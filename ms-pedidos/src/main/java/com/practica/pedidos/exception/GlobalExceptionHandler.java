@@ -1,5 +1,8 @@
 package com.practica.pedidos.exception;
 
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -52,6 +55,64 @@ public class GlobalExceptionHandler {
         return Mono.just(new ResponseEntity<>(error, ex.getStatusCode()));
     }
 
+    // Circuito abierto o bulkhead lleno hacia ms-productos: se rechaza sin esperar al timeout
+    @ExceptionHandler({CallNotPermittedException.class, BulkheadFullException.class})
+    public Mono<ResponseEntity<ErrorResponse>> handleServicioNoDisponible(
+            RuntimeException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Servicio No Disponible",
+                "Servicio de productos no disponible temporalmente: " + ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        return Mono.just(new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    // Cola de recepción llena: se descarta la solicitud y se indica cuándo reintentar
+    @ExceptionHandler(ServicioSaturadoException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleServicioSaturado(
+            ServicioSaturadoException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Servicio Saturado",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error));
+    }
+
+    // La analítica en memoria se está cargando al arrancar: no es saturación, así que sin Retry-After
+    @ExceptionHandler(AnaliticaNoDisponibleException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleAnaliticaNoDisponible(
+            AnaliticaNoDisponibleException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Analítica No Disponible",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        return Mono.just(new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE));
+    }
+
+    // Plazo de la solicitud agotado: el trabajo pendiente ya se cortó
+    @ExceptionHandler(PlazoAgotadoException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handlePlazoAgotado(
+            PlazoAgotadoException ex, ServerWebExchange exchange) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.GATEWAY_TIMEOUT.value(),
+                "Plazo Agotado",
+                ex.getMessage(),
+                exchange.getRequest().getPath().value()
+        );
+        return Mono.just(new ResponseEntity<>(error, HttpStatus.GATEWAY_TIMEOUT));
+    }
+
     @ExceptionHandler(Exception.class)
     public Mono<ResponseEntity<ErrorResponse>> handleGlobalException(
             Exception ex, ServerWebExchange exchange) {
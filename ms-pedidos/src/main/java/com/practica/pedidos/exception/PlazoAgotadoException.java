@@ -0,0 +1,7 @@
+package com.practica.pedidos.exception;
+
+public class PlazoAgotadoException extends RuntimeException {
+    public PlazoAgotadoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.practica.pedidos.exception;
+
+public class ServicioSaturadoException extends RuntimeException {
+    public ServicioSaturadoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,69 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Publica los eventos de dominio de pedidos en pedido-events. La clave es el id del pedido, así que
+ * los eventos de un pedido van a la misma partición; OutboxRelay no envía uno hasta que el anterior
+ * del mismo pedido se confirmó. Publica en lote: el productor junta los registros de muchos pedidos
+ * en batches comprimidos en lugar de esperar uno por uno.
+ *
+ * La entrega es al menos una vez: el header evento-id (id del outbox) permite descartar duplicados.
+ */
+@Component
+@ConditionalOnProperty(name = "kafka.producer.enabled", havingValue = "true", matchIfMissing = true)
+public class EventosPedidoKafkaOutboxHandler implements OutboxHandler {
+
+    public static final String TIPO = "PEDIDO_EVENT";
+
+    private final KafkaSender<String, String> pedidoEventsSender;
+    private final String topico;
+
+    public EventosPedidoKafkaOutboxHandler(KafkaSender<String, String> pedidoEventsSender,
+                                           @Value("${kafka.topic.pedido-events}") String topico) {
+        this.pedidoEventsSender = pedidoEventsSender;
+        this.topico = topico;
+    }
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public boolean publicaEnLote() {
+        return true;
+    }
+
+    @Override
+    public Mono<Void> publicar(EventoOutbox evento) {
+        return publicarLote(List.of(evento))
+                .next()
+                .flatMap(resultado -> resultado.error() == null ? Mono.<Void>empty() : Mono.error(resultado.error()));
+    }
+
+    @Override
+    public Flux<ResultadoPublicacion> publicarLote(List<EventoOutbox> eventos) {
+        return pedidoEventsSender.send(Flux.fromIterable(eventos)
+                        .map(evento -> SenderRecord.create(registro(evento), evento)))
+                .map(resultado -> new ResultadoPublicacion(resultado.correlationMetadata(), resultado.exception()));
+    }
+
+    private ProducerRecord<String, String> registro(EventoOutbox evento) {
+        ProducerRecord<String, String> registro = new ProducerRecord<>(topico,
+                String.valueOf(evento.getAgregadoId()), evento.getPayload());
+        registro.headers().add("evento-id", String.valueOf(evento.getId()).getBytes(StandardCharsets.UTF_8));
+        return registro;
+    }
+}
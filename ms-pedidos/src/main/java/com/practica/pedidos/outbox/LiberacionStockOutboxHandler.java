@@ -0,0 +1,47 @@
+package com.practica.pedidos.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.service.SagaPedidoService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compensa la reserva de stock de un pedido cancelado: pide a ms-productos que la libere y cierra la
+ * saga. Si el evento se descarta, la saga queda en COMPENSACION_SOLICITADA y el escáner de
+ * recuperación lo vuelve a emitir.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LiberacionStockOutboxHandler implements OutboxHandler {
+
+    public static final String TIPO = "STOCK_RELEASE_REQUESTED";
+
+    private final ProductoClient productoClient;
+    private final SagaPedidoService sagaPedidoService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public Mono<Void> publicar(EventoOutbox evento) {
+        return Mono.fromCallable(() -> objectMapper.readValue(evento.getPayload(), ReservaStockDTO.class))
+                .flatMap(productoClient::liberarStock)
+                .then(Mono.defer(() -> sagaPedidoService.marcarLiberado(evento.getAgregadoId())));
+    }
+
+    @Override
+    public Mono<Void> descartar(EventoOutbox evento, Throwable causa) {
+        log.error("Liberación de stock del pedido {} descartada, queda para el escáner de sagas: {}",
+                evento.getAgregadoId(), causa.getMessage());
+        return Mono.empty();
+    }
+}
@@ -0,0 +1,44 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Publica un tipo de evento del outbox (por HTTP, Kafka, etc.). OutboxRelay lo marca como publicado
+ * si {@link #publicar} completa, y lo reintenta con backoff si falla.
+ */
+public interface OutboxHandler {
+
+    String tipo();
+
+    Mono<Void> publicar(EventoOutbox evento);
+
+    /**
+     * Si es true, OutboxRelay entrega todos los eventos de este tipo de un lote en una sola llamada a
+     * {@link #publicarLote}, en orden de id, en lugar de esperar la confirmación de cada uno.
+     */
+    default boolean publicaEnLote() {
+        return false;
+    }
+
+    /**
+     * Publica varios eventos y emite un resultado por cada uno, en cualquier orden. Por defecto los
+     * publica uno tras otro con {@link #publicar}.
+     */
+    default Flux<ResultadoPublicacion> publicarLote(List<EventoOutbox> eventos) {
+        return Flux.fromIterable(eventos)
+                .concatMap(evento -> publicar(evento)
+                        .thenReturn(new ResultadoPublicacion(evento, null))
+                        .onErrorResume(error -> Mono.just(new ResultadoPublicacion(evento, error))));
+    }
+
+    /**
+     * Se invoca cuando el evento se descarta: rechazo definitivo (BadRequestException) o intentos agotados.
+     */
+    default Mono<Void> descartar(EventoOutbox evento, Throwable causa) {
+        return Mono.empty();
+    }
+}
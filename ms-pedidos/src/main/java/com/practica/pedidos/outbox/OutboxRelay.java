@@ -0,0 +1,245 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.EventoOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Drena outbox_eventos en segundo plano: reclama lotes con SKIP LOCKED (seguro con varias réplicas),
+ * los entrega a su OutboxHandler y marca cada evento como publicado, reprogramado o fallido. Los tipos
+ * que publican en lote (Kafka) reciben juntos todos sus eventos del lote.
+ *
+ * Los eventos de un mismo pedido y tipo se publican en orden de id: reclamarLote no toma un evento
+ * mientras haya uno anterior pendiente fuera del lote, y un evento reprogramado detiene a los que le
+ * siguen en el lote.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private final EventoOutboxRepository eventoOutboxRepository;
+    private final Map<String, OutboxHandler> handlers;
+    private final Duration intervalo;
+    private final int tamanoLote;
+    private final int concurrencia;
+    private final int maxIntentos;
+    private final Duration bloqueo;
+    private final Duration backoffMaximo;
+
+    private Disposable suscripcion;
+
+    public OutboxRelay(EventoOutboxRepository eventoOutboxRepository,
+                       List<OutboxHandler> handlers,
+                       @Value("${outbox.relay.intervalo:500ms}") Duration intervalo,
+                       @Value("${outbox.relay.tamano-lote:100}") int tamanoLote,
+                       @Value("${outbox.relay.concurrencia:8}") int concurrencia,
+                       @Value("${outbox.relay.max-intentos:10}") int maxIntentos,
+                       @Value("${outbox.relay.bloqueo:30s}") Duration bloqueo,
+                       @Value("${outbox.relay.backoff-maximo:5m}") Duration backoffMaximo) {
+        this.eventoOutboxRepository = eventoOutboxRepository;
+        this.handlers = handlers.stream().collect(Collectors.toMap(OutboxHandler::tipo, Function.identity()));
+        this.intervalo = intervalo;
+        this.tamanoLote = tamanoLote;
+        this.concurrencia = concurrencia;
+        this.maxIntentos = maxIntentos;
+        this.bloqueo = bloqueo;
+        this.backoffMaximo = backoffMaximo;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        log.info("Iniciando relay del outbox (tipos: {})", handlers.keySet());
+        suscripcion = Flux.interval(intervalo)
+                .onBackpressureDrop()
+                .concatMap(tick -> drenar()
+                        .onErrorResume(error -> {
+                            log.error("Error drenando el outbox", error);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    /**
+     * Procesa lotes mientras vengan llenos.
+     * @return cantidad de eventos procesados
+     */
+    public Mono<Long> drenar() {
+        return procesarLote()
+                .expand(procesados -> procesados == tamanoLote ? procesarLote() : Mono.empty())
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> procesarLote() {
+        LocalDateTime ahora = LocalDateTime.now();
+        return eventoOutboxRepository.reclamarLote(ahora, ahora.plus(bloqueo), tamanoLote)
+                .collectList()
+                .flatMap(lote -> {
+                    Map<Boolean, List<EventoOutbox>> partes = lote.stream()
+                            .sorted(Comparator.comparing(EventoOutbox::getId))
+                            .collect(Collectors.partitioningBy(this::publicaEnLote));
+                    // Pedidos distintos en paralelo; los eventos de un mismo pedido, en orden de id
+                    Mono<Void> individuales = Flux.fromIterable(agruparPorPedido(partes.get(false)))
+                            .flatMap(this::procesarEnOrden, concurrencia)
+                            .then();
+                    // Tipos que publican en lote: los eventos de cada tipo se envían juntos y el handler los agrupa
+                    Mono<Void> agrupados = Flux.fromIterable(partes.get(true).stream()
+                                    .collect(Collectors.groupingBy(EventoOutbox::getTipo, LinkedHashMap::new, Collectors.toList()))
+                                    .values())
+                            .flatMap(this::procesarEnLote)
+                            .then();
+                    return Mono.when(individuales, agrupados).then(Mono.just((long) lote.size()));
+                });
+    }
+
+    private boolean publicaEnLote(EventoOutbox evento) {
+        OutboxHandler handler = handlers.get(evento.getTipo());
+        return handler != null && handler.publicaEnLote();
+    }
+
+    // Eventos ya ordenados por id, agrupados por pedido
+    private static List<List<EventoOutbox>> agruparPorPedido(List<EventoOutbox> eventos) {
+        return new ArrayList<>(eventos.stream()
+                .collect(Collectors.groupingBy(EventoOutbox::getAgregadoId, LinkedHashMap::new, Collectors.toList()))
+                .values());
+    }
+
+    /**
+     * Publica los eventos de un pedido uno tras otro. El primero que queda pendiente de reintento
+     * detiene a los siguientes, que vuelven al outbox: reclamarLote no los toma hasta que se publique.
+     */
+    private Mono<Void> procesarEnOrden(List<EventoOutbox> eventos) {
+        return Flux.fromIterable(eventos)
+                .concatMap(this::procesar)
+                .takeUntil(terminado -> !terminado)
+                .count()
+                .flatMap(atendidos -> liberar(eventos.subList(atendidos.intValue(), eventos.size())));
+    }
+
+    /**
+     * Publica en rondas: cada ronda manda en un solo envío el siguiente evento de cada pedido, así que
+     * nunca hay dos eventos de un mismo pedido en vuelo. Un pedido cuyo evento queda pendiente de
+     * reintento no participa en las rondas siguientes; sus eventos restantes vuelven al outbox.
+     */
+    private Mono<Void> procesarEnLote(List<EventoOutbox> eventos) {
+        OutboxHandler handler = handlers.get(eventos.get(0).getTipo());
+        List<List<EventoOutbox>> porPedido = agruparPorPedido(eventos);
+        int rondas = porPedido.stream().mapToInt(List::size).max().orElse(0);
+        Set<Long> detenidos = new HashSet<>();
+        Set<Long> enviados = new HashSet<>();
+        return Flux.range(0, rondas)
+                .concatMap(ronda -> {
+                    List<EventoOutbox> envio = porPedido.stream()
+                            .filter(pendientes -> pendientes.size() > ronda
+                                    && !detenidos.contains(pendientes.get(0).getAgregadoId()))
+                            .map(pendientes -> pendientes.get(ronda))
+                            .toList();
+                    envio.forEach(evento -> enviados.add(evento.getId()));
+                    return envio.isEmpty()
+                            ? Mono.<Void>empty()
+                            : publicarRonda(handler, envio).doOnNext(detenidos::addAll).then();
+                })
+                .then(Mono.defer(() -> liberar(eventos.stream()
+                        .filter(evento -> !enviados.contains(evento.getId()))
+                        .toList())));
+    }
+
+    // Devuelve los pedidos cuyo evento quedó pendiente de reintento
+    private Mono<List<Long>> publicarRonda(OutboxHandler handler, List<EventoOutbox> envio) {
+        return handler.publicarLote(envio)
+                .collectList()
+                // Falla el envío completo: cada evento se trata como fallido
+                .onErrorResume(error -> Mono.just(envio.stream()
+                        .map(evento -> new ResultadoPublicacion(evento, error))
+                        .toList()))
+                .flatMap(resultados -> {
+                    Long[] publicados = resultados.stream()
+                            .filter(resultado -> resultado.error() == null)
+                            .map(resultado -> resultado.evento().getId())
+                            .toArray(Long[]::new);
+                    Mono<Integer> marcados = publicados.length > 0
+                            ? eventoOutboxRepository.marcarPublicados(publicados)
+                            : Mono.just(0);
+                    return marcados.thenMany(Flux.fromIterable(resultados)
+                                    .filter(resultado -> resultado.error() != null)
+                                    .concatMap(resultado -> registrarFallo(resultado.evento(), handler, resultado.error())
+                                            .filter(terminado -> !terminado)
+                                            .map(terminado -> resultado.evento().getAgregadoId())))
+                            .collectList();
+                });
+    }
+
+    // true si el evento terminó (publicado o descartado); false si queda pendiente de reintento
+    private Mono<Boolean> procesar(EventoOutbox evento) {
+        OutboxHandler handler = handlers.get(evento.getTipo());
+        if (handler == null) {
+            log.error("Evento de outbox {} sin manejador para el tipo {}", evento.getId(), evento.getTipo());
+            return eventoOutboxRepository.marcarFallido(evento.getId(), "Sin manejador para el tipo " + evento.getTipo())
+                    .thenReturn(true);
+        }
+        return handler.publicar(evento)
+                .then(Mono.defer(() -> eventoOutboxRepository.marcarPublicado(evento.getId())))
+                .thenReturn(true)
+                .onErrorResume(error -> registrarFallo(evento, handler, error));
+    }
+
+    // true si el evento se descartó; false si se reprogramó
+    private Mono<Boolean> registrarFallo(EventoOutbox evento, OutboxHandler handler, Throwable error) {
+        String mensaje = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        if (error instanceof BadRequestException || evento.getIntentos() >= maxIntentos) {
+            log.error("Evento de outbox {} ({}) descartado tras {} intentos: {}",
+                    evento.getId(), evento.getTipo(), evento.getIntentos(), mensaje);
+            return eventoOutboxRepository.marcarFallido(evento.getId(), mensaje)
+                    .then(Mono.defer(() -> handler.descartar(evento, error)))
+                    .thenReturn(true);
+        }
+        Duration espera = calcularEspera(evento.getIntentos());
+        log.warn("Evento de outbox {} ({}) falló en el intento {}, se reintenta en {}: {}",
+                evento.getId(), evento.getTipo(), evento.getIntentos(), espera, mensaje);
+        return eventoOutboxRepository.reprogramar(evento.getId(), LocalDateTime.now().plus(espera), mensaje)
+                .thenReturn(false);
+    }
+
+    // Devuelve al outbox eventos reclamados que no se intentaron, sin consumir un intento
+    private Mono<Void> liberar(List<EventoOutbox> eventos) {
+        if (eventos.isEmpty()) {
+            return Mono.empty();
+        }
+        return eventoOutboxRepository.liberar(eventos.stream().map(EventoOutbox::getId).toArray(Long[]::new),
+                LocalDateTime.now()).then();
+    }
+
+    // Backoff exponencial: 1 s, 2 s, 4 s, ... hasta backoffMaximo
+    private Duration calcularEspera(int intentos) {
+        Duration espera = Duration.ofSeconds(1L << Math.min(Math.max(intentos - 1, 0), 20));
+        return espera.compareTo(backoffMaximo) > 0 ? backoffMaximo : espera;
+    }
+}
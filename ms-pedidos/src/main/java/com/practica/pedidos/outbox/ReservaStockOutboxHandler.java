@@ -0,0 +1,73 @@
+package com.practica.pedidos.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.repository.PedidoRepository;
+import com.practica.pedidos.service.CachePedidosService;
+import com.practica.pedidos.service.EventosDominioPedidoService;
+import com.practica.pedidos.service.EventosPedidoService;
+import com.practica.pedidos.service.SagaPedidoService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Aplica en ms-productos la reserva de stock de un pedido recién creado y avanza su saga. La referencia
+ * del payload ("pedido-{id}") hace idempotente el reintento. Si la reserva se descarta, el pedido se
+ * cancela y se compensa: un timeout pudo haberla aplicado sin que se supiera. Si el pedido ya no está
+ * PENDIENTE (se canceló antes o se eliminó), la saga se cierra en RESERVA_FALLIDA para que la
+ * recuperación no vuelva a pedir la reserva.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReservaStockOutboxHandler implements OutboxHandler {
+
+    public static final String TIPO = "STOCK_RESERVATION_REQUESTED";
+
+    private final ProductoClient productoClient;
+    private final PedidoRepository pedidoRepository;
+    private final SagaPedidoService sagaPedidoService;
+    private final CachePedidosService cachePedidosService;
+    private final EventosPedidoService eventosPedidoService;
+    private final EventosDominioPedidoService eventosDominioPedidoService;
+    private final ObjectMapper objectMapper;
+    private final TransactionalOperator transactionalOperator;
+
+    @Override
+    public String tipo() {
+        return TIPO;
+    }
+
+    @Override
+    public Mono<Void> publicar(EventoOutbox evento) {
+        return Mono.fromCallable(() -> objectMapper.readValue(evento.getPayload(), ReservaStockDTO.class))
+                .flatMap(productoClient::reservarStock)
+                .then(Mono.defer(() -> sagaPedidoService.marcarReservado(evento.getAgregadoId())));
+    }
+
+    @Override
+    public Mono<Void> descartar(EventoOutbox evento, Throwable causa) {
+        log.warn("Reserva de stock del pedido {} descartada, se cancela el pedido: {}",
+                evento.getAgregadoId(), causa.getMessage());
+        // Solo si sigue pendiente: no pisa una transición concurrente. La cancelación, su evento de
+        // dominio y la compensación se confirman juntos
+        return pedidoRepository.actualizarEstado(evento.getAgregadoId(), "CANCELADO", new String[]{"PENDIENTE"})
+                .flatMap(cancelado -> eventosDominioPedidoService.registrarCambioEstado(cancelado)
+                        .then(sagaPedidoService.compensar(cancelado.getId()))
+                        .thenReturn(cancelado))
+                .as(transactionalOperator::transactional)
+                .doOnNext(cancelado -> {
+                    cachePedidosService.invalidar(cancelado.getId());
+                    eventosPedidoService.publicar("ESTADO_ACTUALIZADO", cancelado.getId(), cancelado.getCliente(),
+                            cancelado.getEstado(), cancelado.getVersion());
+                })
+                .switchIfEmpty(Mono.defer(() -> sagaPedidoService.marcarReservaFallida(evento.getAgregadoId())
+                        .then(Mono.empty())))
+                .then();
+    }
+}
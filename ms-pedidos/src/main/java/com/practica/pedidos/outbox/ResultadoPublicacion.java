@@ -0,0 +1,9 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+
+/**
+ * Resultado de publicar un evento dentro de {@link OutboxHandler#publicarLote}: error es null si se publicó.
+ */
+public record ResultadoPublicacion(EventoOutbox evento, Throwable error) {
+}
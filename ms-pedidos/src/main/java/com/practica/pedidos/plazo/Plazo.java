@@ -0,0 +1,95 @@
+package com.practica.pedidos.plazo;
+
+import com.practica.pedidos.exception.PlazoAgotadoException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+
+/**
+ * Plazo de una solicitud, propagado en el contexto de Reactor. Cada operación usa el menor entre su
+ * timeout propio y lo que queda del plazo, y no empieza si ya se agotó: cuando el cliente deja de
+ * esperar, el trabajo pendiente se corta con PlazoAgotadoException en lugar de seguir corriendo.
+ * Sin plazo en el contexto las operaciones conservan su timeout propio.
+ */
+public final class Plazo {
+
+    private static final Class<Plazo> CLAVE = Plazo.class;
+
+    // Según System.nanoTime, inmune a cambios del reloj del sistema
+    private final long vencimiento;
+
+    private Plazo(long vencimiento) {
+        this.vencimiento = vencimiento;
+    }
+
+    public static Plazo en(Duration duracion) {
+        return new Plazo(System.nanoTime() + duracion.toNanos());
+    }
+
+    public Duration restante() {
+        return Duration.ofNanos(vencimiento - System.nanoTime());
+    }
+
+    // Para contextWrite en el punto de entrada de la solicitud
+    public Context escribir(Context contexto) {
+        return contexto.put(CLAVE, this);
+    }
+
+    /**
+     * Quita el plazo del contexto. Lo usan las llamadas compartidas entre solicitudes (coalescing),
+     * que no deben cortarse por el plazo de quien llegó primero; cada solicitud aplica el suyo por fuera.
+     */
+    public static Context quitar(Context contexto) {
+        return contexto.delete(CLAVE);
+    }
+
+    /**
+     * @param maximo timeout propio de la operación; null si solo la limita el plazo
+     */
+    public static <T> Mono<T> limitar(Mono<T> operacion, Duration maximo, String descripcion) {
+        return Mono.deferContextual(contexto -> {
+            Plazo plazo = contexto.getOrDefault(CLAVE, null);
+            if (plazo == null) {
+                return maximo == null ? operacion : operacion.timeout(maximo);
+            }
+            Duration restante = plazo.restante();
+            if (restante.isNegative() || restante.isZero()) {
+                return Mono.error(agotado(descripcion));
+            }
+            if (maximo != null && maximo.compareTo(restante) <= 0) {
+                return operacion.timeout(maximo);
+            }
+            return operacion.timeout(restante, Mono.error(() -> agotado(descripcion)));
+        });
+    }
+
+    /**
+     * Limita un Flux completo, no cada elemento: la espera de cada elemento es lo que queda del plazo.
+     */
+    public static <T> Flux<T> limitar(Flux<T> operacion, String descripcion) {
+        return Flux.deferContextual(contexto -> {
+            Plazo plazo = contexto.getOrDefault(CLAVE, null);
+            if (plazo == null) {
+                return operacion;
+            }
+            Duration restante = plazo.restante();
+            if (restante.isNegative() || restante.isZero()) {
+                return Flux.error(agotado(descripcion));
+            }
+            return operacion.timeout(Mono.delay(restante),
+                    elemento -> Mono.delay(plazo.restanteNoNegativo()),
+                    Flux.error(() -> agotado(descripcion)));
+        });
+    }
+
+    private Duration restanteNoNegativo() {
+        Duration restante = restante();
+        return restante.isNegative() ? Duration.ZERO : restante;
+    }
+
+    private static PlazoAgotadoException agotado(String descripcion) {
+        return new PlazoAgotadoException("Plazo de la solicitud agotado: " + descripcion);
+    }
+}
@@ -0,0 +1,107 @@
+package com.practica.pedidos.recepcion;
+
+import com.practica.pedidos.service.PedidoService;
+import com.practica.pedidos.service.RecepcionPedidosService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Procesa en segundo plano los pedidos aceptados por POST /api/pedidos/async. Agrupa la cola en lotes
+ * (por tamaño o por tiempo) con una cantidad acotada de lotes en curso; mientras el worker está
+ * ocupado la cola se acumula hasta agotar los cupos y la recepción empieza a descartar.
+ * Además recorre periódicamente los pedidos RECIBIDO antiguos, que quedaron fuera de la cola por un
+ * reinicio o por la caída de otra réplica.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pedidos.recepcion.enabled", havingValue = "true", matchIfMissing = true)
+public class RecepcionPedidosWorker {
+
+    private final RecepcionPedidosService recepcionPedidosService;
+    private final PedidoService pedidoService;
+    private final int tamanoLote;
+    private final Duration esperaLote;
+    private final int concurrencia;
+    private final Duration intervaloRecuperacion;
+    private final Duration antiguedadRecuperacion;
+
+    private Disposable suscripcion;
+
+    public RecepcionPedidosWorker(RecepcionPedidosService recepcionPedidosService,
+                                  PedidoService pedidoService,
+                                  @Value("${pedidos.recepcion.tamano-lote:50}") int tamanoLote,
+                                  @Value("${pedidos.recepcion.espera-lote:200ms}") Duration esperaLote,
+                                  @Value("${pedidos.recepcion.concurrencia:4}") int concurrencia,
+                                  @Value("${pedidos.recepcion.intervalo-recuperacion:30s}") Duration intervaloRecuperacion,
+                                  @Value("${pedidos.recepcion.antiguedad-recuperacion:1m}") Duration antiguedadRecuperacion) {
+        this.recepcionPedidosService = recepcionPedidosService;
+        this.pedidoService = pedidoService;
+        this.tamanoLote = tamanoLote;
+        this.esperaLote = esperaLote;
+        this.concurrencia = concurrencia;
+        this.intervaloRecuperacion = intervaloRecuperacion;
+        this.antiguedadRecuperacion = antiguedadRecuperacion;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        log.info("Iniciando worker de recepción de pedidos (lote={}, concurrencia={})", tamanoLote, concurrencia);
+        Disposable cola = recepcionPedidosService.cola()
+                .bufferTimeout(tamanoLote, esperaLote, true)
+                .flatMap(lote -> procesar(lote)
+                        .doFinally(senal -> recepcionPedidosService.liberar(lote.size())), concurrencia)
+                .subscribe();
+        Disposable recuperacion = Flux.interval(Duration.ZERO, intervaloRecuperacion)
+                .onBackpressureDrop()
+                .concatMap(tick -> recuperar())
+                .subscribe();
+        suscripcion = Disposables.composite(cola, recuperacion);
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    // Un lote fallido queda en RECIBIDO y lo retoma la recuperación
+    private Mono<Void> procesar(List<Long> lote) {
+        return pedidoService.procesarRecibidos(lote)
+                .onErrorResume(error -> {
+                    log.error("Error procesando lote de {} pedidos recibidos", lote.size(), error);
+                    return Mono.empty();
+                });
+    }
+
+    // Recorre por keyset (id > cursor) para no releer un lote que todavía se está procesando
+    private Mono<Void> recuperar() {
+        LocalDateTime antesDe = LocalDateTime.now().minus(antiguedadRecuperacion);
+        return buscarRecibidos(antesDe, 0L)
+                .expand(ids -> ids.size() < tamanoLote ? Mono.empty() : buscarRecibidos(antesDe, ids.get(ids.size() - 1)))
+                .filter(ids -> !ids.isEmpty())
+                .doOnNext(ids -> log.info("Recuperando {} pedidos en estado RECIBIDO", ids.size()))
+                .concatMap(this::procesar)
+                .then()
+                .onErrorResume(error -> {
+                    log.error("Error recuperando pedidos en estado RECIBIDO", error);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<List<Long>> buscarRecibidos(LocalDateTime antesDe, Long cursor) {
+        return pedidoService.buscarRecibidos(antesDe, cursor, tamanoLote).collectList();
+    }
+}
@@ -0,0 +1,22 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.ClaveIdempotencia;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ClaveIdempotenciaRepository extends ReactiveCrudRepository<ClaveIdempotencia, String> {
+
+    // Devuelve 1 si la clave es nueva. Si otra transacción insertó la misma clave y aún no confirma,
+    // PostgreSQL espera a que termine: devuelve 0 si confirmó y 1 si hizo rollback
+    @Modifying
+    @Query("INSERT INTO claves_idempotencia (clave) VALUES (:clave) ON CONFLICT (clave) DO NOTHING")
+    Mono<Integer> reclamar(String clave);
+
+    @Modifying
+    @Query("UPDATE claves_idempotencia SET pedido_id = :pedidoId, respuesta = :respuesta WHERE clave = :clave")
+    Mono<Integer> completar(String clave, Long pedidoId, String respuesta);
+}
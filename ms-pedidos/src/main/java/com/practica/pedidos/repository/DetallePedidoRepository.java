@@ -1,9 +1,22 @@
 package com.practica.pedidos.repository;
 
 import com.practica.pedidos.entity.DetallePedido;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface DetallePedidoRepository extends R2dbcRepository<DetallePedido, Long> {
+public interface DetallePedidoRepository extends R2dbcRepository<DetallePedido, Long>, DetallePedidoRepositoryCustom {
     Flux<DetallePedido> findByPedidoId(Long pedidoId);
+
+    // Detalles de varios pedidos en una sola consulta (enriquecimiento por lotes)
+    @Query("SELECT * FROM detalle_pedidos WHERE pedido_id = ANY(:pedidoIds)")
+    Flux<DetallePedido> buscarPorPedidoIds(Long[] pedidoIds);
+
+    // Fija los precios de varias líneas en una sola sentencia (pedidos recibidos de forma asíncrona)
+    @Modifying
+    @Query("UPDATE detalle_pedidos d SET precio_unitario = v.precio " +
+            "FROM unnest(:ids, :precios) AS v(id, precio) WHERE d.id = v.id")
+    Mono<Integer> actualizarPrecios(Long[] ids, Double[] precios);
 }
@@ -0,0 +1,16 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.DetallePedido;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public interface DetallePedidoRepositoryCustom {
+
+    /**
+     * Inserta todas las líneas con un único INSERT multi-fila por lote en lugar de un INSERT por línea.
+     * @param detalles líneas a insertar (sin id)
+     * @return las líneas insertadas, con el id generado por la base de datos
+     */
+    Flux<DetallePedido> insertarLote(List<DetallePedido> detalles);
+}
@@ -0,0 +1,61 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.DetallePedido;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class DetallePedidoRepositoryCustomImpl implements DetallePedidoRepositoryCustom {
+
+    // 4 parámetros por fila; PostgreSQL admite como máximo 65535 parámetros por sentencia
+    private static final int FILAS_POR_SENTENCIA = 1000;
+
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<DetallePedido> insertarLote(List<DetallePedido> detalles) {
+        return Flux.fromIterable(detalles)
+                .buffer(FILAS_POR_SENTENCIA)
+                .concatMap(this::insertarSentencia);
+    }
+
+    private Flux<DetallePedido> insertarSentencia(List<DetallePedido> lote) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO detalle_pedidos (pedido_id, producto_id, cantidad, precio_unitario) VALUES ");
+        for (int i = 0; i < lote.size(); i++) {
+            int base = i * 4;
+            sql.append(i == 0 ? "" : ", ")
+                    .append("($").append(base + 1)
+                    .append(", $").append(base + 2)
+                    .append(", $").append(base + 3)
+                    .append(", $").append(base + 4).append(")");
+        }
+        // Se devuelve la fila completa para no depender del orden de RETURNING
+        sql.append(" RETURNING id, pedido_id, producto_id, cantidad, precio_unitario");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+        for (int i = 0; i < lote.size(); i++) {
+            DetallePedido detalle = lote.get(i);
+            int base = i * 4;
+            spec = spec.bind(base, detalle.getPedidoId())
+                    .bind(base + 1, detalle.getProductoId())
+                    .bind(base + 2, detalle.getCantidad())
+                    .bind(base + 3, BigDecimal.valueOf(detalle.getPrecioUnitario()));
+        }
+        return spec.map(DetallePedidoRepositoryCustomImpl::toDetalle).all();
+    }
+
+    private static DetallePedido toDetalle(Readable row) {
+        return new DetallePedido(
+                row.get("id", Long.class),
+                row.get("pedido_id", Long.class),
+                row.get("producto_id", Long.class),
+                row.get("cantidad", Integer.class),
+                row.get("precio_unitario", Double.class));
+    }
+}
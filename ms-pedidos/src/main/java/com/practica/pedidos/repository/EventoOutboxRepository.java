@@ -0,0 +1,52 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+public interface EventoOutboxRepository extends R2dbcRepository<EventoOutbox, Long> {
+
+    // Reclama un lote de eventos pendientes: SKIP LOCKED evita que dos réplicas tomen el mismo evento,
+    // y mover disponible_desde lo oculta hasta :bloqueoHasta (si la instancia cae, el evento se reintenta).
+    // Para no desordenar un pedido, un evento solo se reclama si todos los anteriores pendientes de su
+    // pedido y tipo entran en el mismo lote; el primer NOT EXISTS descarta de antemano los que esperan a
+    // uno en backoff o en vuelo, y el segundo los que esperan a uno bloqueado por otra réplica
+    @Query("WITH candidatos AS (SELECT id, tipo, agregado_id FROM outbox_eventos e " +
+            "WHERE estado = 'PENDIENTE' AND disponible_desde <= :ahora " +
+            "AND NOT EXISTS (SELECT 1 FROM outbox_eventos a WHERE a.agregado_id = e.agregado_id " +
+            "AND a.tipo = e.tipo AND a.id < e.id AND a.estado = 'PENDIENTE' AND a.disponible_desde > :ahora) " +
+            "ORDER BY id LIMIT :limite FOR UPDATE SKIP LOCKED) " +
+            "UPDATE outbox_eventos o SET disponible_desde = :bloqueoHasta, intentos = o.intentos + 1 " +
+            "FROM candidatos c WHERE o.id = c.id " +
+            "AND NOT EXISTS (SELECT 1 FROM outbox_eventos a WHERE a.agregado_id = c.agregado_id " +
+            "AND a.tipo = c.tipo AND a.id < c.id AND a.estado = 'PENDIENTE' " +
+            "AND a.id NOT IN (SELECT id FROM candidatos)) " +
+            "RETURNING o.*")
+    Flux<EventoOutbox> reclamarLote(LocalDateTime ahora, LocalDateTime bloqueoHasta, int limite);
+
+    @Modifying
+    @Query("UPDATE outbox_eventos SET estado = 'PUBLICADO', ultimo_error = NULL WHERE id = :id")
+    Mono<Integer> marcarPublicado(Long id);
+
+    @Modifying
+    @Query("UPDATE outbox_eventos SET estado = 'PUBLICADO', ultimo_error = NULL WHERE id = ANY(:ids)")
+    Mono<Integer> marcarPublicados(Long[] ids);
+
+    // Devuelve eventos reclamados que no se intentaron: quedan disponibles sin consumir un intento
+    @Modifying
+    @Query("UPDATE outbox_eventos SET disponible_desde = :ahora, intentos = intentos - 1 WHERE id = ANY(:ids)")
+    Mono<Integer> liberar(Long[] ids, LocalDateTime ahora);
+
+    @Modifying
+    @Query("UPDATE outbox_eventos SET disponible_desde = :disponibleDesde, ultimo_error = :error WHERE id = :id")
+    Mono<Integer> reprogramar(Long id, LocalDateTime disponibleDesde, String error);
+
+    @Modifying
+    @Query("UPDATE outbox_eventos SET estado = 'FALLIDO', ultimo_error = :error WHERE id = :id")
+    Mono<Integer> marcarFallido(Long id, String error);
+}
@@ -1,11 +1,60 @@
 package com.practica.pedidos.repository;
 
 import com.practica.pedidos.entity.Pedido;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-public interface PedidoRepository extends R2dbcRepository<Pedido, Long> {
+import java.time.LocalDateTime;
+
+public interface PedidoRepository extends R2dbcRepository<Pedido, Long>, PedidoRepositoryCustom {
     Flux<Pedido> findByCliente(String cliente);
 
     Flux<Pedido> findByEstado(String estado);
+
+    // Paginación por cursor (keyset) sobre la clave primaria
+    @Query("SELECT * FROM pedidos WHERE id > :cursor ORDER BY id LIMIT :limit")
+    Flux<Pedido> buscarPagina(Long cursor, int limit);
+
+    // Transición de estado atómica: solo actualiza si el estado actual está en :estadosOrigen.
+    // Vacío si el pedido no existe o la transición no aplica
+    @Query("UPDATE pedidos SET estado = :nuevoEstado, version = version + 1 WHERE id = :id AND estado = ANY(:estadosOrigen) RETURNING *")
+    Mono<Pedido> actualizarEstado(Long id, String nuevoEstado, String[] estadosOrigen);
+
+    // Como actualizarEstado, pero además exige que la reserva de stock del pedido se haya aplicado
+    // (saga en STOCK_RESERVADO, o sin saga en pedidos anteriores a ella)
+    @Query("UPDATE pedidos SET estado = :nuevoEstado, version = version + 1 WHERE id = :id AND estado = ANY(:estadosOrigen) " +
+            "AND NOT EXISTS (SELECT 1 FROM sagas_pedido s WHERE s.pedido_id = pedidos.id AND s.paso <> 'STOCK_RESERVADO') " +
+            "RETURNING *")
+    Mono<Pedido> actualizarEstadoConStockReservado(Long id, String nuevoEstado, String[] estadosOrigen);
+
+    // Canal de LISTEN/NOTIFY que reparte los eventos de pedidos entre réplicas
+    @Query("SELECT pg_notify('pedidos_eventos', :payload)")
+    Mono<Void> notificarEvento(String payload);
+
+    // Recepción asíncrona: RECIBIDO -> PENDIENTE con el total ya calculado. Vacío si otro proceso
+    // ya lo confirmó, lo rechazó o el cliente lo canceló
+    @Query("UPDATE pedidos SET estado = 'PENDIENTE', total = :total, version = version + 1 WHERE id = :id AND estado = 'RECIBIDO' RETURNING *")
+    Mono<Pedido> confirmarRecibido(Long id, Double total);
+
+    // Pedidos RECIBIDO anteriores a :antesDe, para recuperar los que quedaron fuera de la cola (reinicio, caída)
+    @Query("SELECT id FROM pedidos WHERE estado = 'RECIBIDO' AND fecha < :antesDe AND id > :cursor ORDER BY id LIMIT :limite")
+    Flux<Long> buscarRecibidos(LocalDateTime antesDe, Long cursor, int limite);
+
+    // Un solo DELETE: los detalles se eliminan por ON DELETE CASCADE. Vacío si el pedido no existe
+    @Query("DELETE FROM pedidos WHERE id = :id RETURNING id")
+    Mono<Long> eliminarPorId(Long id);
+
+    // Purga por lotes: cada llamada borra como máximo :limite pedidos en su propia sentencia corta
+    @Modifying
+    @Query("DELETE FROM pedidos WHERE id IN (" +
+            "SELECT id FROM pedidos WHERE fecha >= :desde AND fecha < :hasta ORDER BY id LIMIT :limite)")
+    Mono<Integer> eliminarLotePorFecha(LocalDateTime desde, LocalDateTime hasta, int limite);
+
+    @Modifying
+    @Query("DELETE FROM pedidos WHERE id IN (" +
+            "SELECT id FROM pedidos WHERE id >= :idDesde AND id <= :idHasta ORDER BY id LIMIT :limite)")
+    Mono<Integer> eliminarLotePorIds(Long idDesde, Long idHasta, int limite);
 }
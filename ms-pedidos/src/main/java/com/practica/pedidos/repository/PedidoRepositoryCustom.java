@@ -0,0 +1,37 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.Pedido;
+import io.r2dbc.spi.Readable;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+public interface PedidoRepositoryCustom {
+
+    /**
+     * Página de pedidos por keyset (id > cursor, orden por id) con filtros opcionales. Solo los filtros
+     * no nulos entran en el WHERE, así la consulta puede usar los índices (cliente, id), (estado, id) o fecha.
+     * @param desde fecha inicial, inclusive
+     * @param hasta fecha final, exclusiva
+     */
+    Flux<Pedido> buscarFiltrados(String cliente, String estado, LocalDateTime desde, LocalDateTime hasta,
+                                 Long cursor, int limit);
+
+    /**
+     * Inserta los pedidos con INSERT multi-fila. Los ids se reservan antes con nextval en una sola
+     * consulta, así cada pedido recibe su id sin depender del orden de RETURNING.
+     * @param pedidos pedidos a insertar (sin id); se les asigna el id reservado
+     * @return los mismos pedidos, con id
+     */
+    Flux<Pedido> insertarLote(List<Pedido> pedidos);
+
+    /**
+     * Recorre pedidos ⋈ detalle_pedidos (LEFT JOIN, ordenado por pedido y detalle) con un único cursor
+     * que trae las filas por tandas. Cada fila se entrega al mapper sin construir entidades.
+     * @param desde fecha inicial, inclusive; null sin límite
+     * @param hasta fecha final, exclusiva; null sin límite
+     */
+    <T> Flux<T> recorrerConDetalles(LocalDateTime desde, LocalDateTime hasta, Function<Readable, T> mapper);
+}
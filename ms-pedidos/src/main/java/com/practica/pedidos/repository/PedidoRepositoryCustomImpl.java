@@ -0,0 +1,114 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.Pedido;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+@RequiredArgsConstructor
+public class PedidoRepositoryCustomImpl implements PedidoRepositoryCustom {
+
+    // 5 parámetros por fila; PostgreSQL admite como máximo 65535 parámetros por sentencia
+    private static final int FILAS_POR_SENTENCIA = 1000;
+    // Filas por tanda del cursor de exportación
+    private static final int FILAS_POR_FETCH = 2000;
+
+    private final R2dbcEntityTemplate template;
+    private final DatabaseClient databaseClient;
+
+    @Override
+    public Flux<Pedido> buscarFiltrados(String cliente, String estado, LocalDateTime desde, LocalDateTime hasta,
+                                        Long cursor, int limit) {
+        Criteria criteria = Criteria.where("id").greaterThan(cursor);
+        if (cliente != null) {
+            criteria = criteria.and("cliente").is(cliente);
+        }
+        if (estado != null) {
+            criteria = criteria.and("estado").is(estado);
+        }
+        if (desde != null) {
+            criteria = criteria.and("fecha").greaterThanOrEquals(desde);
+        }
+        if (hasta != null) {
+            criteria = criteria.and("fecha").lessThan(hasta);
+        }
+        return template.select(Pedido.class)
+                .matching(Query.query(criteria).sort(Sort.by("id")).limit(limit))
+                .all();
+    }
+
+    @Override
+    public Flux<Pedido> insertarLote(List<Pedido> pedidos) {
+        return Flux.fromIterable(pedidos)
+                .buffer(FILAS_POR_SENTENCIA)
+                .concatMap(this::insertarSentencia);
+    }
+
+    private Flux<Pedido> insertarSentencia(List<Pedido> lote) {
+        return databaseClient.sql("SELECT nextval(pg_get_serial_sequence('pedidos', 'id')) AS id FROM generate_series(1, :cantidad)")
+                .bind("cantidad", lote.size())
+                .map(row -> row.get("id", Long.class))
+                .all()
+                .collectList()
+                .flatMapMany(ids -> {
+                    StringBuilder sql = new StringBuilder("INSERT INTO pedidos (id, cliente, fecha, total, estado) VALUES ");
+                    for (int i = 0; i < lote.size(); i++) {
+                        int base = i * 5;
+                        sql.append(i == 0 ? "" : ", ")
+                                .append("($").append(base + 1)
+                                .append(", $").append(base + 2)
+                                .append(", $").append(base + 3)
+                                .append(", $").append(base + 4)
+                                .append(", $").append(base + 5).append(")");
+                    }
+
+                    DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString());
+                    for (int i = 0; i < lote.size(); i++) {
+                        Pedido pedido = lote.get(i);
+                        pedido.setId(ids.get(i));
+                        int base = i * 5;
+                        spec = spec.bind(base, pedido.getId())
+                                .bind(base + 1, pedido.getCliente())
+                                .bind(base + 2, pedido.getFecha())
+                                .bind(base + 3, BigDecimal.valueOf(pedido.getTotal()))
+                                .bind(base + 4, pedido.getEstado());
+                    }
+                    return spec.then().thenMany(Flux.fromIterable(lote));
+                });
+    }
+
+    @Override
+    public <T> Flux<T> recorrerConDetalles(LocalDateTime desde, LocalDateTime hasta, Function<Readable, T> mapper) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT p.id, p.cliente, p.fecha, p.total, p.estado, " +
+                "d.id AS detalle_id, d.producto_id, d.cantidad, d.precio_unitario " +
+                "FROM pedidos p LEFT JOIN detalle_pedidos d ON d.pedido_id = p.id WHERE true");
+        if (desde != null) {
+            sql.append(" AND p.fecha >= :desde");
+        }
+        if (hasta != null) {
+            sql.append(" AND p.fecha < :hasta");
+        }
+        sql.append(" ORDER BY p.id, d.id");
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql.toString())
+                .filter(statement -> statement.fetchSize(FILAS_POR_FETCH));
+        if (desde != null) {
+            spec = spec.bind("desde", desde);
+        }
+        if (hasta != null) {
+            spec = spec.bind("hasta", hasta);
+        }
+        return spec.map(mapper::apply).all();
+    }
+}
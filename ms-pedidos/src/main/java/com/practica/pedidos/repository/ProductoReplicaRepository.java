@@ -0,0 +1,24 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.ProductoReplica;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ProductoReplicaRepository extends ReactiveCrudRepository<ProductoReplica, Long> {
+
+    @Modifying
+    @Query("INSERT INTO productos_replica (id, nombre, descripcion, precio, stock, activo, fecha_actualizacion) " +
+            "VALUES (:id, :nombre, :descripcion, :precio, :stock, :activo, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (id) DO UPDATE SET nombre = EXCLUDED.nombre, descripcion = EXCLUDED.descripcion, " +
+            "precio = EXCLUDED.precio, stock = EXCLUDED.stock, activo = EXCLUDED.activo, " +
+            "fecha_actualizacion = EXCLUDED.fecha_actualizacion")
+    Mono<Integer> guardar(Long id, String nombre, String descripcion, Double precio, Integer stock, Boolean activo);
+
+    @Modifying
+    @Query("UPDATE productos_replica SET stock = :stock, fecha_actualizacion = CURRENT_TIMESTAMP WHERE id = :id")
+    Mono<Integer> actualizarStock(Long id, Integer stock);
+}
@@ -0,0 +1,19 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.ReplicaOffset;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReplicaOffsetRepository extends ReactiveCrudRepository<ReplicaOffset, Integer> {
+
+    // Nunca retrocede: con varias réplicas de ms-pedidos escribiendo, gana el offset más alto
+    @Modifying
+    @Query("INSERT INTO productos_replica_offsets (particion, offset_siguiente) VALUES (:particion, :offsetSiguiente) " +
+            "ON CONFLICT (particion) DO UPDATE SET offset_siguiente = " +
+            "GREATEST(productos_replica_offsets.offset_siguiente, EXCLUDED.offset_siguiente)")
+    Mono<Integer> avanzar(Integer particion, Long offsetSiguiente);
+}
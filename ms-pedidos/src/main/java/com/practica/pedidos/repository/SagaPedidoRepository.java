@@ -0,0 +1,44 @@
+package com.practica.pedidos.repository;
+
+import com.practica.pedidos.entity.SagaPedido;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface SagaPedidoRepository extends ReactiveCrudRepository<SagaPedido, Long> {
+
+    // INSERT explícito: con el id ya asignado, save() intentaría un UPDATE
+    @Modifying
+    @Query("INSERT INTO sagas_pedido (pedido_id, paso, reserva, fecha_actualizacion) " +
+            "VALUES (:pedidoId, 'RESERVA_SOLICITADA', :reserva, :ahora)")
+    Mono<Integer> iniciar(Long pedidoId, String reserva, LocalDateTime ahora);
+
+    // Avanza solo desde los pasos indicados; vacío si la saga no existe o ya pasó a otro paso
+    @Query("UPDATE sagas_pedido SET paso = :paso, fecha_actualizacion = :ahora " +
+            "WHERE pedido_id = :pedidoId AND paso = ANY(:desde) RETURNING *")
+    Mono<SagaPedido> avanzar(Long pedidoId, String paso, String[] desde, LocalDateTime ahora);
+
+    // Pedidos cancelados o rechazados cuya reserva todavía no tiene compensación en curso
+    @Query("SELECT s.* FROM sagas_pedido s JOIN pedidos p ON p.id = s.pedido_id " +
+            "WHERE s.paso IN ('RESERVA_SOLICITADA', 'STOCK_RESERVADO') " +
+            "AND p.estado IN ('CANCELADO', 'RECHAZADO') AND s.fecha_actualizacion < :antesDe " +
+            "ORDER BY s.fecha_actualizacion LIMIT :limite")
+    Flux<SagaPedido> buscarPorCompensar(LocalDateTime antesDe, int limite);
+
+    // Reclama sagas con un paso solicitado pero sin evento pendiente en el outbox (el paso se publicó y
+    // no se registró, o el evento se descartó). Mover fecha_actualizacion evita reclamarlas de nuevo
+    // hasta la próxima antigüedad; SKIP LOCKED reparte el trabajo entre réplicas
+    @Query("UPDATE sagas_pedido SET fecha_actualizacion = :ahora " +
+            "WHERE pedido_id IN (SELECT s.pedido_id FROM sagas_pedido s " +
+            "WHERE s.paso IN ('RESERVA_SOLICITADA', 'COMPENSACION_SOLICITADA') AND s.fecha_actualizacion < :antesDe " +
+            "AND NOT EXISTS (SELECT 1 FROM outbox_eventos e WHERE e.agregado_id = s.pedido_id AND e.estado = 'PENDIENTE') " +
+            "ORDER BY s.fecha_actualizacion LIMIT :limite FOR UPDATE SKIP LOCKED) " +
+            "RETURNING *")
+    Flux<SagaPedido> reclamarEstancadas(LocalDateTime antesDe, LocalDateTime ahora, int limite);
+}
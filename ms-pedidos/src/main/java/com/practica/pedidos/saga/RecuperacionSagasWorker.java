@@ -0,0 +1,69 @@
+package com.practica.pedidos.saga;
+
+import com.practica.pedidos.service.SagaPedidoService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Escáner de sagas de pedidos que quedaron a medias por una caída o por un evento descartado: cada
+ * intervalo compensa o vuelve a emitir hasta tamano-lote sagas sin avances desde hace antiguedad.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pedidos.sagas.recuperacion.enabled", havingValue = "true", matchIfMissing = true)
+public class RecuperacionSagasWorker {
+
+    private final SagaPedidoService sagaPedidoService;
+    private final Duration intervalo;
+    private final Duration antiguedad;
+    private final int tamanoLote;
+
+    private Disposable suscripcion;
+
+    public RecuperacionSagasWorker(SagaPedidoService sagaPedidoService,
+                                   @Value("${pedidos.sagas.recuperacion.intervalo:1m}") Duration intervalo,
+                                   @Value("${pedidos.sagas.recuperacion.antiguedad:5m}") Duration antiguedad,
+                                   @Value("${pedidos.sagas.recuperacion.tamano-lote:100}") int tamanoLote) {
+        this.sagaPedidoService = sagaPedidoService;
+        this.intervalo = intervalo;
+        this.antiguedad = antiguedad;
+        this.tamanoLote = tamanoLote;
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        log.info("Iniciando recuperación de sagas de pedidos (cada {}, antigüedad {})", intervalo, antiguedad);
+        suscripcion = Flux.interval(intervalo)
+                .onBackpressureDrop()
+                .concatMap(tick -> recuperar())
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void detener() {
+        if (suscripcion != null) {
+            suscripcion.dispose();
+        }
+    }
+
+    private Mono<Void> recuperar() {
+        return sagaPedidoService.recuperar(LocalDateTime.now().minus(antiguedad), tamanoLote)
+                .filter(retomadas -> retomadas > 0)
+                .doOnNext(retomadas -> log.info("Sagas de pedidos retomadas: {}", retomadas))
+                .then()
+                .onErrorResume(error -> {
+                    log.error("Error recuperando sagas de pedidos", error);
+                    return Mono.empty();
+                });
+    }
+}
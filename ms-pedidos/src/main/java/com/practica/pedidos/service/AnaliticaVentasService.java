@@ -0,0 +1,307 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ProductoVendidoDTO;
+import com.practica.pedidos.dto.TicketPromedioDTO;
+import com.practica.pedidos.dto.VentaDiariaDTO;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.exception.AnaliticaNoDisponibleException;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Analítica de ventas sobre las líneas de pedido guardadas en memoria en ColumnasVentas, para no
+ * lanzar agregaciones sobre detalle_pedidos en la base transaccional. Las columnas se cargan desde
+ * la base al arrancar (y se recargan periódicamente, ver RecargaAnaliticaWorker) y crecen con cada
+ * pedido que confirma PedidoService.
+ *
+ * Cuentan como venta los pedidos PENDIENTE y PROCESADO. Un pedido cancelado después de registrado
+ * sigue sumando hasta la siguiente recarga, igual que los pedidos importados aparecen recién en ella.
+ * Los rangos de fechas son [desde, hasta) por día.
+ */
+@Slf4j
+@Service
+public class AnaliticaVentasService {
+
+    private static final Set<String> ESTADOS_VENTA = Set.of("PENDIENTE", "PROCESADO");
+    private static final int LIMITE_MAXIMO_TOP = 100;
+    private static final int DIAS_MAXIMOS = 3660;
+
+    private final PedidoRepository pedidoRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    private volatile ColumnasVentas columnas = new ColumnasVentas();
+    private volatile boolean cargada;
+    // Pedidos registrados durante una recarga; se reaplican sobre las columnas nuevas si la carga no
+    // los vio. null fuera de una recarga. Protegido por this
+    private List<PedidoDTO> registradosDuranteRecarga;
+
+    // Línea leída de la base durante la carga
+    private record FilaVenta(long pedidoId, String estado, LocalDateTime fecha, Long productoId, Integer cantidad,
+                             BigDecimal precioUnitario) {
+    }
+
+    public AnaliticaVentasService(PedidoRepository pedidoRepository,
+                                  TransactionalOperator transactionalOperator,
+                                  MeterRegistry meterRegistry) {
+        this.pedidoRepository = pedidoRepository;
+        this.transactionalOperator = transactionalOperator;
+        Gauge.builder("pedidos.analitica.lineas", this, servicio -> servicio.columnas.corte().tamano())
+                .description("Líneas de pedido cargadas en la analítica en memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Agrega un pedido ya confirmado. Se invoca después del commit; los pedidos que no cuentan como
+     * venta se ignoran.
+     */
+    public void registrar(PedidoDTO pedido) {
+        if (!ESTADOS_VENTA.contains(pedido.getEstado()) || pedido.getDetalles() == null || pedido.getDetalles().isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (registradosDuranteRecarga != null) {
+                registradosDuranteRecarga.add(pedido);
+            }
+            agregar(columnas, pedido);
+        }
+    }
+
+    /**
+     * Reconstruye las columnas desde la base con un solo cursor y las reemplaza al terminar; mientras
+     * tanto las consultas siguen usando las anteriores.
+     */
+    public Mono<Void> recargar() {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                registradosDuranteRecarga = new ArrayList<>();
+            }
+            ColumnasVentas nuevas = new ColumnasVentas();
+            return pedidoRepository.recorrerConDetalles(null, null, AnaliticaVentasService::leerFila)
+                    .as(transactionalOperator::transactional)
+                    .filter(fila -> fila.productoId() != null && ESTADOS_VENTA.contains(fila.estado()))
+                    .bufferUntilChanged(FilaVenta::pedidoId)
+                    .doOnNext(lineas -> agregar(nuevas, lineas))
+                    .then(Mono.fromRunnable(() -> publicar(nuevas)))
+                    .doOnError(error -> {
+                        synchronized (this) {
+                            registradosDuranteRecarga = null;
+                        }
+                    })
+                    .then();
+        });
+    }
+
+    private synchronized void publicar(ColumnasVentas nuevas) {
+        // La carga recorre los pedidos ordenados por id: la columna de pedidos está ordenada
+        ColumnasVentas.Corte cargado = nuevas.corte();
+        for (PedidoDTO pedido : registradosDuranteRecarga) {
+            if (Arrays.binarySearch(cargado.pedido(), 0, cargado.tamano(), pedido.getId()) < 0) {
+                agregar(nuevas, pedido);
+            }
+        }
+        registradosDuranteRecarga = null;
+        columnas = nuevas;
+        cargada = true;
+        log.info("Analítica de ventas cargada: {} líneas de pedido", nuevas.corte().tamano());
+    }
+
+    /**
+     * Importe, unidades y pedidos por día, incluidos los días sin ventas.
+     */
+    public Mono<List<VentaDiariaDTO>> ventasPorDia(LocalDate desde, LocalDate hasta) {
+        return consultar(() -> {
+            if (desde == null || hasta == null || !desde.isBefore(hasta)) {
+                throw new BadRequestException("El rango de fechas requiere desde < hasta");
+            }
+            if (hasta.toEpochDay() - desde.toEpochDay() > DIAS_MAXIMOS) {
+                throw new BadRequestException("El rango no puede superar " + DIAS_MAXIMOS + " días");
+            }
+            ColumnasVentas.Corte corte = columnas.corte();
+            int inicio = (int) desde.toEpochDay();
+            int dias = (int) (hasta.toEpochDay() - inicio);
+            long[] pedidoColumna = corte.pedido();
+            int[] diaColumna = corte.dia();
+            int[] cantidad = corte.cantidad();
+            long[] centavos = corte.centavos();
+            long[] importe = new long[dias];
+            long[] unidades = new long[dias];
+            long[] pedidos = new long[dias];
+            for (int i = 0; i < corte.tamano(); i++) {
+                int dia = diaColumna[i] - inicio;
+                if (dia >= 0 && dia < dias) {
+                    importe[dia] += centavos[i];
+                    unidades[dia] += cantidad[i];
+                    // Las líneas de un pedido son contiguas: se cuenta la primera
+                    if (i == 0 || pedidoColumna[i] != pedidoColumna[i - 1]) {
+                        pedidos[dia]++;
+                    }
+                }
+            }
+            List<VentaDiariaDTO> resultado = new ArrayList<>(dias);
+            for (int dia = 0; dia < dias; dia++) {
+                resultado.add(new VentaDiariaDTO(LocalDate.ofEpochDay(inicio + dia), importe[dia] / 100.0,
+                        unidades[dia], pedidos[dia]));
+            }
+            return resultado;
+        });
+    }
+
+    /**
+     * Productos más vendidos por importe o por unidades.
+     * @param orden importe o unidades
+     */
+    public Mono<List<ProductoVendidoDTO>> topProductos(LocalDate desde, LocalDate hasta, int limite, String orden) {
+        return consultar(() -> {
+            if (limite < 1 || limite > LIMITE_MAXIMO_TOP) {
+                throw new BadRequestException("El límite debe estar entre 1 y " + LIMITE_MAXIMO_TOP);
+            }
+            if (!"importe".equals(orden) && !"unidades".equals(orden)) {
+                throw new BadRequestException("Orden inválido: use importe o unidades");
+            }
+            int[] rango = rango(desde, hasta);
+            ColumnasVentas.Corte corte = columnas.corte();
+            int[] diaColumna = corte.dia();
+            int[] producto = corte.producto();
+            int[] cantidad = corte.cantidad();
+            long[] centavos = corte.centavos();
+            long[] importe = new long[corte.productos()];
+            long[] unidades = new long[corte.productos()];
+            for (int i = 0; i < corte.tamano(); i++) {
+                int dia = diaColumna[i];
+                if (dia >= rango[0] && dia < rango[1]) {
+                    importe[producto[i]] += centavos[i];
+                    unidades[producto[i]] += cantidad[i];
+                }
+            }
+
+            // Montículo de mínimos con los mejores limite productos vistos hasta ahora
+            long[] metrica = "importe".equals(orden) ? importe : unidades;
+            PriorityQueue<Integer> mejores = new PriorityQueue<>(limite + 1,
+                    (a, b) -> Long.compare(metrica[a], metrica[b]));
+            for (int codigo = 0; codigo < corte.productos(); codigo++) {
+                if (unidades[codigo] == 0) {
+                    continue;
+                }
+                mejores.add(codigo);
+                if (mejores.size() > limite) {
+                    mejores.poll();
+                }
+            }
+            ProductoVendidoDTO[] resultado = new ProductoVendidoDTO[mejores.size()];
+            for (int i = resultado.length - 1; i >= 0; i--) {
+                int codigo = mejores.poll();
+                resultado[i] = new ProductoVendidoDTO(corte.diccionario()[codigo], unidades[codigo], importe[codigo] / 100.0);
+            }
+            return List.of(resultado);
+        });
+    }
+
+    /**
+     * Tamaño medio de los pedidos: importe, unidades y líneas por pedido.
+     */
+    public Mono<TicketPromedioDTO> ticketPromedio(LocalDate desde, LocalDate hasta) {
+        return consultar(() -> {
+            int[] rango = rango(desde, hasta);
+            ColumnasVentas.Corte corte = columnas.corte();
+            long[] pedidoColumna = corte.pedido();
+            int[] diaColumna = corte.dia();
+            int[] cantidad = corte.cantidad();
+            long[] centavos = corte.centavos();
+            long pedidos = 0;
+            long lineas = 0;
+            long unidades = 0;
+            long importe = 0;
+            for (int i = 0; i < corte.tamano(); i++) {
+                int dia = diaColumna[i];
+                if (dia >= rango[0] && dia < rango[1]) {
+                    lineas++;
+                    unidades += cantidad[i];
+                    importe += centavos[i];
+                    if (i == 0 || pedidoColumna[i] != pedidoColumna[i - 1]) {
+                        pedidos++;
+                    }
+                }
+            }
+            if (pedidos == 0) {
+                return new TicketPromedioDTO(0L, 0.0, 0.0, 0.0);
+            }
+            return new TicketPromedioDTO(pedidos, importe / 100.0 / pedidos,
+                    (double) unidades / pedidos, (double) lineas / pedidos);
+        });
+    }
+
+    private <T> Mono<T> consultar(Supplier<T> consulta) {
+        return Mono.defer(() -> cargada
+                ? Mono.fromSupplier(consulta)
+                : Mono.error(new AnaliticaNoDisponibleException("La analítica de ventas todavía se está cargando")));
+    }
+
+    // Rango opcional [desde, hasta) como días epoch; sin límite cuando falta un extremo
+    private static int[] rango(LocalDate desde, LocalDate hasta) {
+        if (desde != null && hasta != null && !desde.isBefore(hasta)) {
+            throw new BadRequestException("El rango de fechas requiere desde < hasta");
+        }
+        return new int[]{
+                desde != null ? (int) desde.toEpochDay() : Integer.MIN_VALUE,
+                hasta != null ? (int) hasta.toEpochDay() : Integer.MAX_VALUE};
+    }
+
+    private static FilaVenta leerFila(Readable fila) {
+        return new FilaVenta(fila.get("id", Long.class), fila.get("estado", String.class),
+                fila.get("fecha", LocalDateTime.class), fila.get("producto_id", Long.class),
+                fila.get("cantidad", Integer.class), fila.get("precio_unitario", BigDecimal.class));
+    }
+
+    private static void agregar(ColumnasVentas destino, List<FilaVenta> lineas) {
+        long[] productoIds = new long[lineas.size()];
+        int[] cantidades = new int[lineas.size()];
+        long[] centavos = new long[lineas.size()];
+        for (int i = 0; i < lineas.size(); i++) {
+            FilaVenta linea = lineas.get(i);
+            productoIds[i] = linea.productoId();
+            cantidades[i] = linea.cantidad();
+            centavos[i] = linea.precioUnitario()
+                    .multiply(BigDecimal.valueOf(linea.cantidad()))
+                    .movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP)
+                    .longValue();
+        }
+        FilaVenta primera = lineas.get(0);
+        destino.agregar(primera.pedidoId(), (int) primera.fecha().toLocalDate().toEpochDay(),
+                productoIds, cantidades, centavos);
+    }
+
+    private static void agregar(ColumnasVentas destino, PedidoDTO pedido) {
+        List<DetallePedidoDTO> detalles = pedido.getDetalles();
+        long[] productoIds = new long[detalles.size()];
+        int[] cantidades = new int[detalles.size()];
+        long[] centavos = new long[detalles.size()];
+        for (int i = 0; i < detalles.size(); i++) {
+            DetallePedidoDTO detalle = detalles.get(i);
+            productoIds[i] = detalle.getProductoId();
+            cantidades[i] = detalle.getCantidad();
+            centavos[i] = Math.round(detalle.getCantidad() * detalle.getPrecioUnitario() * 100);
+        }
+        LocalDateTime fecha = pedido.getFecha() != null ? pedido.getFecha() : LocalDateTime.now();
+        destino.agregar(pedido.getId(), (int) fecha.toLocalDate().toEpochDay(), productoIds, cantidades, centavos);
+    }
+}
@@ -0,0 +1,59 @@
+package com.practica.pedidos.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.practica.pedidos.dto.PedidoDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Caché acotada de pedidos ya armados con sus detalles, por id. Una entrada solo se reemplaza por
+ * otra de versión mayor o igual, así que una lectura lenta no pisa lo que escribió un cambio de
+ * estado concurrente. Las escrituras de esta instancia la actualizan o invalidan; el TTL acota lo
+ * que puede quedar desactualizado por cambios hechos en otras réplicas.
+ * Los PedidoDTO guardados se comparten entre solicitudes: no deben modificarse.
+ */
+@Service
+public class CachePedidosService {
+
+    private final Cache<Long, PedidoVersionado> pedidos;
+
+    public CachePedidosService(@Value("${pedidos.cache.max-size:10000}") long maxSize,
+                               @Value("${pedidos.cache.ttl:30s}") Duration ttl,
+                               MeterRegistry meterRegistry) {
+        this.pedidos = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pedidos, "pedidos");
+    }
+
+    public PedidoVersionado obtener(Long id) {
+        return pedidos.getIfPresent(id);
+    }
+
+    public PedidoVersionado guardar(PedidoDTO pedido, long version) {
+        PedidoVersionado entrada = new PedidoVersionado(pedido, version);
+        pedidos.asMap().merge(pedido.getId(), entrada,
+                (actual, nueva) -> nueva.version() >= actual.version() ? nueva : actual);
+        return entrada;
+    }
+
+    // Cambio hecho en otra réplica: se descarta solo si la entrada local es más vieja
+    public void descartarAnterior(Long id, long version) {
+        pedidos.asMap().computeIfPresent(id, (clave, actual) -> actual.version() < version ? null : actual);
+    }
+
+    public void invalidar(Long id) {
+        pedidos.invalidate(id);
+    }
+
+    public void invalidarTodo() {
+        pedidos.invalidateAll();
+    }
+}
@@ -0,0 +1,78 @@
+package com.practica.pedidos.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Líneas de pedido vendidas en columnas de primitivos: una posición por línea, con los pedidos en
+ * posiciones contiguas. Admite un solo escritor a la vez (agregar está sincronizado) y lectores sin
+ * bloqueo: cada lectura toma un Corte, que solo ve las posiciones publicadas antes de tomarlo.
+ *
+ * El producto se guarda codificado como índice denso en el diccionario, para agregar por producto
+ * sobre un arreglo en lugar de un mapa.
+ */
+class ColumnasVentas {
+
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    /**
+     * Vista inmutable de las primeras {@code tamano} posiciones. Los arreglos pueden ser compartidos
+     * con cortes posteriores, pero las posiciones visibles aquí ya no cambian.
+     */
+    record Corte(long[] pedido, int[] producto, int[] cantidad, long[] centavos, int[] dia,
+                 long[] diccionario, int tamano, int productos) {
+    }
+
+    private final Map<Long, Integer> codigos = new HashMap<>();
+    // Solo se reemplaza después de escribir las posiciones nuevas, así el corte publicado es seguro
+    private volatile Corte corte = new Corte(new long[CAPACIDAD_INICIAL], new int[CAPACIDAD_INICIAL],
+            new int[CAPACIDAD_INICIAL], new long[CAPACIDAD_INICIAL], new int[CAPACIDAD_INICIAL],
+            new long[64], 0, 0);
+
+    Corte corte() {
+        return corte;
+    }
+
+    /**
+     * Agrega todas las líneas de un pedido juntas; los arreglos tienen el mismo largo.
+     * @param centavos importe de cada línea (cantidad x precio unitario) en centavos
+     */
+    synchronized void agregar(long pedidoId, int dia, long[] productoIds, int[] cantidades, long[] centavos) {
+        Corte actual = corte;
+        int tamano = actual.tamano() + productoIds.length;
+        long[] pedido = actual.pedido();
+        int[] producto = actual.producto();
+        int[] cantidad = actual.cantidad();
+        long[] importe = actual.centavos();
+        int[] diaColumna = actual.dia();
+        if (tamano > pedido.length) {
+            int capacidad = Math.max(tamano, pedido.length * 2);
+            pedido = Arrays.copyOf(pedido, capacidad);
+            producto = Arrays.copyOf(producto, capacidad);
+            cantidad = Arrays.copyOf(cantidad, capacidad);
+            importe = Arrays.copyOf(importe, capacidad);
+            diaColumna = Arrays.copyOf(diaColumna, capacidad);
+        }
+        long[] diccionario = actual.diccionario();
+        int productos = actual.productos();
+        for (int i = 0; i < productoIds.length; i++) {
+            int posicion = actual.tamano() + i;
+            Integer codigo = codigos.get(productoIds[i]);
+            if (codigo == null) {
+                if (productos == diccionario.length) {
+                    diccionario = Arrays.copyOf(diccionario, productos * 2);
+                }
+                codigo = productos++;
+                diccionario[codigo] = productoIds[i];
+                codigos.put(productoIds[i], codigo);
+            }
+            pedido[posicion] = pedidoId;
+            producto[posicion] = codigo;
+            cantidad[posicion] = cantidades[i];
+            importe[posicion] = centavos[i];
+            diaColumna[posicion] = dia;
+        }
+        corte = new Corte(pedido, producto, cantidad, importe, diaColumna, diccionario, tamano, productos);
+    }
+}
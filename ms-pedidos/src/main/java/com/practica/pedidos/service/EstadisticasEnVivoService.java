@@ -0,0 +1,235 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.EstadisticasEnVivoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ProductoFrecuenteDTO;
+import com.practica.pedidos.dto.SketchVentanaDTO;
+import com.practica.pedidos.estadistica.CountMinSketch;
+import com.practica.pedidos.estadistica.HyperLogLog;
+import com.practica.pedidos.exception.BadRequestException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Estadísticas aproximadas de los pedidos confirmados en una ventana deslizante de
+ * {@code intervalos} intervalos: clientes distintos (HyperLogLog) y productos con más unidades
+ * (Count-Min Sketch con top-k). Registrar un pedido cuesta unas pocas operaciones sobre arreglos.
+ *
+ * El intervalo en curso tiene un fragmento por núcleo, elegido por el hilo que registra (los
+ * event loops de Netty son uno por núcleo), para no competir por un único lock. Al cerrar el
+ * intervalo sus fragmentos se fusionan en uno solo. Los sketches de la ventana se pueden exportar
+ * y fusionar con los de otras réplicas.
+ */
+@Service
+public class EstadisticasEnVivoService {
+
+    private static final int PRECISION_HLL = 12;
+    private static final int PROFUNDIDAD_CMS = 4;
+    private static final int ANCHO_CMS = 1024;
+
+    private final long intervaloMillis;
+    private final int intervalos;
+    private final int topK;
+    private final LongSupplier reloj;
+    private final int fragmentos = Runtime.getRuntime().availableProcessors();
+    private final MultiGauge productosTop;
+
+    private volatile Intervalo actual;
+    // Intervalos cerrados dentro de la ventana, del más antiguo al más nuevo. Protegido por this
+    private final Deque<IntervaloCerrado> cerrados = new ArrayDeque<>();
+
+    private final class Sketches {
+        private final HyperLogLog clientes = new HyperLogLog(PRECISION_HLL);
+        private final CountMinSketch productos = new CountMinSketch(PROFUNDIDAD_CMS, ANCHO_CMS, topK);
+
+        void agregar(PedidoDTO pedido) {
+            if (pedido.getCliente() != null) {
+                clientes.agregar(pedido.getCliente());
+            }
+            for (DetallePedidoDTO detalle : pedido.getDetalles()) {
+                productos.agregar(detalle.getProductoId(), detalle.getCantidad());
+            }
+        }
+
+        void fusionar(Sketches otros) {
+            clientes.fusionar(otros.clientes);
+            productos.fusionar(otros.productos);
+        }
+    }
+
+    private final class Intervalo {
+        private final long numero;
+        private final Sketches[] fragmentos;
+        // Se marca antes de fusionar los fragmentos; quien lo ve en true vuelve a buscar el intervalo actual
+        private volatile boolean cerrado;
+
+        Intervalo(long numero) {
+            this.numero = numero;
+            this.fragmentos = new Sketches[EstadisticasEnVivoService.this.fragmentos];
+            for (int i = 0; i < fragmentos.length; i++) {
+                fragmentos[i] = new Sketches();
+            }
+        }
+    }
+
+    private record IntervaloCerrado(long numero, Sketches sketches) {
+    }
+
+    @Autowired
+    public EstadisticasEnVivoService(@Value("${pedidos.estadisticas.intervalo:1m}") Duration intervalo,
+                                     @Value("${pedidos.estadisticas.intervalos:60}") int intervalos,
+                                     @Value("${pedidos.estadisticas.top:10}") int topK,
+                                     MeterRegistry meterRegistry) {
+        this(intervalo, intervalos, topK, meterRegistry, System::currentTimeMillis);
+    }
+
+    EstadisticasEnVivoService(Duration intervalo, int intervalos, int topK, MeterRegistry meterRegistry,
+                              LongSupplier reloj) {
+        this.intervaloMillis = intervalo.toMillis();
+        this.intervalos = intervalos;
+        this.topK = topK;
+        this.reloj = reloj;
+        this.actual = new Intervalo(reloj.getAsLong() / intervaloMillis);
+        Gauge.builder("pedidos.estadisticas.clientes_distintos", this, servicio -> servicio.ventana().clientes.estimar())
+                .description("Clientes distintos estimados en la ventana deslizante")
+                .register(meterRegistry);
+        this.productosTop = MultiGauge.builder("pedidos.estadisticas.productos_top")
+                .description("Unidades estimadas de los productos más vendidos en la ventana, al cierre del último intervalo")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Agrega un pedido ya confirmado al fragmento del hilo actual.
+     */
+    public void registrar(PedidoDTO pedido) {
+        if (pedido.getDetalles() == null) {
+            return;
+        }
+        int indice = (int) (Thread.currentThread().getId() % fragmentos);
+        while (true) {
+            Intervalo intervalo = intervaloActual();
+            Sketches fragmento = intervalo.fragmentos[indice];
+            synchronized (fragmento) {
+                if (!intervalo.cerrado) {
+                    fragmento.agregar(pedido);
+                    return;
+                }
+            }
+        }
+    }
+
+    public Mono<EstadisticasEnVivoDTO> resumen() {
+        return Mono.fromSupplier(() -> resumir(desde(), ventana()));
+    }
+
+    public Mono<SketchVentanaDTO> sketch() {
+        return Mono.fromSupplier(() -> {
+            Sketches ventana = ventana();
+            return new SketchVentanaDTO(desde(), ventana.clientes.aBytes(), ventana.productos.aBytes());
+        });
+    }
+
+    /**
+     * Fusiona los sketches exportados por varias réplicas; desde es el inicio de ventana más antiguo.
+     */
+    public Mono<EstadisticasEnVivoDTO> combinar(List<SketchVentanaDTO> sketches) {
+        return Mono.fromSupplier(() -> {
+            if (sketches == null || sketches.isEmpty()) {
+                throw new BadRequestException("Debe enviar al menos un sketch");
+            }
+            try {
+                Sketches total = new Sketches();
+                for (SketchVentanaDTO sketch : sketches) {
+                    total.clientes.fusionar(HyperLogLog.desdeBytes(sketch.getClientes()));
+                    total.productos.fusionar(CountMinSketch.desdeBytes(sketch.getProductos()));
+                }
+                LocalDateTime desde = sketches.stream()
+                        .map(SketchVentanaDTO::getDesde)
+                        .filter(fecha -> fecha != null)
+                        .min(Comparator.naturalOrder())
+                        .orElse(null);
+                return resumir(desde, total);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Sketch inválido: " + e.getMessage());
+            }
+        });
+    }
+
+    private EstadisticasEnVivoDTO resumir(LocalDateTime desde, Sketches sketches) {
+        List<ProductoFrecuenteDTO> top = sketches.productos.top().stream()
+                .map(frecuencia -> new ProductoFrecuenteDTO(frecuencia.elemento(), frecuencia.estimacion()))
+                .toList();
+        return new EstadisticasEnVivoDTO(desde, sketches.clientes.estimar(), top);
+    }
+
+    private Intervalo intervaloActual() {
+        long numero = reloj.getAsLong() / intervaloMillis;
+        Intervalo intervalo = actual;
+        if (numero <= intervalo.numero) {
+            return intervalo;
+        }
+        synchronized (this) {
+            if (numero > actual.numero) {
+                rotar(numero);
+            }
+            return actual;
+        }
+    }
+
+    // Se invoca con el lock de this
+    private void rotar(long numero) {
+        Intervalo anterior = actual;
+        anterior.cerrado = true;
+        Sketches sellado = new Sketches();
+        for (Sketches fragmento : anterior.fragmentos) {
+            synchronized (fragmento) {
+                sellado.fusionar(fragmento);
+            }
+        }
+        cerrados.addLast(new IntervaloCerrado(anterior.numero, sellado));
+        actual = new Intervalo(numero);
+        while (!cerrados.isEmpty() && cerrados.peekFirst().numero() <= numero - intervalos) {
+            cerrados.removeFirst();
+        }
+        productosTop.register(ventana().productos.top().stream()
+                .map(frecuencia -> MultiGauge.Row.of(Tags.of("producto", String.valueOf(frecuencia.elemento())),
+                        frecuencia.estimacion()))
+                .toList(), true);
+    }
+
+    private synchronized Sketches ventana() {
+        Intervalo intervalo = intervaloActual();
+        Sketches total = new Sketches();
+        for (IntervaloCerrado cerrado : cerrados) {
+            total.fusionar(cerrado.sketches());
+        }
+        for (Sketches fragmento : intervalo.fragmentos) {
+            synchronized (fragmento) {
+                total.fusionar(fragmento);
+            }
+        }
+        return total;
+    }
+
+    private LocalDateTime desde() {
+        long inicio = (intervaloActual().numero - intervalos + 1) * intervaloMillis;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(inicio), ZoneId.systemDefault());
+    }
+}
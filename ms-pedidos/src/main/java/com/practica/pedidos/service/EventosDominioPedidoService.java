@@ -0,0 +1,56 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.EventoDominioPedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.entity.Pedido;
+import com.practica.pedidos.outbox.EventosPedidoKafkaOutboxHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registra en el outbox los eventos de dominio de pedidos que EventosPedidoKafkaOutboxHandler publica
+ * en Kafka. Debe llamarse en la transacción que modifica el pedido: el evento se confirma con el cambio
+ * y la petición no espera a Kafka. Con kafka.producer.enabled=false no se registra nada.
+ */
+@Service
+public class EventosDominioPedidoService {
+
+    public static final String CREADO = "PEDIDO_CREATED";
+    public static final String ESTADO_CAMBIADO = "PEDIDO_STATUS_CHANGED";
+    public static final String ELIMINADO = "PEDIDO_DELETED";
+
+    private final OutboxService outboxService;
+    private final boolean habilitado;
+
+    public EventosDominioPedidoService(OutboxService outboxService,
+                                       @Value("${kafka.producer.enabled:true}") boolean habilitado) {
+        this.outboxService = outboxService;
+        this.habilitado = habilitado;
+    }
+
+    // Un pedido recién creado tiene la versión inicial 0
+    public Mono<Void> registrarCreado(PedidoDTO pedido) {
+        return registrar(new EventoDominioPedidoDTO(CREADO, pedido.getId(), pedido.getCliente(), pedido.getEstado(),
+                pedido.getTotal(), 0L, LocalDateTime.now(), pedido.getDetalles()));
+    }
+
+    public Mono<Void> registrarCambioEstado(Pedido pedido) {
+        return registrar(new EventoDominioPedidoDTO(ESTADO_CAMBIADO, pedido.getId(), pedido.getCliente(),
+                pedido.getEstado(), pedido.getTotal(), pedido.getVersion(), LocalDateTime.now(), null));
+    }
+
+    public Mono<Void> registrarEliminado(Long pedidoId) {
+        return registrar(new EventoDominioPedidoDTO(ELIMINADO, pedidoId, null, null, null, null,
+                LocalDateTime.now(), null));
+    }
+
+    private Mono<Void> registrar(EventoDominioPedidoDTO evento) {
+        if (!habilitado) {
+            return Mono.empty();
+        }
+        return outboxService.registrar(EventosPedidoKafkaOutboxHandler.TIPO, evento.getPedidoId(), evento).then();
+    }
+}
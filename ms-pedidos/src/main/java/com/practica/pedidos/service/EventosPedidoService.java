@@ -0,0 +1,93 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.EventoPedidoDTO;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDateTime;
+
+/**
+ * Eventos de creación y cambio de estado de pedidos para GET /api/pedidos/stream.
+ *
+ * Con pedidos.eventos.notify.enabled (por defecto) publicar solo hace NOTIFY en Postgres: el
+ * listener de cada réplica, incluida esta, recibe el evento y lo emite en su sink local, así que
+ * todos los suscriptores lo ven una vez sin importar qué réplica hizo el cambio. Sin NOTIFY el
+ * evento se emite directo en el sink local.
+ *
+ * El sink es multicast de mejor esfuerzo: un suscriptor lento pierde eventos sin frenar a los demás.
+ * Los eventos no se guardan; quien se reconecta puede releer el pedido con GET /api/pedidos/{id}.
+ */
+@Slf4j
+@Service
+public class EventosPedidoService {
+
+    public static final String CANAL = "pedidos_eventos";
+    public static final String ELIMINADO = "ELIMINADO";
+
+    private final PedidoRepository pedidoRepository;
+    private final CachePedidosService cachePedidosService;
+    private final ObjectMapper objectMapper;
+    private final boolean notificar;
+    private final Sinks.Many<EventoPedidoDTO> eventos = Sinks.many().multicast().directBestEffort();
+
+    public EventosPedidoService(PedidoRepository pedidoRepository,
+                                CachePedidosService cachePedidosService,
+                                ObjectMapper objectMapper,
+                                @Value("${pedidos.eventos.notify.enabled:true}") boolean notificar,
+                                MeterRegistry meterRegistry) {
+        this.pedidoRepository = pedidoRepository;
+        this.cachePedidosService = cachePedidosService;
+        this.objectMapper = objectMapper;
+        this.notificar = notificar;
+        Gauge.builder("pedidos.eventos.suscriptores", eventos, Sinks.Many::currentSubscriberCount)
+                .description("Suscriptores conectados a GET /api/pedidos/stream en esta réplica")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publica un evento después del commit. Es de mejor esfuerzo: un error se registra y no afecta
+     * a la operación que lo originó.
+     */
+    public void publicar(String tipo, Long pedidoId, String cliente, String estado, Long version) {
+        EventoPedidoDTO evento = new EventoPedidoDTO(tipo, pedidoId, cliente, estado, version, LocalDateTime.now());
+        if (!notificar) {
+            emitir(evento);
+            return;
+        }
+        Mono.fromCallable(() -> objectMapper.writeValueAsString(evento))
+                .flatMap(pedidoRepository::notificarEvento)
+                .subscribe(null, error -> log.warn("No se pudo notificar el evento {} del pedido {}: {}",
+                        tipo, pedidoId, error.getMessage()));
+    }
+
+    /**
+     * Entrega un evento a los suscriptores de esta réplica. Un evento de otra réplica también
+     * descarta de la caché local una versión anterior del pedido, o el pedido entero si fue eliminado.
+     */
+    public void emitir(EventoPedidoDTO evento) {
+        if (ELIMINADO.equals(evento.getTipo())) {
+            cachePedidosService.invalidar(evento.getPedidoId());
+        } else if (evento.getVersion() != null) {
+            cachePedidosService.descartarAnterior(evento.getPedidoId(), evento.getVersion());
+        }
+        // tryEmitNext no admite emisiones concurrentes. Sin suscriptores, o si todos están saturados,
+        // el evento se descarta: emitNext terminaría el sink con error por desborde
+        synchronized (eventos) {
+            eventos.tryEmitNext(evento);
+        }
+    }
+
+    public Flux<EventoPedidoDTO> suscribir(String cliente, Long pedidoId) {
+        return eventos.asFlux()
+                .filter(evento -> cliente == null || cliente.equals(evento.getCliente()))
+                .filter(evento -> pedidoId == null || pedidoId.equals(evento.getPedidoId()));
+    }
+}
@@ -0,0 +1,151 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.r2dbc.spi.Readable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Exportación de pedidos con sus detalles, una fila por detalle (o una por pedido sin detalles).
+ * Las filas del cursor se escriben como texto directamente en los DataBuffer del servidor, por
+ * tandas de FILAS_POR_BUFFER, sin armar PedidoDTO: la memoria usada depende del tamaño de la tanda
+ * y no de la cantidad de pedidos, y el ritmo lo marca el cliente HTTP.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportacionPedidosService {
+
+    private static final int FILAS_POR_BUFFER = 256;
+    private static final String ENCABEZADO_CSV =
+            "pedido_id,cliente,fecha,total,estado,detalle_id,producto_id,cantidad,precio_unitario\n";
+
+    private final PedidoRepository pedidoRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    /**
+     * @param formato csv o ndjson
+     * @param bufferFactory fábrica de la respuesta, para escribir en buffers del pool de Netty
+     */
+    public Flux<DataBuffer> exportar(String formato, LocalDateTime desde, LocalDateTime hasta,
+                                     DataBufferFactory bufferFactory) {
+        boolean csv;
+        try {
+            csv = validar(formato, desde, hasta);
+        } catch (BadRequestException e) {
+            return Flux.error(e);
+        }
+
+        Flux<String> filas = pedidoRepository
+                .recorrerConDetalles(desde, hasta, fila -> csv ? filaCsv(fila) : filaNdjson(fila))
+                // El cursor por tandas (fetchSize) necesita una transacción abierta mientras se recorre
+                .as(transactionalOperator::transactional);
+        if (csv) {
+            filas = filas.startWith(ENCABEZADO_CSV);
+        }
+        return filas
+                .buffer(FILAS_POR_BUFFER)
+                .map(lineas -> escribir(lineas, bufferFactory));
+    }
+
+    /**
+     * Valida los parámetros de la exportación antes de escribir nada en la respuesta.
+     *
+     * @return true si el formato es csv, false si es ndjson
+     * @throws BadRequestException si el formato o el rango de fechas son inválidos
+     */
+    public static boolean validar(String formato, LocalDateTime desde, LocalDateTime hasta) {
+        boolean csv = "csv".equalsIgnoreCase(formato);
+        if (!csv && !"ndjson".equalsIgnoreCase(formato)) {
+            throw new BadRequestException("Formato inválido: use csv o ndjson");
+        }
+        if (desde != null && hasta != null && !desde.isBefore(hasta)) {
+            throw new BadRequestException("El rango de fechas requiere desde < hasta");
+        }
+        return csv;
+    }
+
+    private static DataBuffer escribir(List<String> lineas, DataBufferFactory bufferFactory) {
+        int capacidad = 0;
+        for (String linea : lineas) {
+            capacidad += linea.length();
+        }
+        DataBuffer buffer = bufferFactory.allocateBuffer(capacidad);
+        for (String linea : lineas) {
+            buffer.write(linea, StandardCharsets.UTF_8);
+        }
+        return buffer;
+    }
+
+    private static String filaCsv(Readable fila) {
+        return new StringBuilder(96)
+                .append(fila.get("id", Long.class)).append(',')
+                .append(csv(fila.get("cliente", String.class))).append(',')
+                .append(texto(fila.get("fecha", LocalDateTime.class))).append(',')
+                .append(decimal(fila.get("total", BigDecimal.class))).append(',')
+                .append(csv(fila.get("estado", String.class))).append(',')
+                .append(texto(fila.get("detalle_id", Long.class))).append(',')
+                .append(texto(fila.get("producto_id", Long.class))).append(',')
+                .append(texto(fila.get("cantidad", Integer.class))).append(',')
+                .append(decimal(fila.get("precio_unitario", BigDecimal.class))).append('\n')
+                .toString();
+    }
+
+    private static String filaNdjson(Readable fila) {
+        return new StringBuilder(160)
+                .append("{\"pedidoId\":").append(fila.get("id", Long.class))
+                .append(",\"cliente\":").append(json(fila.get("cliente", String.class)))
+                .append(",\"fecha\":").append(json(fila.get("fecha", LocalDateTime.class)))
+                .append(",\"total\":").append(numero(fila.get("total", BigDecimal.class)))
+                .append(",\"estado\":").append(json(fila.get("estado", String.class)))
+                .append(",\"detalleId\":").append(numero(fila.get("detalle_id", Long.class)))
+                .append(",\"productoId\":").append(numero(fila.get("producto_id", Long.class)))
+                .append(",\"cantidad\":").append(numero(fila.get("cantidad", Integer.class)))
+                .append(",\"precioUnitario\":").append(numero(fila.get("precio_unitario", BigDecimal.class)))
+                .append("}\n")
+                .toString();
+    }
+
+    private static String texto(Object valor) {
+        return valor == null ? "" : valor.toString();
+    }
+
+    private static String decimal(BigDecimal valor) {
+        return valor == null ? "" : valor.toPlainString();
+    }
+
+    private static String numero(Object valor) {
+        if (valor == null) {
+            return "null";
+        }
+        return valor instanceof BigDecimal decimal ? decimal.toPlainString() : valor.toString();
+    }
+
+    // Comillas solo cuando el valor las necesita (RFC 4180)
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(Object valor) {
+        if (valor == null) {
+            return "null";
+        }
+        return '"' + new String(JsonStringEncoder.getInstance().quoteAsString(valor.toString())) + '"';
+    }
+}
@@ -0,0 +1,117 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.ClaveIdempotenciaRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta una sola vez la creación de un pedido por Idempotency-Key.
+ * <ul>
+ *   <li>Duplicados concurrentes en esta instancia se suscriben al mismo resultado en curso.</li>
+ *   <li>Duplicados posteriores reciben la respuesta guardada (caché en memoria y luego tabla claves_idempotencia).</li>
+ *   <li>Entre instancias, PedidoService reclama la clave en la misma transacción que el pedido, así que un
+ *       duplicado en otra réplica espera el commit del primero y después lee su respuesta.</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class IdempotenciaService {
+
+    private static final int LONGITUD_MAXIMA_CLAVE = 255;
+
+    private final ClaveIdempotenciaRepository claveIdempotenciaRepository;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Mono<PedidoDTO>> enCurso = new ConcurrentHashMap<>();
+    private final Cache<String, PedidoDTO> completados;
+
+    public IdempotenciaService(ClaveIdempotenciaRepository claveIdempotenciaRepository,
+                               ObjectMapper objectMapper,
+                               @Value("${idempotencia.cache.max-size:10000}") long cacheMaxSize,
+                               @Value("${idempotencia.cache.ttl:24h}") Duration cacheTtl,
+                               MeterRegistry meterRegistry) {
+        this.claveIdempotenciaRepository = claveIdempotenciaRepository;
+        this.objectMapper = objectMapper;
+        this.completados = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completados, "idempotencia");
+    }
+
+    public Mono<PedidoDTO> ejecutar(String clave, Supplier<Mono<PedidoDTO>> operacion) {
+        if (clave.isBlank() || clave.length() > LONGITUD_MAXIMA_CLAVE) {
+            return Mono.error(new BadRequestException("Idempotency-Key debe tener entre 1 y " + LONGITUD_MAXIMA_CLAVE + " caracteres"));
+        }
+        PedidoDTO completado = completados.getIfPresent(clave);
+        if (completado != null) {
+            return Mono.just(completado);
+        }
+        return enCurso.computeIfAbsent(clave, k -> operacion.get()
+                .doOnNext(pedido -> completados.put(k, pedido))
+                .doFinally(signal -> enCurso.remove(k))
+                .cache());
+    }
+
+    /**
+     * Reclama la clave en la transacción en curso.
+     * @return true si la clave es nueva y el pedido debe crearse; false si ya fue confirmada por otra solicitud
+     */
+    public Mono<Boolean> reclamar(String clave) {
+        return claveIdempotenciaRepository.reclamar(clave)
+                .map(insertadas -> insertadas > 0);
+    }
+
+    public Mono<Void> completar(String clave, PedidoDTO pedido) {
+        return Mono.fromCallable(() -> serializar(pedido))
+                .flatMap(respuesta -> claveIdempotenciaRepository.completar(clave, pedido.getId(), respuesta))
+                .then();
+    }
+
+    public Mono<PedidoDTO> respuestaGuardada(String clave) {
+        log.info("Idempotency-Key {} repetida, se devuelve la respuesta guardada", clave);
+        return buscarRespuesta(clave)
+                .switchIfEmpty(Mono.error(new RuntimeException("No se encontró la respuesta de la Idempotency-Key: " + clave)));
+    }
+
+    /**
+     * Respuesta de una clave ya confirmada en claves_idempotencia, o vacío si la clave no existe o su
+     * transacción aún no confirmó.
+     */
+    public Mono<PedidoDTO> buscarRespuesta(String clave) {
+        return claveIdempotenciaRepository.findById(clave)
+                .filter(guardada -> guardada.getRespuesta() != null)
+                .map(guardada -> deserializar(guardada.getRespuesta()));
+    }
+
+    private String serializar(PedidoDTO pedido) {
+        try {
+            return objectMapper.writeValueAsString(pedido);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error al serializar la respuesta del pedido " + pedido.getId(), e);
+        }
+    }
+
+    private PedidoDTO deserializar(String respuesta) {
+        try {
+            return objectMapper.readValue(respuesta, PedidoDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error al leer la respuesta guardada del pedido", e);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.dto.ResultadoImportacionDTO;
+import com.practica.pedidos.entity.DetallePedido;
+import com.practica.pedidos.entity.Pedido;
+import com.practica.pedidos.repository.DetallePedidoRepository;
+import com.practica.pedidos.repository.PedidoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Importación masiva de pedidos migrados desde otro sistema. El cuerpo se lee por líneas a medida
+ * que llega, los pedidos se agrupan en lotes de PEDIDOS_POR_LOTE y cada lote se valida con una sola
+ * búsqueda de productos y se guarda con INSERT multi-fila en una transacción. La respuesta emite un
+ * resultado por pedido en el mismo orden del archivo.
+ *
+ * Son pedidos históricos: no se reserva stock ni se registran eventos en el outbox, y el precio de
+ * cada línea es el del archivo o, si falta, el precio actual del producto.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImportacionPedidosService {
+
+    private static final int PEDIDOS_POR_LOTE = 1000;
+    private static final String ESTADO_POR_DEFECTO = "PROCESADO";
+    // RECIBIDO queda fuera: lo tomaría el worker de recepción y reservaría stock
+    private static final Set<String> ESTADOS_IMPORTABLES = Set.of("PENDIENTE", "PROCESADO", "CANCELADO", "RECHAZADO");
+    private static final StringDecoder LINEAS = StringDecoder.allMimeTypes();
+    private static final ResolvableType TIPO_LINEA = ResolvableType.forClass(String.class);
+
+    private final PedidoService pedidoService;
+    private final PedidoRepository pedidoRepository;
+    private final DetallePedidoRepository detallePedidoRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+
+    // Pedido leído del archivo, o el motivo por el que no se pudo leer
+    private record PedidoImportado(long linea, String referencia, PedidoDTO pedido, String error) {
+    }
+
+    // Fila CSV: referencia,cliente,fecha,estado,producto_id,cantidad,precio_unitario
+    private record FilaCsv(long linea, String referencia, String cliente, LocalDateTime fecha, String estado,
+                           DetallePedidoDTO detalle, String error) {
+        // Las filas inválidas no se agrupan con sus vecinas
+        String grupo() {
+            return error == null ? referencia : "#" + linea;
+        }
+    }
+
+    /**
+     * @param cuerpo cuerpo de la solicitud, sin cargarlo completo en memoria
+     * @param csv true para CSV (con encabezado, filas consecutivas con la misma referencia forman un
+     *            pedido); false para NDJSON (un PedidoDTO por línea)
+     */
+    public Flux<ResultadoImportacionDTO> importar(Flux<DataBuffer> cuerpo, boolean csv) {
+        Flux<String> lineas = LINEAS.decode(cuerpo, TIPO_LINEA, null, Map.of());
+        Flux<PedidoImportado> pedidos = csv ? leerCsv(lineas) : leerNdjson(lineas);
+        return pedidos
+                .buffer(PEDIDOS_POR_LOTE)
+                .concatMap(this::importarLote, 1);
+    }
+
+    private Flux<PedidoImportado> leerNdjson(Flux<String> lineas) {
+        return lineas.index()
+                .filter(linea -> !linea.getT2().isBlank())
+                .map(linea -> {
+                    long numero = linea.getT1() + 1;
+                    try {
+                        PedidoDTO pedido = objectMapper.readValue(linea.getT2(), PedidoDTO.class);
+                        return new PedidoImportado(numero, null, pedido, validar(pedido));
+                    } catch (JsonProcessingException e) {
+                        return new PedidoImportado(numero, null, null, "JSON inválido: " + e.getOriginalMessage());
+                    }
+                });
+    }
+
+    private Flux<PedidoImportado> leerCsv(Flux<String> lineas) {
+        return Flux.defer(() -> {
+            // Un campo entre comillas puede contener saltos de línea: la fila sigue hasta que se cierran
+            AtomicBoolean comillasAbiertas = new AtomicBoolean();
+            return lineas.index()
+                    .skip(1)
+                    .bufferUntil(linea -> {
+                        if (linea.getT2().chars().filter(c -> c == '"').count() % 2 == 1) {
+                            comillasAbiertas.set(!comillasAbiertas.get());
+                        }
+                        return !comillasAbiertas.get();
+                    })
+                    .map(partes -> Tuples.of(partes.get(0).getT1() + 1,
+                            partes.stream().map(Tuple2::getT2).collect(Collectors.joining("\n"))))
+                    .filter(fila -> !fila.getT2().isBlank())
+                    .map(fila -> leerFila(fila.getT1(), fila.getT2()))
+                    .bufferUntilChanged(FilaCsv::grupo)
+                    .map(this::agruparFilas);
+        });
+    }
+
+    private FilaCsv leerFila(long numero, String texto) {
+        List<String> columnas;
+        try {
+            columnas = separarCampos(texto);
+        } catch (IllegalArgumentException e) {
+            return new FilaCsv(numero, null, null, null, null, null, "Fila inválida: " + e.getMessage());
+        }
+        if (columnas.size() < 6) {
+            return new FilaCsv(numero, null, null, null, null, null, "Se esperaban al menos 6 columnas");
+        }
+        try {
+            String[] valores = columnas.stream().map(String::trim).toArray(String[]::new);
+            DetallePedidoDTO detalle = new DetallePedidoDTO(null,
+                    Long.valueOf(valores[4]),
+                    Integer.valueOf(valores[5]),
+                    valores.length > 6 && !valores[6].isEmpty() ? Double.valueOf(valores[6]) : null);
+            return new FilaCsv(numero, valores[0], valores[1],
+                    valores[2].isEmpty() ? null : LocalDateTime.parse(valores[2]),
+                    valores[3].isEmpty() ? null : valores[3],
+                    detalle, null);
+        } catch (RuntimeException e) {
+            return new FilaCsv(numero, null, null, null, null, null, "Fila inválida: " + e.getMessage());
+        }
+    }
+
+    // Campos de una fila CSV según RFC 4180, como los escribe la exportación: un campo entre comillas
+    // puede contener comas y saltos de línea, y "" dentro de él es una comilla literal
+    private static List<String> separarCampos(String fila) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < fila.length(); i++) {
+            char c = fila.charAt(i);
+            if (entreComillas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i + 1 < fila.length() && fila.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreComillas = false;
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        if (entreComillas) {
+            throw new IllegalArgumentException("comillas sin cerrar");
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    private PedidoImportado agruparFilas(List<FilaCsv> filas) {
+        FilaCsv primera = filas.get(0);
+        if (primera.error() != null) {
+            return new PedidoImportado(primera.linea(), null, null, primera.error());
+        }
+        boolean mismoCliente = filas.stream().allMatch(fila -> fila.cliente().equals(primera.cliente()));
+        if (!mismoCliente) {
+            return new PedidoImportado(primera.linea(), primera.referencia(), null,
+                    "Las filas de la referencia " + primera.referencia() + " tienen distinto cliente");
+        }
+        PedidoDTO pedido = new PedidoDTO(null, primera.cliente(), primera.fecha(), null, primera.estado(),
+                new ArrayList<>(filas.stream().map(FilaCsv::detalle).toList()));
+        return new PedidoImportado(primera.linea(), primera.referencia(), pedido, validar(pedido));
+    }
+
+    // Validación local, antes de consultar productos; null si el pedido es válido
+    private String validar(PedidoDTO pedido) {
+        if (pedido.getCliente() == null || pedido.getCliente().trim().isEmpty()) {
+            return "El cliente es obligatorio";
+        }
+        if (pedido.getDetalles() == null || pedido.getDetalles().isEmpty()) {
+            return "El pedido debe tener al menos un producto";
+        }
+        if (pedido.getEstado() != null && !ESTADOS_IMPORTABLES.contains(pedido.getEstado())) {
+            return "Estado no importable: " + pedido.getEstado();
+        }
+        for (DetallePedidoDTO detalle : pedido.getDetalles()) {
+            if (detalle.getProductoId() == null) {
+                return "Cada línea debe indicar el producto";
+            }
+            if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
+                return "La cantidad debe ser mayor que cero: " + detalle.getProductoId();
+            }
+        }
+        return null;
+    }
+
+    private Flux<ResultadoImportacionDTO> importarLote(List<PedidoImportado> lote) {
+        List<Long> productoIds = lote.stream()
+                .filter(importado -> importado.error() == null)
+                .flatMap(importado -> importado.pedido().getDetalles().stream().map(DetallePedidoDTO::getProductoId))
+                .distinct()
+                .toList();
+        Mono<Map<Long, ProductoDTO>> productos = productoIds.isEmpty()
+                ? Mono.just(Map.of())
+                : pedidoService.buscarProductos(productoIds);
+
+        return productos.flatMapMany(encontrados -> {
+            ResultadoImportacionDTO[] resultados = new ResultadoImportacionDTO[lote.size()];
+            List<Integer> posiciones = new ArrayList<>();
+            List<Pedido> pedidos = new ArrayList<>();
+            for (int i = 0; i < lote.size(); i++) {
+                PedidoImportado importado = lote.get(i);
+                String error = importado.error() != null ? importado.error() : asignarPrecios(importado.pedido(), encontrados);
+                resultados[i] = new ResultadoImportacionDTO(importado.linea(), importado.referencia(), null, error);
+                if (error == null) {
+                    posiciones.add(i);
+                    pedidos.add(crearPedido(importado.pedido()));
+                }
+            }
+            if (pedidos.isEmpty()) {
+                return Flux.fromArray(resultados);
+            }
+            return guardar(pedidos)
+                    .doOnSuccess(ignorado -> {
+                        for (int j = 0; j < pedidos.size(); j++) {
+                            resultados[posiciones.get(j)].setPedidoId(pedidos.get(j).getId());
+                        }
+                    })
+                    .onErrorResume(error -> {
+                        log.error("Error guardando lote de {} pedidos importados", pedidos.size(), error);
+                        posiciones.forEach(posicion -> resultados[posicion].setError("Error al guardar el lote: " + error.getMessage()));
+                        return Mono.empty();
+                    })
+                    .thenMany(Flux.fromArray(resultados));
+        }, error -> {
+            // Sin productos (circuito abierto, 503, timeout) el lote no se guarda, pero cada línea tiene su resultado
+            log.error("Error consultando productos para un lote de {} pedidos importados", lote.size(), error);
+            return Flux.fromIterable(lote)
+                    .map(importado -> new ResultadoImportacionDTO(importado.linea(), importado.referencia(), null,
+                            importado.error() != null
+                                    ? importado.error()
+                                    : "Error al consultar productos: " + error.getMessage()));
+        }, Flux::empty);
+    }
+
+    // Fija el precio de las líneas que no lo traen; null si todos los productos existen
+    private String asignarPrecios(PedidoDTO pedido, Map<Long, ProductoDTO> productos) {
+        for (DetallePedidoDTO detalle : pedido.getDetalles()) {
+            ProductoDTO producto = productos.get(detalle.getProductoId());
+            if (producto == null) {
+                return "Producto no encontrado: " + detalle.getProductoId();
+            }
+            if (detalle.getPrecioUnitario() == null) {
+                detalle.setPrecioUnitario(producto.getPrecio());
+            }
+        }
+        return null;
+    }
+
+    private Pedido crearPedido(PedidoDTO pedidoDTO) {
+        Pedido pedido = new Pedido();
+        pedido.setCliente(pedidoDTO.getCliente());
+        pedido.setFecha(pedidoDTO.getFecha() != null ? pedidoDTO.getFecha() : LocalDateTime.now());
+        pedido.setEstado(pedidoDTO.getEstado() != null ? pedidoDTO.getEstado() : ESTADO_POR_DEFECTO);
+        pedido.setTotal(pedidoDTO.getDetalles().stream()
+                .mapToDouble(d -> d.getCantidad() * d.getPrecioUnitario())
+                .sum());
+        pedido.setDetalles(pedidoDTO.getDetalles().stream()
+                .map(d -> new DetallePedido(null, null, d.getProductoId(), d.getCantidad(), d.getPrecioUnitario()))
+                .toList());
+        return pedido;
+    }
+
+    // Pedidos y detalles del lote en una sola transacción, con INSERT multi-fila para ambos
+    private Mono<Void> guardar(List<Pedido> pedidos) {
+        return pedidoRepository.insertarLote(pedidos)
+                .flatMapIterable(pedido -> {
+                    pedido.getDetalles().forEach(detalle -> detalle.setPedidoId(pedido.getId()));
+                    return pedido.getDetalles();
+                })
+                .collectList()
+                .flatMapMany(detallePedidoRepository::insertarLote)
+                .then()
+                .as(transactionalOperator::transactional);
+    }
+}
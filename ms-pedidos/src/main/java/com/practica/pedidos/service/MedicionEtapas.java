@@ -0,0 +1,73 @@
+package com.practica.pedidos.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Timers por etapa de la creación de pedidos: {@code pedidos.creacion.etapa} con los tags etapa,
+ * resultado (exito, error, cancelado) y lineas (rango de cantidad de líneas), todos de baja
+ * cardinalidad, y con histograma para calcular percentiles en Prometheus. Si la solicitud trae
+ * TiemposSolicitud en el contexto, la duración también se agrega ahí para Server-Timing.
+ */
+@Component
+public class MedicionEtapas {
+
+    private final MeterRegistry meterRegistry;
+
+    public MedicionEtapas(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Mide desde la suscripción hasta el primer resultado, error o cancelación de la operación.
+     */
+    public <T> Mono<T> medir(String etapa, int lineas, Mono<T> operacion) {
+        return Mono.deferContextual(contexto -> {
+            TiemposSolicitud tiempos = TiemposSolicitud.de(contexto);
+            long inicio = System.nanoTime();
+            AtomicBoolean medido = new AtomicBoolean();
+            return operacion
+                    .doOnSuccess(valor -> registrar(etapa, lineas, "exito", inicio, medido, tiempos))
+                    .doOnError(error -> registrar(etapa, lineas, "error", inicio, medido, tiempos))
+                    .doOnCancel(() -> registrar(etapa, lineas, "cancelado", inicio, medido, tiempos));
+        });
+    }
+
+    private void registrar(String etapa, int lineas, String resultado, long inicio, AtomicBoolean medido,
+                           TiemposSolicitud tiempos) {
+        if (!medido.compareAndSet(false, true)) {
+            return;
+        }
+        long duracion = System.nanoTime() - inicio;
+        Timer.builder("pedidos.creacion.etapa")
+                .description("Duración de cada etapa de la creación de pedidos")
+                .tag("etapa", etapa)
+                .tag("resultado", resultado)
+                .tag("lineas", rangoLineas(lineas))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(duracion, TimeUnit.NANOSECONDS);
+        if (tiempos != null) {
+            tiempos.registrar(etapa, duracion);
+        }
+    }
+
+    // Rangos fijos para que el tag no crezca con cada tamaño de pedido
+    private static String rangoLineas(int lineas) {
+        if (lineas <= 1) {
+            return "1";
+        }
+        if (lineas <= 5) {
+            return "2-5";
+        }
+        if (lineas <= 20) {
+            return "6-20";
+        }
+        return "21+";
+    }
+}
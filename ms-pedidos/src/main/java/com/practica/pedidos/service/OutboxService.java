@@ -0,0 +1,34 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.repository.EventoOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registra eventos en outbox_eventos. Debe llamarse dentro de la transacción que modifica el pedido,
+ * para que el evento se confirme o se descarte junto con el cambio. OutboxRelay los publica después.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final EventoOutboxRepository eventoOutboxRepository;
+    private final ObjectMapper objectMapper;
+
+    public Mono<EventoOutbox> registrar(String tipo, Long agregadoId, Object payload) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(payload))
+                .onErrorMap(JsonProcessingException.class, error ->
+                        new RuntimeException("Error al serializar evento " + tipo + " del pedido " + agregadoId, error))
+                .flatMap(json -> {
+                    LocalDateTime ahora = LocalDateTime.now();
+                    return eventoOutboxRepository.save(
+                            new EventoOutbox(null, tipo, agregadoId, json, "PENDIENTE", 0, null, ahora, ahora));
+                });
+    }
+}
@@ -2,84 +2,428 @@ package com.practica.pedidos.service;
 
 import com.practica.pedidos.client.ProductoClient;
 import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.ItemReservaDTO;
+import com.practica.pedidos.dto.PaginaPedidosDTO;
 import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.dto.ResultadoPurgaDTO;
 import com.practica.pedidos.entity.DetallePedido;
 import com.practica.pedidos.entity.Pedido;
 import com.practica.pedidos.exception.BadRequestException;
 import com.practica.pedidos.exception.ResourceNotFoundException;
+import com.practica.pedidos.plazo.Plazo;
 import com.practica.pedidos.repository.DetallePedidoRepository;
 import com.practica.pedidos.repository.PedidoRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.util.retry.Retry;
 
-import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class PedidoService {
 
+    // Pedidos por lote al enriquecer listados: una consulta de detalles por lote
+    private static final int PEDIDOS_POR_LOTE = 500;
+    private static final int LIMITE_MAXIMO_PAGINA = 500;
+    private static final int PEDIDOS_POR_PURGA = 1000;
+    // Estado destino -> estados desde los que se puede llegar a él
+    private static final Map<String, String[]> TRANSICIONES = Map.of(
+            "PROCESADO", new String[]{"PENDIENTE"},
+            "CANCELADO", new String[]{"PENDIENTE", "RECIBIDO"});
+    private static final Set<String> ESTADOS = Set.of("RECIBIDO", "PENDIENTE", "PROCESADO", "CANCELADO", "RECHAZADO");
+
     private final PedidoRepository pedidoRepository;
     private final DetallePedidoRepository detallePedidoRepository;
     private final ProductoClient productoClient;
+    private final ProductoReplicaService productoReplicaService;
+    private final SagaPedidoService sagaPedidoService;
+    private final CachePedidosService cachePedidosService;
+    private final EventosPedidoService eventosPedidoService;
+    private final EventosDominioPedidoService eventosDominioPedidoService;
+    private final IdempotenciaService idempotenciaService;
+    private final AnaliticaVentasService analiticaVentasService;
+    private final EstadisticasEnVivoService estadisticasEnVivoService;
+    private final MedicionEtapas medicionEtapas;
+    private final TransactionalOperator transactionalOperator;
 
     public Flux<PedidoDTO> getAll() {
         return pedidoRepository.findAll()
-                .flatMap(this::enrichPedidoWithDetalles)
+                .buffer(PEDIDOS_POR_LOTE)
+                .concatMap(this::enrichPedidosWithDetalles)
                 .onErrorResume(error ->
                         Flux.error(new RuntimeException("Error al listar pedidos: " + error.getMessage(), error)));
     }
 
+    public Mono<PaginaPedidosDTO> getPagina(Long cursor, int limit) {
+        if (limit < 1 || limit > LIMITE_MAXIMO_PAGINA) {
+            return Mono.error(new BadRequestException("El límite debe estar entre 1 y " + LIMITE_MAXIMO_PAGINA));
+        }
+        // Se pide un registro extra para saber si existe una página siguiente
+        return armarPagina(pedidoRepository.buscarPagina(cursor != null ? cursor : 0L, limit + 1), limit);
+    }
+
+    /**
+     * Búsqueda paginada por keyset con filtros opcionales de cliente, estado y rango de fechas [desde, hasta).
+     * Los filtros se aplican en la consulta, no sobre la lista ya cargada.
+     */
+    public Mono<PaginaPedidosDTO> buscar(String cliente, String estado, LocalDateTime desde, LocalDateTime hasta,
+                                         Long cursor, int limit) {
+        if (limit < 1 || limit > LIMITE_MAXIMO_PAGINA) {
+            return Mono.error(new BadRequestException("El límite debe estar entre 1 y " + LIMITE_MAXIMO_PAGINA));
+        }
+        if (estado != null && !ESTADOS.contains(estado)) {
+            return Mono.error(new BadRequestException("Estado inválido"));
+        }
+        if (desde != null && hasta != null && !desde.isBefore(hasta)) {
+            return Mono.error(new BadRequestException("El rango de fechas requiere desde < hasta"));
+        }
+        return armarPagina(pedidoRepository.buscarFiltrados(cliente, estado, desde, hasta,
+                cursor != null ? cursor : 0L, limit + 1), limit);
+    }
+
+    // Recibe hasta limit + 1 pedidos; el sobrante solo indica que existe una página siguiente
+    private Mono<PaginaPedidosDTO> armarPagina(Flux<Pedido> filas, int limit) {
+        return filas
+                .collectList()
+                .flatMap(pedidos -> {
+                    boolean hayMas = pedidos.size() > limit;
+                    List<Pedido> pagina = hayMas ? pedidos.subList(0, limit) : pedidos;
+                    Long siguienteCursor = hayMas ? pagina.get(pagina.size() - 1).getId() : null;
+                    return enrichPedidosWithDetalles(pagina)
+                            .collectList()
+                            .map(dtos -> new PaginaPedidosDTO(dtos, siguienteCursor));
+                });
+    }
+
+    /**
+     * Recorre todos los pedidos por páginas de keyset y emite cada uno en cuanto sus detalles
+     * están listos. Solo se consulta la página siguiente cuando el consumidor pide más elementos,
+     * por lo que la memoria usada no depende del tamaño de la tabla.
+     */
+    public Flux<PedidoDTO> stream() {
+        return buscarLote(0L)
+                .expand(lote -> lote.size() < PEDIDOS_POR_LOTE
+                        ? Mono.empty()
+                        : buscarLote(lote.get(lote.size() - 1).getId()))
+                .concatMap(this::enrichPedidosWithDetalles, 1);
+    }
+
+    private Mono<List<Pedido>> buscarLote(Long cursor) {
+        return pedidoRepository.buscarPagina(cursor, PEDIDOS_POR_LOTE)
+                .collectList()
+                .filter(lote -> !lote.isEmpty());
+    }
+
     public Mono<PedidoDTO> getById(Long id) {
-        return pedidoRepository.findById(id)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Pedido no encontrado con id: " + id)))
-                .flatMap(this::enrichPedidoWithDetalles);
+        return getByIdVersionado(id).map(PedidoVersionado::pedido);
+    }
+
+    /**
+     * El pedido con la versión de su fila, desde la caché si está; si no, con dos consultas y se guarda.
+     */
+    public Mono<PedidoVersionado> getByIdVersionado(Long id) {
+        return Mono.defer(() -> {
+            PedidoVersionado enCache = cachePedidosService.obtener(id);
+            if (enCache != null) {
+                return Mono.just(enCache);
+            }
+            return pedidoRepository.findById(id)
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("Pedido no encontrado con id: " + id)))
+                    .flatMap(pedido -> enrichPedidoWithDetalles(pedido)
+                            .map(dto -> cachePedidosService.guardar(dto, pedido.getVersion())));
+        });
     }
 
-    @Transactional
     public Mono<PedidoDTO> create(PedidoDTO pedidoDTO) {
-        return validarPedido(pedidoDTO)
-                .then(validarProductos(pedidoDTO))
+        return create(pedidoDTO, null);
+    }
+
+    /**
+     * Valida contra ms-productos fuera de la transacción. El pedido, sus detalles y el evento
+     * STOCK_RESERVATION_REQUESTED se confirman juntos en una transacción local corta; la reserva
+     * de stock la aplica después OutboxRelay.
+     * Respeta el plazo de la solicitud (ver Plazo) en las llamadas a ms-productos y en la transacción.
+     * Cada etapa se mide con MedicionEtapas: validacion, insertar_pedido, guardar_detalles, outbox,
+     * transaccion (las tres anteriores más el commit) y total.
+     * @param idempotencyKey clave Idempotency-Key opcional, reclamada en la misma transacción
+     */
+    public Mono<PedidoDTO> create(PedidoDTO pedidoDTO, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return crear(pedidoDTO, null);
+        }
+        // Una clave ya confirmada devuelve su respuesta sin volver a validar: el primer intento pudo
+        // haber agotado el stock que la validación consultaría ahora
+        return idempotenciaService.buscarRespuesta(idempotencyKey)
+                .doOnNext(guardada -> log.info("Idempotency-Key {} ya confirmada, se devuelve la respuesta guardada",
+                        idempotencyKey))
+                .switchIfEmpty(Mono.defer(() -> crear(pedidoDTO, idempotencyKey)));
+    }
+
+    private Mono<PedidoDTO> crear(PedidoDTO pedidoDTO, String idempotencyKey) {
+        int lineas = pedidoDTO.getDetalles() != null ? pedidoDTO.getDetalles().size() : 0;
+        // validarProductos arma su consulta recién con las líneas ya validadas
+        return medicionEtapas.medir("total", lineas, medicionEtapas.medir("validacion", lineas, validarPedido(pedidoDTO)
+                        .flatMap(this::validarLineas)
+                        .flatMap(this::validarProductos))
                 .flatMap(validatedDTO -> {
+                    // Una respuesta guardada por Idempotency-Key no es un pedido nuevo para la analítica
+                    AtomicBoolean creado = new AtomicBoolean();
+                    Mono<PedidoDTO> nuevo = persistirPedido(validatedDTO, lineas).doOnNext(pedido -> creado.set(true));
+                    Mono<PedidoDTO> persistir = nuevo;
+                    if (idempotencyKey != null) {
+                        persistir = idempotenciaService.reclamar(idempotencyKey)
+                                .flatMap(nueva -> nueva
+                                        ? nuevo.flatMap(pedido -> idempotenciaService
+                                                .completar(idempotencyKey, pedido)
+                                                .thenReturn(pedido))
+                                        : idempotenciaService.respuestaGuardada(idempotencyKey));
+                    }
+                    // Con el plazo agotado no se abre la transacción; si se agota durante ella, se revierte
+                    return Plazo.limitar(medicionEtapas.medir("transaccion", lineas,
+                                    persistir.as(transactionalOperator::transactional)), null, "guardar pedido")
+                            .doOnNext(pedido -> {
+                                if (creado.get()) {
+                                    registrarVenta(pedido);
+                                    notificarCreado(pedido);
+                                }
+                            });
+                }));
+    }
+
+    private Mono<PedidoDTO> persistirPedido(PedidoDTO validatedDTO, int lineas) {
+        return Mono.defer(() -> {
+            Pedido pedido = new Pedido();
+            pedido.setCliente(validatedDTO.getCliente());
+            pedido.setFecha(LocalDateTime.now());
+            pedido.setEstado("PENDIENTE");
+            pedido.setTotal(calcularTotal(validatedDTO.getDetalles()));
+
+            return medicionEtapas.medir("insertar_pedido", lineas, pedidoRepository.save(pedido))
+                    .flatMap(savedPedido -> medicionEtapas.medir("guardar_detalles", lineas,
+                                    guardarDetalles(savedPedido, validatedDTO.getDetalles()))
+                            .flatMap(detalles -> {
+                                PedidoDTO creado = convertToDTO(savedPedido, detalles);
+                                return medicionEtapas.medir("outbox", lineas,
+                                                sagaPedidoService.iniciar(savedPedido.getId(),
+                                                                crearReserva(savedPedido.getId(), detalles))
+                                                        .then(eventosDominioPedidoService.registrarCreado(creado)))
+                                        .thenReturn(creado);
+                            }));
+        });
+    }
+
+    /**
+     * Recepción asíncrona: solo validaciones locales y baratas, sin consultar ms-productos. El pedido
+     * y sus detalles quedan en estado RECIBIDO con precios en cero; procesarRecibidos los valida,
+     * fija precios y total y registra la reserva de stock.
+     */
+    public Mono<PedidoDTO> registrarRecibido(PedidoDTO pedidoDTO) {
+        return validarPedido(pedidoDTO)
+                .flatMap(this::validarLineas)
+                .flatMap(validatedDTO -> Mono.defer(() -> {
+                    validatedDTO.getDetalles().forEach(detalle -> detalle.setPrecioUnitario(0.0));
                     Pedido pedido = new Pedido();
                     pedido.setCliente(validatedDTO.getCliente());
                     pedido.setFecha(LocalDateTime.now());
-                    pedido.setEstado("PENDIENTE");
-                    pedido.setTotal(calcularTotal(validatedDTO.getDetalles()));
+                    pedido.setEstado("RECIBIDO");
+                    pedido.setTotal(0.0);
 
                     return pedidoRepository.save(pedido)
                             .flatMap(savedPedido -> guardarDetalles(savedPedido, validatedDTO.getDetalles())
-                                    .then(actualizarStockProductos(validatedDTO.getDetalles()))
-                                    .then(enrichPedidoWithDetalles(savedPedido)));
-                });
+                                    .map(detalles -> convertToDTO(savedPedido, detalles)))
+                            .flatMap(creado -> eventosDominioPedidoService.registrarCreado(creado).thenReturn(creado));
+                }).as(transactionalOperator::transactional))
+                .doOnNext(this::notificarCreado);
+    }
+
+    /**
+     * Procesa un lote de pedidos RECIBIDO con una sola consulta de pedidos, una de detalles y una de
+     * productos para todo el lote. Cada pedido válido pasa a PENDIENTE en su propia transacción corta
+     * junto con su evento de reserva; uno inválido pasa a RECHAZADO. Los ids que ya no están en
+     * RECIBIDO se ignoran, así que procesar el mismo id dos veces es inocuo.
+     */
+    public Mono<Void> procesarRecibidos(List<Long> pedidoIds) {
+        Long[] ids = pedidoIds.toArray(Long[]::new);
+        return pedidoRepository.findAllById(pedidoIds)
+                .filter(pedido -> "RECIBIDO".equals(pedido.getEstado()))
+                .collectList()
+                .filter(pedidos -> !pedidos.isEmpty())
+                .flatMap(pedidos -> detallePedidoRepository.buscarPorPedidoIds(ids)
+                        .collectMultimap(DetallePedido::getPedidoId)
+                        .flatMap(detallesPorPedido -> {
+                            List<Long> productoIds = detallesPorPedido.values().stream()
+                                    .flatMap(detalles -> detalles.stream().map(DetallePedido::getProductoId))
+                                    .distinct()
+                                    .toList();
+                            // Cada pedido reserva por separado: basta con el mayor de sus totales por producto
+                            Map<Long, Integer> stockRequerido = detallesPorPedido.values().stream()
+                                    .flatMap(detalles -> cantidadPorProducto(detalles,
+                                            DetallePedido::getProductoId, DetallePedido::getCantidad).entrySet().stream())
+                                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, Math::max));
+                            return buscarProductos(productoIds, stockRequerido)
+                                    .flatMapMany(productos -> Flux.fromIterable(pedidos)
+                                            .concatMap(pedido -> confirmarORechazar(pedido,
+                                                    List.copyOf(detallesPorPedido.getOrDefault(pedido.getId(), List.of())),
+                                                    productos)))
+                                    .then();
+                        }));
+    }
+
+    public Flux<Long> buscarRecibidos(LocalDateTime antesDe, Long cursor, int limite) {
+        return pedidoRepository.buscarRecibidos(antesDe, cursor, limite);
+    }
+
+    private Mono<Void> confirmarORechazar(Pedido pedido, List<DetallePedido> detalles, Map<Long, ProductoDTO> productos) {
+        Map<Long, Integer> cantidades = cantidadPorProducto(detalles, DetallePedido::getProductoId, DetallePedido::getCantidad);
+        for (DetallePedido detalle : detalles) {
+            ProductoDTO producto = productos.get(detalle.getProductoId());
+            String motivo = motivoRechazo(detalle.getProductoId(), cantidades.get(detalle.getProductoId()), producto);
+            if (motivo != null) {
+                log.info("Pedido {} rechazado: {}", pedido.getId(), motivo);
+                return pedidoRepository.actualizarEstado(pedido.getId(), "RECHAZADO", new String[]{"RECIBIDO"})
+                        .flatMap(rechazado -> eventosDominioPedidoService.registrarCambioEstado(rechazado)
+                                .thenReturn(rechazado))
+                        .as(transactionalOperator::transactional)
+                        .doOnNext(rechazado -> {
+                            cachePedidosService.invalidar(rechazado.getId());
+                            notificarCambioEstado(rechazado);
+                        })
+                        .then();
+            }
+            detalle.setPrecioUnitario(producto.getPrecio());
+        }
+        double total = detalles.stream()
+                .mapToDouble(d -> d.getCantidad() * d.getPrecioUnitario())
+                .sum();
+        return detallePedidoRepository.actualizarPrecios(
+                        detalles.stream().map(DetallePedido::getId).toArray(Long[]::new),
+                        detalles.stream().map(DetallePedido::getPrecioUnitario).toArray(Double[]::new))
+                .then(pedidoRepository.confirmarRecibido(pedido.getId(), total))
+                .flatMap(confirmado -> sagaPedidoService.iniciar(confirmado.getId(),
+                                crearReserva(confirmado.getId(), detalles))
+                        .then(eventosDominioPedidoService.registrarCambioEstado(confirmado))
+                        .thenReturn(confirmado))
+                .as(transactionalOperator::transactional)
+                .doOnNext(confirmado -> {
+                    PedidoDTO dto = convertToDTO(confirmado, detalles);
+                    cachePedidosService.guardar(dto, confirmado.getVersion());
+                    registrarVenta(dto);
+                    notificarCambioEstado(confirmado);
+                })
+                .then();
+    }
+
+    // Después del commit: alimenta la analítica en memoria y las estadísticas en vivo
+    private void registrarVenta(PedidoDTO pedido) {
+        analiticaVentasService.registrar(pedido);
+        estadisticasEnVivoService.registrar(pedido);
+    }
+
+    // Después del commit: GET /api/pedidos/stream. Un pedido recién creado tiene la versión inicial 0
+    private void notificarCreado(PedidoDTO pedido) {
+        eventosPedidoService.publicar("CREADO", pedido.getId(), pedido.getCliente(), pedido.getEstado(), 0L);
+    }
+
+    private void notificarCambioEstado(Pedido pedido) {
+        eventosPedidoService.publicar("ESTADO_ACTUALIZADO", pedido.getId(), pedido.getCliente(),
+                pedido.getEstado(), pedido.getVersion());
     }
 
-    @Transactional
     public Mono<PedidoDTO> updateStatus(Long id, String nuevoEstado) {
-        if (!List.of("PENDIENTE", "PROCESADO", "CANCELADO").contains(nuevoEstado)) {
+        String[] estadosOrigen = TRANSICIONES.get(nuevoEstado);
+        if (estadosOrigen == null) {
             return Mono.error(new BadRequestException("Estado inválido"));
         }
 
-        return pedidoRepository.findById(id)
-                .switchIfEmpty(Mono.error(new BadRequestException("Pedido no encontrado")))
-                .flatMap(pedido -> {
-                    pedido.setEstado(nuevoEstado);
-                    return pedidoRepository.save(pedido);
-                })
-                .flatMap(this::enrichPedidoWithDetalles);
+        // PROCESADO espera a que la reserva de stock se aplique: mientras tanto el pedido sigue PENDIENTE
+        // y un rechazo de ms-productos todavía puede cancelarlo
+        boolean exigeReserva = "PROCESADO".equals(nuevoEstado);
+        Mono<Pedido> actualizado = exigeReserva
+                ? pedidoRepository.actualizarEstadoConStockReservado(id, nuevoEstado, estadosOrigen)
+                : pedidoRepository.actualizarEstado(id, nuevoEstado, estadosOrigen);
+
+        // El cambio, su evento de dominio y, al cancelar, la compensación de la reserva de stock se confirman juntos
+        return actualizado
+                .flatMap(pedido -> ("CANCELADO".equals(nuevoEstado)
+                                ? sagaPedidoService.compensar(pedido.getId())
+                                : Mono.<Void>empty())
+                        .then(eventosDominioPedidoService.registrarCambioEstado(pedido))
+                        .thenReturn(pedido))
+                .as(transactionalOperator::transactional)
+                // Sin fila actualizada: se distingue "no existe", "transición no permitida" y "reserva en curso"
+                .switchIfEmpty(Mono.defer(() -> pedidoRepository.findById(id)
+                        .switchIfEmpty(Mono.error(new ResourceNotFoundException("Pedido no encontrado con id: " + id)))
+                        .flatMap(actual -> Mono.error(new BadRequestException(exigeReserva && "PENDIENTE".equals(actual.getEstado())
+                                ? "El pedido " + id + " todavía no tiene el stock reservado"
+                                : "Transición de estado no permitida: " + actual.getEstado() + " -> " + nuevoEstado)))))
+                .doOnNext(this::notificarCambioEstado)
+                // Escritura directa en la caché con la versión nueva: la próxima lectura no va a la base
+                .flatMap(pedido -> enrichPedidoWithDetalles(pedido)
+                        .doOnNext(dto -> cachePedidosService.guardar(dto, pedido.getVersion())));
     }
 
-    @Transactional
     public Mono<Void> delete(Long id) {
-        return pedidoRepository.findById(id)
-                .switchIfEmpty(Mono.error(new BadRequestException("Pedido no encontrado")))
-                .flatMap(pedido -> detallePedidoRepository.deleteAll(pedido.getDetalles())
-                        .then(pedidoRepository.delete(pedido)));
+        return pedidoRepository.eliminarPorId(id)
+                .flatMap(eliminado -> eventosDominioPedidoService.registrarEliminado(id).thenReturn(eliminado))
+                .as(transactionalOperator::transactional)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Pedido no encontrado con id: " + id)))
+                .doOnNext(eliminado -> {
+                    cachePedidosService.invalidar(id);
+                    // Las demás réplicas lo descartan de su caché al recibir el evento
+                    eventosPedidoService.publicar(EventosPedidoService.ELIMINADO, id, null, null, null);
+                })
+                .then();
+    }
+
+    /**
+     * Elimina los pedidos de un rango de fechas [desde, hasta) o de ids [idDesde, idHasta], en lotes de
+     * PEDIDOS_POR_PURGA. Cada lote es una sentencia independiente, así que no se bloquea la tabla
+     * durante toda la purga y un error a mitad conserva lo ya eliminado. Es limpieza por retención:
+     * no publica PEDIDO_DELETED por cada pedido purgado.
+     */
+    public Mono<ResultadoPurgaDTO> purgar(LocalDateTime desde, LocalDateTime hasta, Long idDesde, Long idHasta) {
+        boolean porFecha = desde != null || hasta != null;
+        boolean porIds = idDesde != null || idHasta != null;
+        if (porFecha == porIds) {
+            return Mono.error(new BadRequestException("Debe indicar un rango de fechas (desde, hasta) o de ids (idDesde, idHasta)"));
+        }
+
+        Mono<Integer> lote;
+        if (porFecha) {
+            if (desde == null || hasta == null || !desde.isBefore(hasta)) {
+                return Mono.error(new BadRequestException("El rango de fechas requiere desde < hasta"));
+            }
+            lote = Mono.defer(() -> pedidoRepository.eliminarLotePorFecha(desde, hasta, PEDIDOS_POR_PURGA));
+        } else {
+            if (idDesde == null || idHasta == null || idDesde > idHasta) {
+                return Mono.error(new BadRequestException("El rango de ids requiere idDesde <= idHasta"));
+            }
+            lote = Mono.defer(() -> pedidoRepository.eliminarLotePorIds(idDesde, idHasta, PEDIDOS_POR_PURGA));
+        }
+
+        return lote
+                .expand(eliminados -> eliminados == PEDIDOS_POR_PURGA ? lote : Mono.empty())
+                .reduce(0L, (total, eliminados) -> total + eliminados)
+                .doOnNext(total -> {
+                    log.info("Purga de pedidos completada: {} eliminados", total);
+                    // Los ids purgados no se conocen uno por uno
+                    cachePedidosService.invalidarTodo();
+                })
+                .map(ResultadoPurgaDTO::new);
     }
 
     private Mono<PedidoDTO> enrichPedidoWithDetalles(Pedido pedido) {
@@ -92,6 +436,16 @@ public class PedidoService {
                 });
     }
 
+    private Flux<PedidoDTO> enrichPedidosWithDetalles(List<Pedido> pedidos) {
+        Long[] pedidoIds = pedidos.stream().map(Pedido::getId).toArray(Long[]::new);
+        return detallePedidoRepository.buscarPorPedidoIds(pedidoIds)
+                .collectMultimap(DetallePedido::getPedidoId)
+                .flatMapIterable(detallesPorPedido -> pedidos.stream()
+                        .map(pedido -> convertToDTO(pedido, List.copyOf(
+                                detallesPorPedido.getOrDefault(pedido.getId(), List.of()))))
+                        .toList());
+    }
+
     private Mono<PedidoDTO> validarPedido(PedidoDTO pedidoDTO) {
         if (pedidoDTO.getCliente() == null || pedidoDTO.getCliente().trim().isEmpty()) {
             return Mono.error(new BadRequestException("El cliente es obligatorio"));
@@ -102,25 +456,89 @@ public class PedidoService {
         return Mono.just(pedidoDTO);
     }
 
+    // Validación local de cada línea, sin consultar productos
+    private Mono<PedidoDTO> validarLineas(PedidoDTO pedidoDTO) {
+        for (DetallePedidoDTO detalle : pedidoDTO.getDetalles()) {
+            if (detalle.getProductoId() == null) {
+                return Mono.error(new BadRequestException("Cada línea debe indicar el producto"));
+            }
+            if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
+                return Mono.error(new BadRequestException("La cantidad debe ser mayor que cero: " + detalle.getProductoId()));
+            }
+        }
+        return Mono.just(pedidoDTO);
+    }
+
     private Mono<PedidoDTO> validarProductos(PedidoDTO pedidoDTO) {
-        return Flux.fromIterable(pedidoDTO.getDetalles())
-                .flatMap(detalle -> productoClient.obtenerProducto(detalle.getProductoId())
-                        .switchIfEmpty(Mono
-                                .error(new BadRequestException("Producto no encontrado: " + detalle.getProductoId())))
-                        .filter(producto -> producto.getActivo() && producto.getStock() >= detalle.getCantidad())
-                        .switchIfEmpty(Mono.error(new BadRequestException("Producto inactivo o stock insuficiente")))
-                        .map(producto -> {
-                            detalle.setPrecioUnitario(producto.getPrecio());
-                            return detalle;
-                        }))
-                .collectList()
-                .map(detalles -> {
-                    pedidoDTO.setDetalles(detalles);
+        List<Long> productoIds = pedidoDTO.getDetalles().stream()
+                .map(DetallePedidoDTO::getProductoId)
+                .toList();
+        Map<Long, Integer> stockRequerido = cantidadPorProducto(pedidoDTO.getDetalles(),
+                DetallePedidoDTO::getProductoId, DetallePedidoDTO::getCantidad);
+
+        return buscarProductos(productoIds, stockRequerido)
+                .map(productos -> {
+                    for (DetallePedidoDTO detalle : pedidoDTO.getDetalles()) {
+                        ProductoDTO producto = productos.get(detalle.getProductoId());
+                        String motivo = motivoRechazo(detalle.getProductoId(), stockRequerido.get(detalle.getProductoId()), producto);
+                        if (motivo != null) {
+                            throw new BadRequestException(motivo);
+                        }
+                        detalle.setPrecioUnitario(producto.getPrecio());
+                    }
                     return pedidoDTO;
                 });
     }
 
-    private Mono<Void> guardarDetalles(Pedido pedido, List<DetallePedidoDTO> detallesDTO) {
+    /**
+     * Productos por id: primero la réplica local; solo los faltantes van a ms-productos, en una sola
+     * consulta por lote. Los ids que no existen no aparecen en el mapa.
+     */
+    public Mono<Map<Long, ProductoDTO>> buscarProductos(List<Long> productoIds) {
+        return buscarProductos(productoIds, Map.of());
+    }
+
+    /**
+     * El stock de la réplica no es confiable: ms-productos no publica en producto-events las reservas,
+     * liberaciones ni reposiciones. Un producto local con menos stock que stockRequerido (unidades
+     * pedidas por producto) también se consulta en ms-productos antes de rechazar la línea.
+     */
+    private Mono<Map<Long, ProductoDTO>> buscarProductos(List<Long> productoIds, Map<Long, Integer> stockRequerido) {
+        Map<Long, ProductoDTO> locales = productoReplicaService.buscar(productoIds);
+        List<Long> faltantes = productoIds.stream()
+                .filter(id -> {
+                    ProductoDTO local = locales.get(id);
+                    return local == null || local.getStock() < stockRequerido.getOrDefault(id, 0);
+                })
+                .distinct()
+                .toList();
+        Flux<ProductoDTO> remotos = faltantes.isEmpty()
+                ? Flux.empty()
+                : productoClient.obtenerProductos(faltantes);
+        // Lo consultado en ms-productos reemplaza a la copia local
+        return Flux.concat(Flux.fromIterable(locales.values()), remotos)
+                .collectMap(ProductoDTO::getId);
+    }
+
+    // Unidades pedidas por producto: ms-productos suma las líneas repetidas de una reserva
+    private static <T> Map<Long, Integer> cantidadPorProducto(Collection<T> lineas, Function<T, Long> producto,
+                                                             Function<T, Integer> cantidad) {
+        return lineas.stream().collect(Collectors.toMap(producto, cantidad, Integer::sum));
+    }
+
+    // Motivo por el que no se acepta la línea, o null si el producto existe, está activo y tiene stock
+    // para el total pedido de ese producto
+    private String motivoRechazo(Long productoId, Integer cantidad, ProductoDTO producto) {
+        if (producto == null) {
+            return "Producto no encontrado: " + productoId;
+        }
+        if (!producto.getActivo() || producto.getStock() < cantidad) {
+            return "Producto inactivo o stock insuficiente";
+        }
+        return null;
+    }
+
+    private Mono<List<DetallePedido>> guardarDetalles(Pedido pedido, List<DetallePedidoDTO> detallesDTO) {
         return Flux.fromIterable(detallesDTO)
                 .map(detalleDTO -> {
                     DetallePedido detalle = new DetallePedido();
@@ -130,21 +548,18 @@ public class PedidoService {
                     detalle.setPrecioUnitario(detalleDTO.getPrecioUnitario());
                     return detalle;
                 })
-                .flatMap(detallePedidoRepository::save)
-                .then();
+                .collectList()
+                .flatMapMany(detallePedidoRepository::insertarLote)
+                .collectList();
     }
 
-    private Mono<Void> actualizarStockProductos(List<DetallePedidoDTO> detalles) {
-        return Flux.fromIterable(detalles)
-                .flatMap(detalle -> productoClient.actualizarStock(
-                                detalle.getProductoId(),
-                                -detalle.getCantidad())
-                        .retryWhen(Retry.backoff(3, Duration.ofSeconds(1))
-                                .maxBackoff(Duration.ofSeconds(5)))
-                        .onErrorResume(error ->
-                                Mono.error(new RuntimeException("Error al actualizar stock del producto "
-                                        + detalle.getProductoId() + ": " + error.getMessage(), error))))
-                .then();
+    // Una sola reserva por pedido: todo o nada en ms-productos. La referencia hace idempotentes los
+    // reintentos del relay
+    private ReservaStockDTO crearReserva(Long pedidoId, List<DetallePedido> detalles) {
+        List<ItemReservaDTO> items = detalles.stream()
+                .map(detalle -> new ItemReservaDTO(detalle.getProductoId(), detalle.getCantidad()))
+                .toList();
+        return new ReservaStockDTO("pedido-" + pedidoId, items);
     }
 
     private double calcularTotal(List<DetallePedidoDTO> detalles) {
@@ -0,0 +1,9 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.PedidoDTO;
+
+/**
+ * Un pedido armado con sus detalles junto con la versión de la fila de la que salió.
+ */
+public record PedidoVersionado(PedidoDTO pedido, long version) {
+}
@@ -0,0 +1,143 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.entity.ProductoReplica;
+import com.practica.pedidos.repository.ProductoReplicaRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Réplica local de productos alimentada por producto-events (ver ProductoReplicaConsumer).
+ * Las lecturas se sirven desde memoria; la tabla productos_replica la conserva entre reinicios
+ * para no depender de ms-productos al arrancar. Es una vista eventualmente consistente: el stock
+ * definitivo lo decide la reserva en ms-productos.
+ */
+@Slf4j
+@Service
+public class ProductoReplicaService {
+
+    private static final int CONCURRENCIA_SNAPSHOT = 16;
+
+    private final ProductoReplicaRepository productoReplicaRepository;
+    private final ProductoClient productoClient;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, ProductoDTO> productos = new ConcurrentHashMap<>();
+
+    public ProductoReplicaService(ProductoReplicaRepository productoReplicaRepository,
+                                  ProductoClient productoClient,
+                                  ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry) {
+        this.productoReplicaRepository = productoReplicaRepository;
+        this.productoClient = productoClient;
+        this.objectMapper = objectMapper;
+        Gauge.builder("productos.replica.tamano", productos, Map::size)
+                .description("Productos presentes en la réplica local")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve los productos de la réplica para los ids dados; los ausentes no aparecen en el mapa.
+     */
+    public Map<Long, ProductoDTO> buscar(Collection<Long> ids) {
+        Map<Long, ProductoDTO> encontrados = new HashMap<>();
+        for (Long id : ids) {
+            ProductoDTO producto = productos.get(id);
+            if (producto != null) {
+                encontrados.put(id, producto);
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Carga productos_replica en memoria. Si la tabla está vacía (primer arranque), la llena con un
+     * snapshot completo de ms-productos; los eventos posteriores se aplican encima.
+     */
+    public Mono<Void> inicializar() {
+        return productoReplicaRepository.findAll()
+                .collectList()
+                .flatMap(filas -> {
+                    if (filas.isEmpty()) {
+                        return cargarSnapshot();
+                    }
+                    productos.clear();
+                    filas.forEach(fila -> productos.put(fila.getId(), convertToDTO(fila)));
+                    log.info("Réplica de productos cargada desde la base de datos: {} productos", filas.size());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> cargarSnapshot() {
+        log.info("Réplica de productos vacía, cargando snapshot desde ms-productos...");
+        return productoClient.obtenerTodos()
+                .flatMap(this::guardar, CONCURRENCIA_SNAPSHOT)
+                .count()
+                .doOnNext(total -> log.info("Snapshot de productos cargado: {} productos", total))
+                .then();
+    }
+
+    /**
+     * Aplica un evento de producto-events. Todos los eventos llevan valores absolutos (producto completo,
+     * stock nuevo o borrado), así que reaplicar un evento ya visto no altera el resultado.
+     */
+    public Mono<Void> aplicarEvento(Map<String, Object> evento) {
+        String eventType = (String) evento.get("eventType");
+        Long productoId = evento.get("productoId") instanceof Number numero ? numero.longValue() : null;
+        if (eventType == null || productoId == null) {
+            // PRODUCTO_CREATED no trae id: el producto entra en la réplica con su primer PRODUCTO_UPDATED
+            // o, mientras tanto, se consulta por HTTP
+            log.debug("Evento {} sin productoId, no se aplica a la réplica", eventType);
+            return Mono.empty();
+        }
+        return switch (eventType) {
+            case "PRODUCTO_UPDATED" -> {
+                ProductoDTO producto = objectMapper.convertValue(evento.get("payload"), ProductoDTO.class);
+                producto.setId(productoId);
+                yield guardar(producto).then();
+            }
+            case "STOCK_UPDATED" -> {
+                Integer stockNuevo = evento.get("stockNuevo") instanceof Number numero ? numero.intValue() : null;
+                if (stockNuevo == null) {
+                    log.warn("Evento STOCK_UPDATED del producto {} sin stockNuevo", productoId);
+                    yield Mono.empty();
+                }
+                yield productoReplicaRepository.actualizarStock(productoId, stockNuevo)
+                        .doOnSuccess(filas -> productos.computeIfPresent(productoId, (id, actual) -> new ProductoDTO(
+                                id, actual.getNombre(), actual.getDescripcion(), actual.getPrecio(), stockNuevo, actual.getActivo())))
+                        .then();
+            }
+            case "PRODUCTO_DELETED" -> productoReplicaRepository.deleteById(productoId)
+                    .doOnSuccess(ignorado -> productos.remove(productoId));
+            default -> {
+                log.debug("Evento {} ignorado por la réplica de productos", eventType);
+                yield Mono.empty();
+            }
+        };
+    }
+
+    private Mono<ProductoDTO> guardar(ProductoDTO producto) {
+        // Un producto sin flag activo se trata como activo, igual que al crearlo en ms-productos
+        boolean activo = producto.getActivo() == null || producto.getActivo();
+        ProductoDTO normalizado = new ProductoDTO(producto.getId(), producto.getNombre(), producto.getDescripcion(),
+                producto.getPrecio(), producto.getStock(), activo);
+        return productoReplicaRepository.guardar(normalizado.getId(), normalizado.getNombre(), normalizado.getDescripcion(),
+                        normalizado.getPrecio(), normalizado.getStock(), normalizado.getActivo())
+                .doOnSuccess(filas -> productos.put(normalizado.getId(), normalizado))
+                .thenReturn(normalizado);
+    }
+
+    private ProductoDTO convertToDTO(ProductoReplica fila) {
+        return new ProductoDTO(fila.getId(), fila.getNombre(), fila.getDescripcion(),
+                fila.getPrecio(), fila.getStock(), fila.getActivo());
+    }
+}
@@ -0,0 +1,82 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.exception.ServicioSaturadoException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cola acotada de la recepción asíncrona de pedidos. Cada pedido ocupa un cupo desde que se acepta
+ * hasta que RecepcionPedidosWorker termina de procesarlo; sin cupos libres la solicitud se descarta
+ * con ServicioSaturadoException antes de escribir nada, de modo que la velocidad de ingreso no
+ * depende de la latencia de ms-productos pero tampoco crece sin límite.
+ */
+@Slf4j
+@Service
+public class RecepcionPedidosService {
+
+    private final PedidoService pedidoService;
+    private final int capacidad;
+    private final Semaphore cupos;
+    // Ids de pedidos RECIBIDO pendientes de procesar; acotada por los cupos
+    private final Sinks.Many<Long> cola = Sinks.many().unicast().onBackpressureBuffer();
+    private final Counter descartados;
+
+    public RecepcionPedidosService(PedidoService pedidoService,
+                                   @Value("${pedidos.recepcion.capacidad:10000}") int capacidad,
+                                   MeterRegistry meterRegistry) {
+        this.pedidoService = pedidoService;
+        this.capacidad = capacidad;
+        this.cupos = new Semaphore(capacidad);
+        this.descartados = Counter.builder("pedidos.recepcion.descartados")
+                .description("Pedidos rechazados con 503 por cola de recepción llena")
+                .register(meterRegistry);
+        Gauge.builder("pedidos.recepcion.cola", cupos, semaforo -> this.capacidad - semaforo.availablePermits())
+                .description("Pedidos aceptados y aún no procesados")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserva un cupo, guarda el pedido como RECIBIDO y lo encola. Si el pedido no llega a la cola
+     * (validación fallida, error de base de datos o cancelación) el cupo se devuelve.
+     */
+    public Mono<PedidoDTO> recibir(PedidoDTO pedidoDTO) {
+        return Mono.defer(() -> {
+            if (!cupos.tryAcquire()) {
+                descartados.increment();
+                return Mono.error(new ServicioSaturadoException("Cola de recepción de pedidos llena; reintente más tarde"));
+            }
+            AtomicBoolean encolado = new AtomicBoolean();
+            return pedidoService.registrarRecibido(pedidoDTO)
+                    .doOnNext(pedido -> {
+                        cola.emitNext(pedido.getId(), Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+                        encolado.set(true);
+                    })
+                    .doFinally(senal -> {
+                        if (!encolado.get()) {
+                            cupos.release();
+                        }
+                    });
+        });
+    }
+
+    public Flux<Long> cola() {
+        return cola.asFlux();
+    }
+
+    // Lo invoca el worker al terminar un lote, con éxito o con error
+    public void liberar(int cantidad) {
+        cupos.release(cantidad);
+    }
+}
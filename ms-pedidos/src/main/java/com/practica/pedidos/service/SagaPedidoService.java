@@ -0,0 +1,123 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.entity.SagaPedido;
+import com.practica.pedidos.outbox.LiberacionStockOutboxHandler;
+import com.practica.pedidos.outbox.ReservaStockOutboxHandler;
+import com.practica.pedidos.repository.SagaPedidoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Saga de creación de pedidos. Cada paso queda persistido en sagas_pedido y cada llamada a
+ * ms-productos sale por el outbox, así que un reinicio no pierde ni la reserva ni su compensación:
+ *
+ * RESERVA_SOLICITADA -> STOCK_RESERVADO, y si el pedido se cancela o la reserva se descarta,
+ * -> COMPENSACION_SOLICITADA -> STOCK_LIBERADO. Si la reserva se descarta cuando el pedido ya no
+ * puede cancelarse, RESERVA_SOLICITADA -> RESERVA_FALLIDA: paso terminal que el escáner de
+ * recuperación no retoma y que requiere revisar el pedido a mano.
+ *
+ * Un pedido solo pasa a PROCESADO con la saga en STOCK_RESERVADO, así que con la reserva en curso
+ * sigue PENDIENTE y un rechazo de ms-productos todavía puede cancelarlo.
+ *
+ * Los pasos avanzan con UPDATE condicionales, de modo que un evento repetido o una carrera con la
+ * cancelación no retroceden la saga. La liberación en ms-productos es idempotente y, si llega antes
+ * que la reserva, impide que esta se aplique.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SagaPedidoService {
+
+    private static final String RESERVA_SOLICITADA = "RESERVA_SOLICITADA";
+    private static final String STOCK_RESERVADO = "STOCK_RESERVADO";
+    private static final String COMPENSACION_SOLICITADA = "COMPENSACION_SOLICITADA";
+    private static final String STOCK_LIBERADO = "STOCK_LIBERADO";
+    private static final String RESERVA_FALLIDA = "RESERVA_FALLIDA";
+
+    private final SagaPedidoRepository sagaPedidoRepository;
+    private final OutboxService outboxService;
+    private final ObjectMapper objectMapper;
+    private final TransactionalOperator transactionalOperator;
+
+    /**
+     * Registra la saga junto con su evento de reserva. Debe llamarse en la transacción que crea o
+     * confirma el pedido.
+     */
+    public Mono<Void> iniciar(Long pedidoId, ReservaStockDTO reserva) {
+        return Mono.fromCallable(() -> objectMapper.writeValueAsString(reserva))
+                .onErrorMap(JsonProcessingException.class, error ->
+                        new RuntimeException("Error al serializar la reserva del pedido " + pedidoId, error))
+                .flatMap(json -> outboxService.registrar(ReservaStockOutboxHandler.TIPO, pedidoId, reserva)
+                        .then(sagaPedidoRepository.iniciar(pedidoId, json, LocalDateTime.now())))
+                .then();
+    }
+
+    // Una reserva aplicada después de pedir la compensación no cambia nada: la liberación ya está en el outbox
+    public Mono<Void> marcarReservado(Long pedidoId) {
+        return avanzar(pedidoId, STOCK_RESERVADO, RESERVA_SOLICITADA).then();
+    }
+
+    public Mono<Void> marcarLiberado(Long pedidoId) {
+        return avanzar(pedidoId, STOCK_LIBERADO, COMPENSACION_SOLICITADA).then();
+    }
+
+    /**
+     * Cierra la saga de una reserva descartada cuyo pedido no se pudo cancelar. Sin este paso terminal
+     * el escáner de recuperación volvería a pedir la reserva en cada pasada.
+     */
+    public Mono<Void> marcarReservaFallida(Long pedidoId) {
+        return avanzar(pedidoId, RESERVA_FALLIDA, RESERVA_SOLICITADA)
+                .doOnNext(saga -> log.error("Reserva de stock del pedido {} rechazada con el pedido fuera de PENDIENTE: " +
+                        "requiere revisión manual", pedidoId))
+                .then();
+    }
+
+    /**
+     * Pide la liberación del stock del pedido si la saga todavía no tiene una en curso. Se une a la
+     * transacción del llamador si existe.
+     */
+    public Mono<Void> compensar(Long pedidoId) {
+        return avanzar(pedidoId, COMPENSACION_SOLICITADA, RESERVA_SOLICITADA, STOCK_RESERVADO)
+                .flatMap(saga -> registrarEvento(LiberacionStockOutboxHandler.TIPO, saga))
+                .as(transactionalOperator::transactional)
+                .doOnNext(evento -> log.info("Compensación de stock solicitada para el pedido {}", pedidoId))
+                .then();
+    }
+
+    /**
+     * Recuperación tras una caída: compensa las sagas de pedidos cancelados o rechazados que quedaron
+     * sin compensación, y vuelve a emitir el evento de las sagas detenidas en un paso solicitado. Ambas
+     * llamadas son idempotentes en ms-productos. Devuelve la cantidad de sagas retomadas.
+     */
+    public Mono<Long> recuperar(LocalDateTime antesDe, int limite) {
+        Flux<Long> compensadas = sagaPedidoRepository.buscarPorCompensar(antesDe, limite)
+                .concatMap(saga -> compensar(saga.getPedidoId()).thenReturn(saga.getPedidoId()));
+        Flux<Long> reemitidas = sagaPedidoRepository.reclamarEstancadas(antesDe, LocalDateTime.now(), limite)
+                .concatMap(saga -> registrarEvento(RESERVA_SOLICITADA.equals(saga.getPaso())
+                        ? ReservaStockOutboxHandler.TIPO
+                        : LiberacionStockOutboxHandler.TIPO, saga)
+                        .doOnNext(evento -> log.info("Saga del pedido {} retomada en el paso {}",
+                                saga.getPedidoId(), saga.getPaso()))
+                        .thenReturn(saga.getPedidoId()));
+        return Flux.concat(compensadas, reemitidas).count();
+    }
+
+    private Mono<SagaPedido> avanzar(Long pedidoId, String paso, String... desde) {
+        return Mono.defer(() -> sagaPedidoRepository.avanzar(pedidoId, paso, desde, LocalDateTime.now()));
+    }
+
+    private Mono<EventoOutbox> registrarEvento(String tipo, SagaPedido saga) {
+        return Mono.fromCallable(() -> objectMapper.readValue(saga.getReserva(), ReservaStockDTO.class))
+                .flatMap(reserva -> outboxService.registrar(tipo, saga.getPedidoId(), reserva));
+    }
+}
@@ -0,0 +1,45 @@
+package com.practica.pedidos.service;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Duración de cada etapa medida durante una solicitud, para devolverla en el header Server-Timing.
+ * Viaja en el contexto de Reactor igual que Plazo; MedicionEtapas la completa si está presente.
+ */
+public final class TiemposSolicitud {
+
+    private static final Class<TiemposSolicitud> CLAVE = TiemposSolicitud.class;
+
+    private record Etapa(String nombre, long nanos) {
+    }
+
+    private final Queue<Etapa> etapas = new ConcurrentLinkedQueue<>();
+
+    public Context escribir(Context contexto) {
+        return contexto.put(CLAVE, this);
+    }
+
+    static TiemposSolicitud de(ContextView contexto) {
+        return contexto.getOrDefault(CLAVE, null);
+    }
+
+    void registrar(String etapa, long nanos) {
+        etapas.add(new Etapa(etapa, nanos));
+    }
+
+    /**
+     * Valor de Server-Timing, p. ej. {@code validacion;dur=12.4, insertar_pedido;dur=1.8}; vacío si no
+     * se midió ninguna etapa. Las etapas aparecen en el orden en que terminaron.
+     */
+    public String serverTiming() {
+        return etapas.stream()
+                .map(etapa -> String.format(Locale.ROOT, "%s;dur=%.1f", etapa.nombre(), etapa.nanos() / 1_000_000.0))
+                .collect(Collectors.joining(", "));
+    }
+}
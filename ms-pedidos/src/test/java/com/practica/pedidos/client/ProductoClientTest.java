@@ -0,0 +1,256 @@
+package com.practica.pedidos.client;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import com.practica.pedidos.exception.PlazoAgotadoException;
+import com.practica.pedidos.exception.ResourceNotFoundException;
+import com.practica.pedidos.plazo.Plazo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductoClientTest {
+
+    private final AtomicInteger llamadasHttp = new AtomicInteger();
+    private final List<String> consultasHttp = new CopyOnWriteArrayList<>();
+    private MeterRegistry meterRegistry;
+    private ResilienciaProductos resiliencia;
+    private ProductoClient productoClient;
+    // Respuesta simulada de ms-productos; cada prueba puede reemplazarla
+    private Function<ClientRequest, Mono<ClientResponse>> respuesta = this::respuestaOk;
+
+    @BeforeEach
+    void setUp() {
+        crearCliente(true);
+    }
+
+    private void crearCliente(boolean hedging) {
+        meterRegistry = new SimpleMeterRegistry();
+        WebClient.Builder builder = WebClient.builder()
+                .exchangeFunction(request -> {
+                    llamadasHttp.incrementAndGet();
+                    consultasHttp.add(request.url().getRawQuery());
+                    return respuesta.apply(request);
+                });
+        resiliencia = new ResilienciaProductos(meterRegistry, 50, Duration.ofSeconds(2), Duration.ofSeconds(10),
+                50, hedging, Duration.ofMillis(20), Duration.ofSeconds(1));
+        productoClient = new ProductoClient(builder, "http://ms-productos", 100, Duration.ofMinutes(5),
+                Duration.ofMillis(100), meterRegistry, resiliencia);
+    }
+
+    private Mono<ClientResponse> respuestaOk(ClientRequest request) {
+        String body = request.url().getPath().endsWith("/1")
+                ? "{\"id\":1,\"nombre\":\"Laptop\",\"precio\":1000.0,\"stock\":10,\"activo\":true}"
+                : "[{\"id\":1,\"nombre\":\"Laptop\",\"precio\":1000.0,\"stock\":10,\"activo\":true},"
+                + "{\"id\":2,\"nombre\":\"Mouse\",\"precio\":20.0,\"stock\":50,\"activo\":true}]";
+        return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+    }
+
+    @Test
+    void testObtenerProductos_SecondLookupShouldBeServedFromCache() {
+        StepVerifier.create(productoClient.obtenerProductos(List.of(1L, 2L)))
+                .expectNextCount(2)
+                .verifyComplete();
+        StepVerifier.create(productoClient.obtenerProducto(1L))
+                .expectNextMatches(producto -> producto.getNombre().equals("Laptop"))
+                .verifyComplete();
+        StepVerifier.create(productoClient.obtenerProductos(List.of(2L, 1L)))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(1, llamadasHttp.get());
+        assertEquals(3.0, meterRegistry.get("cache.gets").tag("cache", "productos").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testInvalidarCache_ShouldForceRemoteLookup() {
+        StepVerifier.create(productoClient.obtenerProducto(1L)).expectNextCount(1).verifyComplete();
+        productoClient.invalidarCache(1L);
+        StepVerifier.create(productoClient.obtenerProducto(1L)).expectNextCount(1).verifyComplete();
+
+        assertEquals(2, llamadasHttp.get());
+    }
+
+    @Test
+    void testObtenerProducto_SlowFirstRequestShouldBeHedged() {
+        AtomicInteger intentos = new AtomicInteger();
+        respuesta = request -> intentos.incrementAndGet() == 1
+                ? respuestaOk(request).delayElement(Duration.ofSeconds(3))
+                : respuestaOk(request);
+
+        StepVerifier.create(productoClient.obtenerProducto(1L))
+                .expectNextMatches(producto -> producto.getNombre().equals("Laptop"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertEquals(2, llamadasHttp.get());
+        assertEquals(1.0, meterRegistry.get("productos.http.hedges").counter().count());
+    }
+
+    @Test
+    void testObtenerProducto_PrimaryFailingAfterHedgeLaunched_ShouldReturnHedgeResult() {
+        AtomicInteger intentos = new AtomicInteger();
+        // El pod lento responde 500 después de lanzado el respaldo, pero antes que este
+        respuesta = request -> intentos.incrementAndGet() == 1
+                ? Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build()).delayElement(Duration.ofMillis(100))
+                : respuestaOk(request).delayElement(Duration.ofMillis(300));
+
+        StepVerifier.create(productoClient.obtenerProducto(1L))
+                .expectNextMatches(producto -> producto.getNombre().equals("Laptop"))
+                .expectComplete()
+                .verify(Duration.ofSeconds(2));
+
+        assertEquals(2, llamadasHttp.get());
+    }
+
+    @Test
+    void testObtenerProducto_WhenPrimaryAndHedgeFail_ShouldPropagateError() {
+        AtomicInteger intentos = new AtomicInteger();
+        respuesta = request -> Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build())
+                .delayElement(Duration.ofMillis(intentos.incrementAndGet() == 1 ? 100 : 50));
+
+        StepVerifier.create(productoClient.obtenerProducto(1L))
+                .expectErrorMatches(error -> error.getMessage().contains("Error del servidor"))
+                .verify(Duration.ofSeconds(2));
+
+        assertEquals(2, llamadasHttp.get());
+    }
+
+    @Test
+    void testCircuitBreaker_ShouldOpenAfterRepeatedServerErrors() {
+        respuesta = request -> Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+
+        for (int i = 0; i < 20; i++) {
+            StepVerifier.create(productoClient.obtenerProducto(1L))
+                    .expectError(RuntimeException.class)
+                    .verify();
+        }
+        StepVerifier.create(productoClient.obtenerProducto(1L))
+                .expectError(CallNotPermittedException.class)
+                .verify();
+
+        assertEquals(20, llamadasHttp.get());
+        assertEquals(CircuitBreaker.State.OPEN, resiliencia.getCircuitBreaker().getState());
+        assertEquals(1.0, meterRegistry.get("productos.circuitbreaker.transiciones")
+                .tag("desde", "CLOSED").tag("hacia", "OPEN").counter().count());
+    }
+
+    @Test
+    void testCircuitBreaker_NotFoundShouldNotCountAsFailure() {
+        respuesta = request -> Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+
+        for (int i = 0; i < 25; i++) {
+            StepVerifier.create(productoClient.obtenerProducto(1L))
+                    .expectError(ResourceNotFoundException.class)
+                    .verify();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, resiliencia.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void testObtenerProducto_ConcurrentLookupsShouldShareOneRequest() {
+        crearCliente(false);
+        respuesta = request -> respuestaOk(request).delayElement(Duration.ofMillis(100));
+
+        StepVerifier.create(Flux.range(0, 10).flatMap(i -> productoClient.obtenerProducto(1L)))
+                .expectNextCount(10)
+                .verifyComplete();
+
+        assertEquals(1, llamadasHttp.get());
+        assertEquals(1.0, meterRegistry.get("productos.coalescing.solicitudes").tag("rol", "lider").counter().count());
+        assertEquals(9.0, meterRegistry.get("productos.coalescing.solicitudes").tag("rol", "seguidor").counter().count());
+    }
+
+    @Test
+    void testObtenerProductos_ShouldJoinInFlightLookupAndRequestOnlyTheRest() {
+        crearCliente(false);
+        respuesta = request -> respuestaOk(request).delayElement(Duration.ofMillis(100));
+
+        StepVerifier.create(Flux.merge(
+                        productoClient.obtenerProducto(1L),
+                        productoClient.obtenerProductos(List.of(1L, 2L))))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        assertEquals(2, llamadasHttp.get());
+        assertEquals("ids=2", consultasHttp.get(1));
+    }
+
+    @Test
+    void testObtenerProductos_JoiningSingleLookupOfMissingProduct_ShouldOmitIt() {
+        crearCliente(false);
+        respuesta = request -> (request.url().getPath().endsWith("/1")
+                ? Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build())
+                : respuestaOk(request)).delayElement(Duration.ofMillis(100));
+
+        // El lote se une a la consulta individual del id 1, que responde 404
+        StepVerifier.create(Flux.merge(
+                        productoClient.obtenerProducto(1L)
+                                .onErrorResume(ResourceNotFoundException.class, error -> Mono.empty()),
+                        productoClient.obtenerProductos(List.of(1L, 2L))))
+                .expectNextMatches(producto -> producto.getId().equals(2L))
+                .verifyComplete();
+
+        assertEquals(2, llamadasHttp.get());
+        assertEquals("ids=2", consultasHttp.get(1));
+    }
+
+    @Test
+    void testObtenerProducto_JoiningBatchWithoutIt_ShouldThrowNotFound() {
+        crearCliente(false);
+        respuesta = request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body("[{\"id\":2,\"nombre\":\"Mouse\",\"precio\":20.0,\"stock\":50,\"activo\":true}]")
+                        .build())
+                .delayElement(Duration.ofMillis(100));
+
+        // La consulta individual del id 3 se une al lote, que no lo trae
+        StepVerifier.create(productoClient.obtenerProductos(List.of(2L, 3L))
+                        .mergeWith(productoClient.obtenerProducto(3L)))
+                .expectNextMatches(producto -> producto.getId().equals(2L))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+        // También dentro de la ventana de reutilización
+        StepVerifier.create(productoClient.obtenerProducto(3L))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+
+        assertEquals(1, llamadasHttp.get());
+    }
+
+    @Test
+    void testObtenerProductos_ShouldAbortWhenRequestDeadlineExpires() {
+        crearCliente(false);
+        respuesta = request -> respuestaOk(request).delayElement(Duration.ofSeconds(3));
+
+        StepVerifier.create(productoClient.obtenerProductos(List.of(1L, 2L))
+                        .contextWrite(Plazo.en(Duration.ofMillis(100))::escribir))
+                .expectError(PlazoAgotadoException.class)
+                .verify(Duration.ofSeconds(1));
+        // Un plazo agotado no cuenta como falla de ms-productos
+        assertEquals(0, resiliencia.getCircuitBreaker().getMetrics().getNumberOfFailedCalls());
+    }
+}
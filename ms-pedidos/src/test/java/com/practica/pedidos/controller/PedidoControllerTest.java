@@ -1,25 +1,41 @@
 package com.practica.pedidos.controller;
 
+import com.practica.pedidos.dto.EventoPedidoDTO;
+import com.practica.pedidos.dto.PaginaPedidosDTO;
 import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ResultadoImportacionDTO;
+import com.practica.pedidos.dto.ResultadoPurgaDTO;
+import com.practica.pedidos.service.EventosPedidoService;
+import com.practica.pedidos.service.ExportacionPedidosService;
+import com.practica.pedidos.service.IdempotenciaService;
+import com.practica.pedidos.service.ImportacionPedidosService;
+import com.practica.pedidos.exception.ServicioSaturadoException;
 import com.practica.pedidos.service.PedidoService;
+import com.practica.pedidos.service.PedidoVersionado;
+import com.practica.pedidos.service.RecepcionPedidosService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @WebFluxTest(PedidoController.class)
 @Import(com.practica.pedidos.config.SecurityConfig.class)
@@ -31,6 +47,21 @@ class PedidoControllerTest {
     @MockBean
     private PedidoService pedidoService;
 
+    @MockBean
+    private IdempotenciaService idempotenciaService;
+
+    @MockBean
+    private RecepcionPedidosService recepcionPedidosService;
+
+    @MockBean
+    private ImportacionPedidosService importacionPedidosService;
+
+    @MockBean
+    private ExportacionPedidosService exportacionPedidosService;
+
+    @MockBean
+    private EventosPedidoService eventosPedidoService;
+
     private PedidoDTO pedidoDTO1;
     private PedidoDTO pedidoDTO2;
 
@@ -67,15 +98,80 @@ class PedidoControllerTest {
                 .hasSize(2);
     }
 
+    @Test
+    @WithMockUser
+    void testStream_ShouldReturnNdjson() {
+        when(pedidoService.stream()).thenReturn(Flux.just(pedidoDTO1, pedidoDTO2));
+
+        webTestClient.get()
+                .uri("/api/pedidos")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(PedidoDTO.class)
+                .hasSize(2);
+    }
+
+    @Test
+    @WithMockUser
+    void testExportar_WithInvertedRange_ShouldReturnJsonBadRequest() {
+        webTestClient.get()
+                .uri("/api/pedidos/export?desde=2025-03-02T00:00:00&hasta=2025-03-01T00:00:00")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_DISPOSITION)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("El rango de fechas requiere desde < hasta");
+
+        verify(exportacionPedidosService, never()).exportar(any(), any(), any(), any());
+    }
+
+    @Test
+    @WithMockUser
+    void testGetPage_ShouldReturnPageWithCursor() {
+        when(pedidoService.getPagina(10L, 2))
+                .thenReturn(Mono.just(new PaginaPedidosDTO(List.of(pedidoDTO1, pedidoDTO2), 2L)));
+
+        webTestClient.get()
+                .uri("/api/pedidos/page?cursor=10&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(PaginaPedidosDTO.class)
+                .value(pagina -> {
+                    assert pagina.getPedidos().size() == 2;
+                    assert pagina.getSiguienteCursor().equals(2L);
+                });
+    }
+
+    @Test
+    @WithMockUser
+    void testSearch_ShouldPassFiltersToService() {
+        when(pedidoService.buscar("cliente-123", "PENDIENTE", null, null, 10L, 20))
+                .thenReturn(Mono.just(new PaginaPedidosDTO(List.of(pedidoDTO1), null)));
+
+        webTestClient.get()
+                .uri("/api/pedidos/search?cliente=cliente-123&estado=PENDIENTE&cursor=10&limit=20")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(PaginaPedidosDTO.class)
+                .value(pagina -> {
+                    assert pagina.getPedidos().size() == 1;
+                    assert pagina.getSiguienteCursor() == null;
+                });
+    }
+
     @Test
     @WithMockUser
     void testGetById_ShouldReturnPedido() {
-        when(pedidoService.getById(1L)).thenReturn(Mono.just(pedidoDTO1));
+        when(pedidoService.getByIdVersionado(1L)).thenReturn(Mono.just(new PedidoVersionado(pedidoDTO1, 3L)));
 
         webTestClient.get()
                 .uri("/api/pedidos/1")
                 .exchange()
                 .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
                 .expectBody(PedidoDTO.class)
                 .value(pedido -> {
                     assert pedido.getId().equals(1L);
@@ -86,7 +182,7 @@ class PedidoControllerTest {
     @Test
     @WithMockUser
     void testGetById_NotFound_ShouldReturn404() {
-        when(pedidoService.getById(999L)).thenReturn(Mono.empty());
+        when(pedidoService.getByIdVersionado(999L)).thenReturn(Mono.empty());
 
         webTestClient.get()
                 .uri("/api/pedidos/999")
@@ -94,6 +190,42 @@ class PedidoControllerTest {
                 .expectStatus().isNotFound();
     }
 
+    @Test
+    @WithMockUser
+    void testStreamEventos_ShouldPushFilteredEventsAsServerSentEvents() {
+        EventoPedidoDTO evento = new EventoPedidoDTO("ESTADO_ACTUALIZADO", 1L, "cliente-123", "PROCESADO", 2L, LocalDateTime.now());
+        when(eventosPedidoService.suscribir("cliente-123", null)).thenReturn(Flux.just(evento));
+
+        Flux<ServerSentEvent<EventoPedidoDTO>> eventos = webTestClient.get()
+                .uri("/api/pedidos/stream?cliente=cliente-123")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<EventoPedidoDTO>>() {
+                })
+                .getResponseBody();
+
+        StepVerifier.create(eventos.take(1))
+                .expectNextMatches(sse -> "ESTADO_ACTUALIZADO".equals(sse.event())
+                        && "1-2".equals(sse.id())
+                        && sse.data().getEstado().equals("PROCESADO"))
+                .verifyComplete();
+    }
+
+    @Test
+    @WithMockUser
+    void testGetById_WithMatchingETag_ShouldReturnNotModified() {
+        when(pedidoService.getByIdVersionado(1L)).thenReturn(Mono.just(new PedidoVersionado(pedidoDTO1, 3L)));
+
+        webTestClient.get()
+                .uri("/api/pedidos/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"")
+                .expectBody().isEmpty();
+    }
+
     @Test
     @WithMockUser
     void testCreate_ShouldReturnCreatedPedido() {
@@ -124,6 +256,85 @@ class PedidoControllerTest {
                 });
     }
 
+    @Test
+    @WithMockUser
+    void testCreate_WithIdempotencyKey_ShouldDelegateToIdempotenciaService() {
+        PedidoDTO newPedido = new PedidoDTO();
+        newPedido.setCliente("cliente-123");
+        newPedido.setDetalles(new ArrayList<>());
+
+        when(idempotenciaService.ejecutar(eq("compra-42"), any())).thenReturn(Mono.just(pedidoDTO1));
+
+        webTestClient.post()
+                .uri("/api/pedidos")
+                .header("Idempotency-Key", "compra-42")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(newPedido)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(PedidoDTO.class)
+                .value(pedido -> {
+                    assert pedido.getId().equals(1L);
+                });
+
+        verify(pedidoService, never()).create(any(PedidoDTO.class));
+    }
+
+    @Test
+    @WithMockUser
+    void testCreateAsync_ShouldReturnAcceptedWithStatusLocation() {
+        PedidoDTO recibido = new PedidoDTO(7L, "cliente-123", LocalDateTime.now(), 0.0, "RECIBIDO", new ArrayList<>());
+
+        when(recepcionPedidosService.recibir(any(PedidoDTO.class))).thenReturn(Mono.just(recibido));
+
+        webTestClient.post()
+                .uri("/api/pedidos/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(pedidoDTO1)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectHeader().location("/api/pedidos/7")
+                .expectBody(PedidoDTO.class)
+                .value(pedido -> {
+                    assert pedido.getEstado().equals("RECIBIDO");
+                });
+
+        verify(pedidoService, never()).create(any(PedidoDTO.class));
+    }
+
+    @Test
+    @WithMockUser
+    void testCreateAsync_WhenQueueIsFull_ShouldReturn503WithRetryAfter() {
+        when(recepcionPedidosService.recibir(any(PedidoDTO.class)))
+                .thenReturn(Mono.error(new ServicioSaturadoException("Cola de recepción de pedidos llena; reintente más tarde")));
+
+        webTestClient.post()
+                .uri("/api/pedidos/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(pedidoDTO1)
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals("Retry-After", "1");
+    }
+
+    @Test
+    @WithMockUser
+    void testImportar_WithCsv_ShouldStreamResultsAsNdjson() {
+        when(importacionPedidosService.importar(any(), eq(true))).thenReturn(Flux.just(
+                new ResultadoImportacionDTO(2L, "ERP-1", 101L, null),
+                new ResultadoImportacionDTO(4L, "ERP-2", null, "Producto no encontrado: 9")));
+
+        webTestClient.post()
+                .uri("/api/pedidos/import")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("referencia,cliente,fecha,estado,producto_id,cantidad,precio_unitario\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(ResultadoImportacionDTO.class)
+                .hasSize(2);
+    }
+
     @Test
     @WithMockUser
     void testUpdateEstado_ShouldReturnUpdatedPedido() {
@@ -135,4 +346,22 @@ class PedidoControllerTest {
                 .expectStatus().isOk()
                 .expectBody(PedidoDTO.class);
     }
+
+    @Test
+    @WithMockUser
+    void testPurgar_ShouldReturnDeletedCount() {
+        LocalDateTime desde = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        when(pedidoService.purgar(desde, hasta, null, null)).thenReturn(Mono.just(new ResultadoPurgaDTO(42L)));
+
+        webTestClient.delete()
+                .uri("/api/pedidos?desde=2024-01-01T00:00:00&hasta=2025-01-01T00:00:00")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ResultadoPurgaDTO.class)
+                .value(resultado -> {
+                    assert resultado.getEliminados() == 42L;
+                });
+    }
 }
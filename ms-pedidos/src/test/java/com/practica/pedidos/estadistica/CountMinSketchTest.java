@@ -0,0 +1,47 @@
+package com.practica.pedidos.estadistica;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    @Test
+    void testTop_ShouldFindHeavyHittersAmongManyProducts() {
+        CountMinSketch sketch = new CountMinSketch(4, 1024, 3);
+        for (long producto = 1000; producto < 6000; producto++) {
+            sketch.agregar(producto, 1);
+            // Los productos 1, 2 y 3 aparecen intercalados con el resto
+            sketch.agregar(1L + producto % 3, producto % 3 + 1);
+        }
+
+        List<CountMinSketch.Frecuencia> top = sketch.top();
+
+        assertEquals(List.of(3L, 2L, 1L), top.stream().map(CountMinSketch.Frecuencia::elemento).toList());
+        // Nunca subestima
+        assertTrue(top.get(0).estimacion() >= 5000);
+        assertTrue(sketch.estimar(1500L) >= 1);
+    }
+
+    @Test
+    void testFusionar_ShouldAddCountsAndMergeCandidates() {
+        CountMinSketch replicaA = new CountMinSketch(4, 1024, 2);
+        CountMinSketch replicaB = new CountMinSketch(4, 1024, 2);
+        replicaA.agregar(1L, 100);
+        replicaA.agregar(2L, 50);
+        replicaB.agregar(3L, 120);
+        replicaB.agregar(2L, 60);
+
+        CountMinSketch fusionado = CountMinSketch.desdeBytes(replicaA.aBytes());
+        fusionado.fusionar(CountMinSketch.desdeBytes(replicaB.aBytes()));
+
+        assertEquals(List.of(new CountMinSketch.Frecuencia(3L, 120), new CountMinSketch.Frecuencia(2L, 110)),
+                fusionado.top());
+        assertThrows(IllegalArgumentException.class, () -> fusionado.fusionar(new CountMinSketch(4, 512, 2)));
+        assertThrows(IllegalArgumentException.class, () -> CountMinSketch.desdeBytes(new byte[5]));
+    }
+}
@@ -0,0 +1,55 @@
+package com.practica.pedidos.estadistica;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void testEstimar_ShouldStayWithinExpectedError() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 100_000; i++) {
+            // Cada cliente aparece varias veces: solo cuentan los distintos
+            hll.agregar("cliente-" + i);
+            hll.agregar("cliente-" + i);
+        }
+
+        long estimacion = hll.estimar();
+
+        assertTrue(Math.abs(estimacion - 100_000) < 5_000, "estimación: " + estimacion);
+    }
+
+    @Test
+    void testEstimar_WithFewValues_ShouldBeExact() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 50; i++) {
+            hll.agregar("cliente-" + (i % 10));
+        }
+
+        assertEquals(10, hll.estimar());
+    }
+
+    @Test
+    void testFusionar_ShouldEqualSketchOfTheUnion() {
+        HyperLogLog replicaA = new HyperLogLog(12);
+        HyperLogLog replicaB = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (int i = 0; i < 30_000; i++) {
+            replicaA.agregar("cliente-" + i);
+            union.agregar("cliente-" + i);
+        }
+        for (int i = 20_000; i < 50_000; i++) {
+            replicaB.agregar("cliente-" + i);
+            union.agregar("cliente-" + i);
+        }
+
+        HyperLogLog fusionado = HyperLogLog.desdeBytes(replicaA.aBytes());
+        fusionado.fusionar(HyperLogLog.desdeBytes(replicaB.aBytes()));
+
+        assertEquals(union.estimar(), fusionado.estimar());
+        assertThrows(IllegalArgumentException.class, () -> fusionado.fusionar(new HyperLogLog(10)));
+    }
+}
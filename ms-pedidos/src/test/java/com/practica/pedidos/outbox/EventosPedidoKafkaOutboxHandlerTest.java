@@ -0,0 +1,96 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderRecord;
+import reactor.kafka.sender.SenderResult;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventosPedidoKafkaOutboxHandlerTest {
+
+    @Mock
+    private KafkaSender<String, String> kafkaSender;
+
+    private EventosPedidoKafkaOutboxHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        handler = new EventosPedidoKafkaOutboxHandler(kafkaSender, "pedido-events");
+    }
+
+    private EventoOutbox evento(Long id, Long pedidoId) {
+        return new EventoOutbox(id, EventosPedidoKafkaOutboxHandler.TIPO, pedidoId, "{\"pedidoId\":" + pedidoId + "}",
+                "PENDIENTE", 1, null, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    // El sender simulado confirma todo salvo el evento 2
+    @SuppressWarnings("unchecked")
+    private void prepararEnvio(List<SenderRecord<String, String, EventoOutbox>> enviados) {
+        when(kafkaSender.send(any(Flux.class))).thenAnswer(invocation -> invocation
+                .<Flux<SenderRecord<String, String, EventoOutbox>>>getArgument(0)
+                .doOnNext(enviados::add)
+                .map(registro -> resultado(registro.correlationMetadata(),
+                        registro.correlationMetadata().getId() == 2L ? new RuntimeException("Timeout") : null)));
+    }
+
+    private SenderResult<EventoOutbox> resultado(EventoOutbox evento, Exception error) {
+        return new SenderResult<>() {
+            @Override
+            public RecordMetadata recordMetadata() {
+                return null;
+            }
+
+            @Override
+            public Exception exception() {
+                return error;
+            }
+
+            @Override
+            public EventoOutbox correlationMetadata() {
+                return evento;
+            }
+        };
+    }
+
+    @Test
+    void testPublicarLote_ShouldSendAllEventsKeyedByPedidoInOneCall() {
+        List<SenderRecord<String, String, EventoOutbox>> enviados = new ArrayList<>();
+        prepararEnvio(enviados);
+
+        StepVerifier.create(handler.publicarLote(List.of(evento(1L, 10L), evento(2L, 11L), evento(3L, 10L))))
+                .expectNextMatches(resultado -> resultado.evento().getId() == 1L && resultado.error() == null)
+                .expectNextMatches(resultado -> resultado.evento().getId() == 2L && resultado.error() != null)
+                .expectNextMatches(resultado -> resultado.evento().getId() == 3L && resultado.error() == null)
+                .verifyComplete();
+
+        verify(kafkaSender, times(1)).send(any());
+        assert enviados.stream().map(SenderRecord::key).toList().equals(List.of("10", "11", "10"));
+        assert enviados.stream().allMatch(registro -> registro.topic().equals("pedido-events"));
+        assert new String(enviados.get(2).headers().lastHeader("evento-id").value(), StandardCharsets.UTF_8).equals("3");
+    }
+
+    @Test
+    void testPublicar_WhenRecordFails_ShouldPropagateErrorForRetry() {
+        prepararEnvio(new ArrayList<>());
+
+        StepVerifier.create(handler.publicar(evento(2L, 11L)))
+                .expectErrorMessage("Timeout")
+                .verify();
+    }
+}
@@ -0,0 +1,158 @@
+package com.practica.pedidos.outbox;
+
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.EventoOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    private EventoOutboxRepository eventoOutboxRepository;
+
+    @Mock
+    private OutboxHandler handler;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        when(handler.tipo()).thenReturn("STOCK_RESERVATION_REQUESTED");
+        outboxRelay = new OutboxRelay(eventoOutboxRepository, List.of(handler),
+                Duration.ofSeconds(1), 10, 4, 3, Duration.ofSeconds(30), Duration.ofMinutes(5));
+    }
+
+    private EventoOutbox evento(Long id, int intentos) {
+        return new EventoOutbox(id, "STOCK_RESERVATION_REQUESTED", 10L, "{}", "PENDIENTE", intentos,
+                null, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    private EventoOutbox eventoPedido(Long id, Long pedidoId) {
+        return new EventoOutbox(id, "PEDIDO_EVENT", pedidoId, "{}", "PENDIENTE", 1,
+                null, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    @Test
+    void testDrenar_WhenHandlerSucceeds_ShouldMarkPublished() {
+        when(eventoOutboxRepository.reclamarLote(any(), any(), eq(10))).thenReturn(Flux.just(evento(1L, 1), evento(2L, 1)));
+        when(handler.publicar(any(EventoOutbox.class))).thenReturn(Mono.empty());
+        when(eventoOutboxRepository.marcarPublicado(anyLong())).thenReturn(Mono.just(1));
+
+        StepVerifier.create(outboxRelay.drenar())
+                .expectNext(2L)
+                .verifyComplete();
+
+        verify(eventoOutboxRepository).marcarPublicado(1L);
+        verify(eventoOutboxRepository).marcarPublicado(2L);
+    }
+
+    @Test
+    void testDrenar_WithBatchHandler_ShouldSendOneEventPerPedidoPerRoundAndStopPedidoOnFailure() {
+        OutboxHandler handlerEnLote = mock(OutboxHandler.class);
+        when(handlerEnLote.tipo()).thenReturn("PEDIDO_EVENT");
+        when(handlerEnLote.publicaEnLote()).thenReturn(true);
+        OutboxRelay relay = new OutboxRelay(eventoOutboxRepository, List.of(handler, handlerEnLote),
+                Duration.ofSeconds(1), 10, 4, 3, Duration.ofSeconds(30), Duration.ofMinutes(5));
+
+        EventoOutbox reserva = evento(1L, 1);
+        EventoOutbox creado10 = eventoPedido(2L, 10L);
+        EventoOutbox creado11 = eventoPedido(3L, 11L);
+        EventoOutbox cambiado10 = eventoPedido(4L, 10L);
+        EventoOutbox cambiado11 = eventoPedido(5L, 11L);
+
+        when(eventoOutboxRepository.reclamarLote(any(), any(), eq(10)))
+                .thenReturn(Flux.just(cambiado11, cambiado10, reserva, creado11, creado10));
+        when(handler.publicar(reserva)).thenReturn(Mono.empty());
+        when(eventoOutboxRepository.marcarPublicado(1L)).thenReturn(Mono.just(1));
+        // Primera ronda: el evento del pedido 10 falla y lo detiene
+        when(handlerEnLote.publicarLote(List.of(creado10, creado11))).thenReturn(Flux.just(
+                new ResultadoPublicacion(creado10, new RuntimeException("Timeout")),
+                new ResultadoPublicacion(creado11, null)));
+        when(eventoOutboxRepository.marcarPublicados(aryEq(new Long[]{3L}))).thenReturn(Mono.just(1));
+        when(eventoOutboxRepository.reprogramar(eq(2L), any(LocalDateTime.class), eq("Timeout"))).thenReturn(Mono.just(1));
+        // Segunda ronda: solo el pedido 11
+        when(handlerEnLote.publicarLote(List.of(cambiado11))).thenReturn(Flux.just(new ResultadoPublicacion(cambiado11, null)));
+        when(eventoOutboxRepository.marcarPublicados(aryEq(new Long[]{5L}))).thenReturn(Mono.just(1));
+        when(eventoOutboxRepository.liberar(aryEq(new Long[]{4L}), any(LocalDateTime.class))).thenReturn(Mono.just(1));
+
+        StepVerifier.create(relay.drenar())
+                .expectNext(5L)
+                .verifyComplete();
+
+        // El cambio del pedido 10 no se envía antes que su creación: vuelve al outbox
+        verify(handlerEnLote, never()).publicarLote(argThat(eventos -> eventos.contains(cambiado10)));
+        verify(eventoOutboxRepository).liberar(aryEq(new Long[]{4L}), any(LocalDateTime.class));
+        verify(handlerEnLote, never()).publicar(any());
+    }
+
+    @Test
+    void testDrenar_WhenEarlierEventOfPedidoFails_ShouldNotPublishLaterOnes() {
+        EventoOutbox primero = evento(1L, 1);
+        EventoOutbox segundo = evento(2L, 1);
+
+        when(eventoOutboxRepository.reclamarLote(any(), any(), eq(10))).thenReturn(Flux.just(segundo, primero));
+        when(handler.publicar(primero)).thenReturn(Mono.error(new RuntimeException("Timeout")));
+        when(eventoOutboxRepository.reprogramar(eq(1L), any(LocalDateTime.class), eq("Timeout"))).thenReturn(Mono.just(1));
+        when(eventoOutboxRepository.liberar(aryEq(new Long[]{2L}), any(LocalDateTime.class))).thenReturn(Mono.just(1));
+
+        StepVerifier.create(outboxRelay.drenar())
+                .expectNext(2L)
+                .verifyComplete();
+
+        verify(handler, never()).publicar(segundo);
+        verify(eventoOutboxRepository, never()).marcarPublicado(anyLong());
+    }
+
+    @Test
+    void testDrenar_WhenRejected_ShouldMarkFailedAndDiscard() {
+        EventoOutbox rechazado = evento(1L, 1);
+        BadRequestException error = new BadRequestException("Stock insuficiente");
+
+        when(eventoOutboxRepository.reclamarLote(any(), any(), eq(10))).thenReturn(Flux.just(rechazado));
+        when(handler.publicar(rechazado)).thenReturn(Mono.error(error));
+        when(eventoOutboxRepository.marcarFallido(1L, "Stock insuficiente")).thenReturn(Mono.just(1));
+        when(handler.descartar(rechazado, error)).thenReturn(Mono.empty());
+
+        StepVerifier.create(outboxRelay.drenar())
+                .expectNext(1L)
+                .verifyComplete();
+
+        verify(handler).descartar(rechazado, error);
+        verify(eventoOutboxRepository, never()).marcarPublicado(anyLong());
+    }
+
+    @Test
+    void testDrenar_WhenTransientFailure_ShouldRescheduleWithBackoff() {
+        EventoOutbox fallido = evento(1L, 2);
+        LocalDateTime antes = LocalDateTime.now();
+
+        when(eventoOutboxRepository.reclamarLote(any(), any(), eq(10))).thenReturn(Flux.just(fallido));
+        when(handler.publicar(fallido)).thenReturn(Mono.error(new RuntimeException("Timeout")));
+        when(eventoOutboxRepository.reprogramar(eq(1L), any(LocalDateTime.class), eq("Timeout"))).thenReturn(Mono.just(1));
+
+        StepVerifier.create(outboxRelay.drenar())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // Segundo intento: espera de 2 s
+        verify(eventoOutboxRepository).reprogramar(eq(1L),
+                argThat(disponible -> !disponible.isBefore(antes.plusSeconds(2))), eq("Timeout"));
+        verify(handler, never()).descartar(any(), any());
+    }
+}
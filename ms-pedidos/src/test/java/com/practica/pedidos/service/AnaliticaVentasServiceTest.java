@@ -0,0 +1,142 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.exception.AnaliticaNoDisponibleException;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Readable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AnaliticaVentasServiceTest {
+
+    private static final LocalDateTime DIA_1 = LocalDateTime.of(2025, 3, 1, 10, 0);
+    private static final LocalDateTime DIA_2 = LocalDateTime.of(2025, 3, 2, 18, 0);
+
+    @Mock
+    private PedidoRepository pedidoRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private AnaliticaVentasService analiticaVentasService;
+
+    @BeforeEach
+    void setUp() {
+        analiticaVentasService = new AnaliticaVentasService(pedidoRepository, transactionalOperator, new SimpleMeterRegistry());
+    }
+
+    // Fila del JOIN pedidos ⋈ detalle_pedidos respaldada por un mapa
+    private static Readable fila(Long id, String estado, LocalDateTime fecha, Long productoId, Integer cantidad, String precio) {
+        Map<String, Object> columnas = new HashMap<>();
+        columnas.put("id", id);
+        columnas.put("estado", estado);
+        columnas.put("fecha", fecha);
+        columnas.put("producto_id", productoId);
+        columnas.put("cantidad", cantidad);
+        columnas.put("precio_unitario", precio == null ? null : new BigDecimal(precio));
+        return new Readable() {
+            @Override
+            public <T> T get(int index, Class<T> type) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T> T get(String name, Class<T> type) {
+                return type.cast(columnas.get(name));
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prepararCarga(Flux<Readable> filas) {
+        when(transactionalOperator.transactional(any(Flux.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.recorrerConDetalles(isNull(), isNull(), any()))
+                .thenAnswer(invocation -> filas.map(invocation.<Function<Readable, Object>>getArgument(2)));
+    }
+
+    private static PedidoDTO pedido(Long id, LocalDateTime fecha, DetallePedidoDTO... detalles) {
+        return new PedidoDTO(id, "cliente-123", fecha, null, "PENDIENTE", List.of(detalles));
+    }
+
+    @Test
+    void testConsultas_ShouldAggregateLoadedAndRegisteredOrders() {
+        prepararCarga(Flux.just(
+                fila(1L, "PROCESADO", DIA_1, 1L, 2, "10.50"),
+                fila(1L, "PROCESADO", DIA_1, 2L, 1, "5.00"),
+                fila(2L, "CANCELADO", DIA_1, 1L, 9, "10.50"),
+                fila(3L, "PENDIENTE", DIA_1, null, null, null),
+                fila(4L, "PENDIENTE", DIA_2, 2L, 4, "5.00")));
+
+        StepVerifier.create(analiticaVentasService.recargar()).verifyComplete();
+        analiticaVentasService.registrar(pedido(5L, DIA_2, new DetallePedidoDTO(null, 3L, 1, 100.0)));
+
+        StepVerifier.create(analiticaVentasService.ventasPorDia(LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 4)))
+                .expectNextMatches(dias -> dias.size() == 3
+                        && dias.get(0).getImporte() == 26.0 && dias.get(0).getUnidades() == 3 && dias.get(0).getPedidos() == 1
+                        && dias.get(1).getImporte() == 120.0 && dias.get(1).getUnidades() == 5 && dias.get(1).getPedidos() == 2
+                        && dias.get(2).getImporte() == 0.0 && dias.get(2).getPedidos() == 0)
+                .verifyComplete();
+
+        StepVerifier.create(analiticaVentasService.topProductos(null, null, 2, "unidades"))
+                .expectNextMatches(top -> top.size() == 2
+                        && top.get(0).getProductoId().equals(2L) && top.get(0).getUnidades() == 5
+                        && top.get(1).getProductoId().equals(1L) && top.get(1).getImporte() == 21.0)
+                .verifyComplete();
+
+        StepVerifier.create(analiticaVentasService.ticketPromedio(LocalDate.of(2025, 3, 2), null))
+                .expectNextMatches(ticket -> ticket.getPedidos() == 2
+                        && ticket.getImportePromedio() == 60.0
+                        && ticket.getLineasPromedio() == 1.0)
+                .verifyComplete();
+    }
+
+    @Test
+    void testRecargar_ShouldNotDuplicateOrdersRegisteredWhileLoading() {
+        Sinks.Many<Readable> filas = Sinks.many().unicast().onBackpressureBuffer();
+        prepararCarga(filas.asFlux());
+
+        StepVerifier.create(analiticaVentasService.recargar())
+                .then(() -> {
+                    // El pedido 1 lo ve la carga y también se registra; el 2 se confirmó después del snapshot
+                    analiticaVentasService.registrar(pedido(1L, DIA_1, new DetallePedidoDTO(null, 1L, 1, 10.0)));
+                    analiticaVentasService.registrar(pedido(2L, DIA_1, new DetallePedidoDTO(null, 1L, 1, 10.0)));
+                    filas.tryEmitNext(fila(1L, "PENDIENTE", DIA_1, 1L, 1, "10.00"));
+                    filas.tryEmitComplete();
+                })
+                .verifyComplete();
+
+        StepVerifier.create(analiticaVentasService.ticketPromedio(null, null))
+                .expectNextMatches(ticket -> ticket.getPedidos() == 2 && ticket.getImportePromedio() == 10.0)
+                .verifyComplete();
+    }
+
+    @Test
+    void testConsultas_BeforeFirstLoad_ShouldReturnServiceUnavailable() {
+        StepVerifier.create(analiticaVentasService.topProductos(null, null, 10, "importe"))
+                .expectError(AnaliticaNoDisponibleException.class)
+                .verify();
+    }
+}
@@ -0,0 +1,76 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.SketchVentanaDTO;
+import com.practica.pedidos.exception.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+class EstadisticasEnVivoServiceTest {
+
+    private final AtomicLong reloj = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private EstadisticasEnVivoService estadisticasEnVivoService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // Ventana de 3 intervalos de 1 minuto
+        estadisticasEnVivoService = new EstadisticasEnVivoService(Duration.ofMinutes(1), 3, 2, meterRegistry, reloj::get);
+    }
+
+    private static PedidoDTO pedido(String cliente, Long productoId, int cantidad) {
+        return new PedidoDTO(1L, cliente, null, null, "PENDIENTE", List.of(new DetallePedidoDTO(null, productoId, cantidad, 10.0)));
+    }
+
+    @Test
+    void testResumen_ShouldForgetIntervalsOutsideTheWindow() {
+        estadisticasEnVivoService.registrar(pedido("ana", 1L, 50));
+        reloj.set(Duration.ofMinutes(1).toMillis());
+        estadisticasEnVivoService.registrar(pedido("beto", 2L, 5));
+        estadisticasEnVivoService.registrar(pedido("beto", 3L, 7));
+
+        StepVerifier.create(estadisticasEnVivoService.resumen())
+                .expectNextMatches(resumen -> resumen.getClientesDistintos() == 2
+                        && resumen.getProductosTop().size() == 2
+                        && resumen.getProductosTop().get(0).getProductoId().equals(1L))
+                .verifyComplete();
+
+        // El minuto 0 sale de la ventana [1, 3]
+        reloj.set(Duration.ofMinutes(3).toMillis());
+        StepVerifier.create(estadisticasEnVivoService.resumen())
+                .expectNextMatches(resumen -> resumen.getClientesDistintos() == 1
+                        && resumen.getProductosTop().get(0).getProductoId().equals(3L)
+                        && resumen.getProductosTop().get(0).getUnidadesEstimadas() == 7)
+                .verifyComplete();
+        assert meterRegistry.get("pedidos.estadisticas.clientes_distintos").gauge().value() == 1.0;
+        assert meterRegistry.get("pedidos.estadisticas.productos_top").tag("producto", "3").gauge().value() == 7.0;
+    }
+
+    @Test
+    void testCombinar_ShouldMergeSketchesFromSeveralReplicas() {
+        EstadisticasEnVivoService otraReplica =
+                new EstadisticasEnVivoService(Duration.ofMinutes(1), 3, 2, new SimpleMeterRegistry(), reloj::get);
+        estadisticasEnVivoService.registrar(pedido("ana", 1L, 4));
+        otraReplica.registrar(pedido("ana", 1L, 3));
+        otraReplica.registrar(pedido("beto", 2L, 1));
+
+        SketchVentanaDTO local = estadisticasEnVivoService.sketch().block();
+        SketchVentanaDTO remoto = otraReplica.sketch().block();
+
+        StepVerifier.create(estadisticasEnVivoService.combinar(List.of(local, remoto)))
+                .expectNextMatches(resumen -> resumen.getClientesDistintos() == 2
+                        && resumen.getProductosTop().get(0).getUnidadesEstimadas() == 7)
+                .verifyComplete();
+        StepVerifier.create(estadisticasEnVivoService.combinar(List.of(new SketchVentanaDTO(null, new byte[]{12}, new byte[0]))))
+                .expectError(BadRequestException.class)
+                .verify();
+    }
+}
@@ -0,0 +1,76 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.EventoPedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventosPedidoServiceTest {
+
+    @Mock
+    private PedidoRepository pedidoRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CachePedidosService cachePedidosService;
+
+    private EventosPedidoService eventosPedidoService;
+
+    @BeforeEach
+    void setUp() {
+        cachePedidosService = new CachePedidosService(100, Duration.ofMinutes(1), meterRegistry);
+        eventosPedidoService = new EventosPedidoService(pedidoRepository, cachePedidosService,
+                new ObjectMapper().findAndRegisterModules(), false, meterRegistry);
+    }
+
+    @Test
+    void testPublicar_WithoutNotify_ShouldDeliverOnlyMatchingEventsToSubscribers() {
+        StepVerifier.create(eventosPedidoService.suscribir("cliente-123", null).take(2))
+                .then(() -> {
+                    eventosPedidoService.publicar("CREADO", 1L, "cliente-123", "PENDIENTE", 0L);
+                    eventosPedidoService.publicar("CREADO", 2L, "cliente-456", "PENDIENTE", 0L);
+                    eventosPedidoService.publicar("ESTADO_ACTUALIZADO", 1L, "cliente-123", "PROCESADO", 1L);
+                })
+                .expectNextMatches(evento -> evento.getPedidoId().equals(1L) && evento.getEstado().equals("PENDIENTE"))
+                .expectNextMatches(evento -> evento.getEstado().equals("PROCESADO") && evento.getVersion() == 1L)
+                .verifyComplete();
+
+        assert meterRegistry.get("pedidos.eventos.suscriptores").gauge().value() == 0.0;
+        verifyNoInteractions(pedidoRepository);
+    }
+
+    @Test
+    void testEmitir_FromAnotherReplica_ShouldDiscardOlderCachedVersion() {
+        PedidoDTO pedido = new PedidoDTO(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", null);
+        cachePedidosService.guardar(pedido, 0L);
+
+        eventosPedidoService.emitir(new EventoPedidoDTO("ESTADO_ACTUALIZADO", 1L, "cliente-123", "CANCELADO", 0L, LocalDateTime.now()));
+        assert cachePedidosService.obtener(1L) != null;
+
+        eventosPedidoService.emitir(new EventoPedidoDTO("ESTADO_ACTUALIZADO", 1L, "cliente-123", "CANCELADO", 1L, LocalDateTime.now()));
+        assert cachePedidosService.obtener(1L) == null;
+    }
+
+    @Test
+    void testEmitir_DeletedOnAnotherReplica_ShouldEvictCachedPedido() {
+        PedidoDTO pedido = new PedidoDTO(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", null);
+        cachePedidosService.guardar(pedido, 3L);
+
+        eventosPedidoService.emitir(new EventoPedidoDTO(EventosPedidoService.ELIMINADO, 1L, null, null, null, LocalDateTime.now()));
+
+        assert cachePedidosService.obtener(1L) == null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.r2dbc.spi.Readable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExportacionPedidosServiceTest {
+
+    @Mock
+    private PedidoRepository pedidoRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @InjectMocks
+    private ExportacionPedidosService exportacionPedidosService;
+
+    // Fila del JOIN respaldada por un mapa, con los mismos nombres de columna que la consulta
+    private static Readable fila(Long id, String cliente, Long detalleId, Long productoId, Integer cantidad, String precio) {
+        Map<String, Object> columnas = new HashMap<>();
+        columnas.put("id", id);
+        columnas.put("cliente", cliente);
+        columnas.put("fecha", LocalDateTime.of(2025, 3, 1, 12, 30));
+        columnas.put("total", new BigDecimal("199.98"));
+        columnas.put("estado", "PROCESADO");
+        columnas.put("detalle_id", detalleId);
+        columnas.put("producto_id", productoId);
+        columnas.put("cantidad", cantidad);
+        columnas.put("precio_unitario", precio == null ? null : new BigDecimal(precio));
+        return new Readable() {
+            @Override
+            public <T> T get(int index, Class<T> type) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <T> T get(String name, Class<T> type) {
+                return type.cast(columnas.get(name));
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prepararFilas(Readable... filas) {
+        when(transactionalOperator.transactional(any(Flux.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.recorrerConDetalles(isNull(), isNull(), any()))
+                .thenAnswer(invocation -> Flux.just(filas).map(invocation.<Function<Readable, Object>>getArgument(2)));
+    }
+
+    private static String leer(Flux<DataBuffer> buffers) {
+        return buffers
+                .map(buffer -> {
+                    String texto = buffer.toString(StandardCharsets.UTF_8);
+                    DataBufferUtils.release(buffer);
+                    return texto;
+                })
+                .reduce("", String::concat)
+                .block();
+    }
+
+    @Test
+    void testExportarCsv_ShouldWriteOneRowPerDetailWithEscaping() {
+        prepararFilas(
+                fila(1L, "Perez, Juan", 10L, 1L, 2, "99.99"),
+                fila(2L, "Maria \"La\" Lopez", null, null, null, null));
+
+        String csv = leer(exportacionPedidosService.exportar("csv", null, null, DefaultDataBufferFactory.sharedInstance));
+
+        assert csv.equals("""
+                pedido_id,cliente,fecha,total,estado,detalle_id,producto_id,cantidad,precio_unitario
+                1,"Perez, Juan",2025-03-01T12:30,199.98,PROCESADO,10,1,2,99.99
+                2,"Maria ""La"" Lopez",2025-03-01T12:30,199.98,PROCESADO,,,,
+                """) : csv;
+    }
+
+    @Test
+    void testExportarNdjson_ShouldWriteOneJsonObjectPerRow() {
+        prepararFilas(fila(1L, "Juan \"JP\"", 10L, 1L, 2, "99.99"));
+
+        String ndjson = leer(exportacionPedidosService.exportar("ndjson", null, null, DefaultDataBufferFactory.sharedInstance));
+
+        assert ndjson.equals("{\"pedidoId\":1,\"cliente\":\"Juan \\\"JP\\\"\",\"fecha\":\"2025-03-01T12:30\",\"total\":199.98,"
+                + "\"estado\":\"PROCESADO\",\"detalleId\":10,\"productoId\":1,\"cantidad\":2,\"precioUnitario\":99.99}\n") : ndjson;
+    }
+
+    @Test
+    void testExportar_WithUnknownFormat_ShouldThrowException() {
+        StepVerifier.create(exportacionPedidosService.exportar("xlsx", null, null, DefaultDataBufferFactory.sharedInstance))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).recorrerConDetalles(any(), any(), any());
+    }
+}
@@ -0,0 +1,111 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.entity.ClaveIdempotencia;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.repository.ClaveIdempotenciaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotenciaServiceTest {
+
+    @Mock
+    private ClaveIdempotenciaRepository claveIdempotenciaRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private IdempotenciaService idempotenciaService;
+    private PedidoDTO pedidoDTO;
+
+    @BeforeEach
+    void setUp() {
+        idempotenciaService = new IdempotenciaService(claveIdempotenciaRepository, objectMapper,
+                100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        pedidoDTO = new PedidoDTO();
+        pedidoDTO.setId(10L);
+        pedidoDTO.setCliente("cliente-123");
+        pedidoDTO.setEstado("PENDIENTE");
+        pedidoDTO.setTotal(100.0);
+        pedidoDTO.setFecha(LocalDateTime.now());
+        pedidoDTO.setDetalles(new ArrayList<>());
+    }
+
+    @Test
+    void testEjecutar_ConcurrentDuplicatesShouldShareOneExecution() {
+        Sinks.One<PedidoDTO> resultado = Sinks.one();
+        AtomicInteger ejecuciones = new AtomicInteger();
+
+        Mono<PedidoDTO> primero = idempotenciaService.ejecutar("clave-1", () -> {
+            ejecuciones.incrementAndGet();
+            return resultado.asMono();
+        });
+        Mono<PedidoDTO> duplicado = idempotenciaService.ejecutar("clave-1", () -> {
+            ejecuciones.incrementAndGet();
+            return Mono.just(new PedidoDTO());
+        });
+
+        StepVerifier.create(Mono.zip(primero, duplicado))
+                .then(() -> resultado.tryEmitValue(pedidoDTO))
+                .expectNextMatches(par -> par.getT1().getId().equals(10L) && par.getT2().getId().equals(10L))
+                .verifyComplete();
+
+        // Un duplicado posterior se sirve desde la caché de respuestas
+        StepVerifier.create(idempotenciaService.ejecutar("clave-1", () -> Mono.error(new IllegalStateException())))
+                .expectNextMatches(pedido -> pedido.getId().equals(10L))
+                .verifyComplete();
+
+        assertEquals(1, ejecuciones.get());
+    }
+
+    @Test
+    void testCompletarYRespuestaGuardada_ShouldRoundTripPedido() {
+        when(claveIdempotenciaRepository.completar(eq("clave-2"), eq(10L), anyString())).thenReturn(Mono.just(1));
+
+        StepVerifier.create(idempotenciaService.completar("clave-2", pedidoDTO))
+                .verifyComplete();
+
+        ArgumentCaptor<String> respuesta = ArgumentCaptor.forClass(String.class);
+        verify(claveIdempotenciaRepository).completar(eq("clave-2"), eq(10L), respuesta.capture());
+        when(claveIdempotenciaRepository.findById("clave-2"))
+                .thenReturn(Mono.just(new ClaveIdempotencia("clave-2", 10L, respuesta.getValue(), LocalDateTime.now())));
+
+        StepVerifier.create(idempotenciaService.respuestaGuardada("clave-2"))
+                .expectNextMatches(pedido -> pedido.getId().equals(10L) && pedido.getCliente().equals("cliente-123"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testBuscarRespuesta_WhenKeyNotYetCompleted_ShouldBeEmpty() {
+        when(claveIdempotenciaRepository.findById("clave-3"))
+                .thenReturn(Mono.just(new ClaveIdempotencia("clave-3", null, null, LocalDateTime.now())));
+
+        StepVerifier.create(idempotenciaService.buscarRespuesta("clave-3"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testEjecutar_WithBlankKey_ShouldThrowException() {
+        StepVerifier.create(idempotenciaService.ejecutar(" ", () -> Mono.just(pedidoDTO)))
+                .expectError(BadRequestException.class)
+                .verify();
+    }
+}
@@ -0,0 +1,174 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.entity.DetallePedido;
+import com.practica.pedidos.entity.Pedido;
+import com.practica.pedidos.repository.DetallePedidoRepository;
+import com.practica.pedidos.repository.PedidoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImportacionPedidosServiceTest {
+
+    @Mock
+    private PedidoService pedidoService;
+
+    @Mock
+    private PedidoRepository pedidoRepository;
+
+    @Mock
+    private DetallePedidoRepository detallePedidoRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private ImportacionPedidosService importacionPedidosService;
+
+    @BeforeEach
+    void setUp() {
+        importacionPedidosService = new ImportacionPedidosService(pedidoService, pedidoRepository,
+                detallePedidoRepository, transactionalOperator, new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    private void prepararGuardado() {
+        AtomicLong secuencia = new AtomicLong(100);
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.insertarLote(anyList())).thenAnswer(invocation -> Flux.fromIterable(
+                invocation.<List<Pedido>>getArgument(0)).doOnNext(pedido -> pedido.setId(secuencia.incrementAndGet())));
+        when(detallePedidoRepository.insertarLote(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<DetallePedido>>getArgument(0)));
+    }
+
+    // Divide el texto en varios DataBuffer para que las líneas crucen los límites entre buffers
+    private Flux<DataBuffer> cuerpo(String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        return Flux.range(0, (bytes.length + 6) / 7)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(bytes, i * 7, Math.min(bytes.length, i * 7 + 7))));
+    }
+
+    @Test
+    void testImportarNdjson_ShouldReportEachLineAndSaveValidOrdersInOneBatch() {
+        String ndjson = """
+                {"cliente":"cliente-1","detalles":[{"productoId":1,"cantidad":2}]}
+                {"cliente":"cliente-2","detalles":[{"productoId":9,"cantidad":1}]}
+                no es json
+                {"cliente":"cliente-3","estado":"CANCELADO","detalles":[{"productoId":1,"cantidad":1,"precioUnitario":5.0}]}
+                """;
+        when(pedidoService.buscarProductos(anyList()))
+                .thenReturn(Mono.just(Map.of(1L, new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 10, true))));
+        prepararGuardado();
+
+        StepVerifier.create(importacionPedidosService.importar(cuerpo(ndjson), false))
+                .expectNextMatches(resultado -> resultado.getLinea() == 1 && resultado.getPedidoId() == 101L)
+                .expectNextMatches(resultado -> resultado.getLinea() == 2 && resultado.getPedidoId() == null
+                        && resultado.getError().equals("Producto no encontrado: 9"))
+                .expectNextMatches(resultado -> resultado.getLinea() == 3 && resultado.getError().startsWith("JSON inválido"))
+                .expectNextMatches(resultado -> resultado.getLinea() == 4 && resultado.getPedidoId() == 102L)
+                .verifyComplete();
+
+        verify(pedidoService, times(1)).buscarProductos(anyList());
+        verify(pedidoRepository, times(1)).insertarLote(argThat(pedidos -> pedidos.size() == 2
+                && pedidos.get(0).getTotal() == 2000.0
+                && pedidos.get(0).getEstado().equals("PROCESADO")
+                && pedidos.get(1).getTotal() == 5.0
+                && pedidos.get(1).getEstado().equals("CANCELADO")));
+        verify(detallePedidoRepository, times(1)).insertarLote(argThat(detalles -> detalles.size() == 2
+                && detalles.get(0).getPedidoId() == 101L));
+        verify(pedidoService, never()).create(any());
+    }
+
+    @Test
+    void testImportarCsv_ShouldGroupConsecutiveRowsByReferencia() {
+        String csv = """
+                referencia,cliente,fecha,estado,producto_id,cantidad,precio_unitario
+                ERP-1,cliente-1,2024-05-01T10:00:00,,1,2,
+                ERP-1,cliente-1,2024-05-01T10:00:00,,2,1,19.5
+                ERP-2,cliente-2,,,1,x,
+                ERP-3,cliente-3,,PROCESADO,2,4,
+                """;
+        when(pedidoService.buscarProductos(anyList())).thenReturn(Mono.just(Map.of(
+                1L, new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 10, true),
+                2L, new ProductoDTO(2L, "Mouse", "Mouse Logitech", 20.0, 50, true))));
+        prepararGuardado();
+
+        StepVerifier.create(importacionPedidosService.importar(cuerpo(csv), true))
+                .expectNextMatches(resultado -> resultado.getLinea() == 2 && resultado.getReferencia().equals("ERP-1")
+                        && resultado.getPedidoId() == 101L)
+                .expectNextMatches(resultado -> resultado.getLinea() == 4 && resultado.getError().startsWith("Fila inválida"))
+                .expectNextMatches(resultado -> resultado.getLinea() == 5 && resultado.getPedidoId() == 102L)
+                .verifyComplete();
+
+        verify(pedidoRepository, times(1)).insertarLote(argThat(pedidos -> pedidos.size() == 2
+                && pedidos.get(0).getTotal() == 2019.5
+                && pedidos.get(0).getDetalles().size() == 2));
+    }
+
+    @Test
+    void testImportarCsv_WithQuotedFields_ShouldKeepCommasQuotesAndLineBreaks() {
+        String csv = """
+                referencia,cliente,fecha,estado,producto_id,cantidad,precio_unitario
+                ERP-1,"Pérez, Juan",,,1,2,
+                ERP-2,"Tienda ""El Sol""
+                sucursal 2",,,1,1,
+                ERP-3,"sin cerrar,,,1,1,
+                """;
+        when(pedidoService.buscarProductos(anyList()))
+                .thenReturn(Mono.just(Map.of(1L, new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 10, true))));
+        prepararGuardado();
+
+        StepVerifier.create(importacionPedidosService.importar(cuerpo(csv), true))
+                .expectNextMatches(resultado -> resultado.getLinea() == 2 && resultado.getPedidoId() == 101L)
+                .expectNextMatches(resultado -> resultado.getLinea() == 3 && resultado.getPedidoId() == 102L)
+                .expectNextMatches(resultado -> resultado.getLinea() == 5
+                        && resultado.getError().equals("Fila inválida: comillas sin cerrar"))
+                .verifyComplete();
+
+        verify(pedidoRepository, times(1)).insertarLote(argThat(pedidos -> pedidos.size() == 2
+                && pedidos.get(0).getCliente().equals("Pérez, Juan")
+                && pedidos.get(1).getCliente().equals("Tienda \"El Sol\"\nsucursal 2")));
+    }
+
+    @Test
+    void testImportar_WhenProductLookupFails_ShouldReportErrorOnEachLineOfBatch() {
+        String ndjson = """
+                {"cliente":"cliente-1","detalles":[{"productoId":1,"cantidad":2}]}
+                no es json
+                {"cliente":"cliente-2","detalles":[{"productoId":1,"cantidad":1}]}
+                """;
+        when(pedidoService.buscarProductos(anyList()))
+                .thenReturn(Mono.error(new RuntimeException("Circuito abierto")));
+
+        StepVerifier.create(importacionPedidosService.importar(cuerpo(ndjson), false))
+                .expectNextMatches(resultado -> resultado.getLinea() == 1
+                        && resultado.getError().equals("Error al consultar productos: Circuito abierto"))
+                .expectNextMatches(resultado -> resultado.getLinea() == 2 && resultado.getError().startsWith("JSON inválido"))
+                .expectNextMatches(resultado -> resultado.getLinea() == 3
+                        && resultado.getError().equals("Error al consultar productos: Circuito abierto"))
+                .verifyComplete();
+
+        verify(pedidoRepository, never()).insertarLote(anyList());
+    }
+}
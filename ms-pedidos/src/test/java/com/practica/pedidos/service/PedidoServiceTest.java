@@ -0,0 +1,673 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.DetallePedidoDTO;
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.entity.DetallePedido;
+import com.practica.pedidos.entity.Pedido;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.exception.PlazoAgotadoException;
+import com.practica.pedidos.exception.ResourceNotFoundException;
+import com.practica.pedidos.plazo.Plazo;
+import com.practica.pedidos.repository.DetallePedidoRepository;
+import com.practica.pedidos.repository.PedidoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PedidoServiceTest {
+
+    @Mock
+    private PedidoRepository pedidoRepository;
+
+    @Mock
+    private DetallePedidoRepository detallePedidoRepository;
+
+    @Mock
+    private ProductoClient productoClient;
+
+    @Mock
+    private ProductoReplicaService productoReplicaService;
+
+    @Mock
+    private SagaPedidoService sagaPedidoService;
+
+    @Mock
+    private IdempotenciaService idempotenciaService;
+
+    @Mock
+    private AnaliticaVentasService analiticaVentasService;
+
+    @Mock
+    private EstadisticasEnVivoService estadisticasEnVivoService;
+
+    @Mock
+    private EventosPedidoService eventosPedidoService;
+
+    @Mock
+    private EventosDominioPedidoService eventosDominioPedidoService;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private MedicionEtapas medicionEtapas = new MedicionEtapas(meterRegistry);
+
+    @Spy
+    private CachePedidosService cachePedidosService = new CachePedidosService(100, Duration.ofMinutes(1), meterRegistry);
+
+    @InjectMocks
+    private PedidoService pedidoService;
+
+    private ProductoDTO producto1;
+    private ProductoDTO producto2;
+
+    @BeforeEach
+    void setUp() {
+        producto1 = new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 10, true);
+        producto2 = new ProductoDTO(2L, "Mouse", "Mouse Logitech", 20.0, 50, true);
+    }
+
+    private PedidoDTO nuevoPedido(DetallePedidoDTO... detalles) {
+        PedidoDTO pedidoDTO = new PedidoDTO();
+        pedidoDTO.setCliente("cliente-123");
+        pedidoDTO.setDetalles(new ArrayList<>(List.of(detalles)));
+        return pedidoDTO;
+    }
+
+    private void prepararPersistencia(Pedido savedPedido) {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.save(any(Pedido.class))).thenReturn(Mono.just(savedPedido));
+        when(detallePedidoRepository.insertarLote(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<DetallePedido>>getArgument(0)));
+        when(sagaPedidoService.iniciar(anyLong(), any(ReservaStockDTO.class))).thenReturn(Mono.empty());
+        when(eventosDominioPedidoService.registrarCreado(any(PedidoDTO.class))).thenReturn(Mono.empty());
+    }
+
+    @Test
+    void testGetAll_ShouldFetchDetallesWithOneQueryPerChunk() {
+        Pedido pedido1 = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", 0L, new ArrayList<>());
+        Pedido pedido2 = new Pedido(2L, "cliente-456", LocalDateTime.now(), 40.0, "PROCESADO", 0L, new ArrayList<>());
+
+        when(pedidoRepository.findAll()).thenReturn(Flux.just(pedido1, pedido2));
+        when(detallePedidoRepository.buscarPorPedidoIds(any(Long[].class))).thenReturn(Flux.just(
+                new DetallePedido(1L, 1L, 1L, 1, 100.0),
+                new DetallePedido(2L, 2L, 2L, 2, 20.0)));
+
+        StepVerifier.create(pedidoService.getAll())
+                .expectNextMatches(dto -> dto.getId().equals(1L) && dto.getDetalles().size() == 1)
+                .expectNextMatches(dto -> dto.getId().equals(2L) && dto.getDetalles().get(0).getCantidad() == 2)
+                .verifyComplete();
+
+        verify(detallePedidoRepository, times(1)).buscarPorPedidoIds(any(Long[].class));
+        verify(detallePedidoRepository, never()).findByPedidoId(anyLong());
+    }
+
+    @Test
+    void testGetPagina_WhenMoreRowsExist_ShouldReturnNextCursor() {
+        Pedido pedido1 = new Pedido(5L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", 0L, new ArrayList<>());
+        Pedido pedido2 = new Pedido(7L, "cliente-456", LocalDateTime.now(), 40.0, "PENDIENTE", 0L, new ArrayList<>());
+        Pedido pedido3 = new Pedido(9L, "cliente-789", LocalDateTime.now(), 60.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(pedidoRepository.buscarPagina(4L, 3)).thenReturn(Flux.just(pedido1, pedido2, pedido3));
+        when(detallePedidoRepository.buscarPorPedidoIds(any(Long[].class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(pedidoService.getPagina(4L, 2))
+                .expectNextMatches(pagina -> pagina.getPedidos().size() == 2
+                        && pagina.getSiguienteCursor().equals(7L))
+                .verifyComplete();
+    }
+
+    @Test
+    void testGetPagina_WithInvalidLimit_ShouldThrowException() {
+        StepVerifier.create(pedidoService.getPagina(null, 0))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).buscarPagina(anyLong(), anyInt());
+    }
+
+    @Test
+    void testBuscar_ShouldPushFiltersToQueryAndReturnNextCursor() {
+        LocalDateTime desde = LocalDateTime.of(2025, 1, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 2, 1, 0, 0);
+        Pedido pedido1 = new Pedido(5L, "cliente-123", desde.plusDays(1), 100.0, "PENDIENTE", 0L, new ArrayList<>());
+        Pedido pedido2 = new Pedido(8L, "cliente-123", desde.plusDays(2), 40.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(pedidoRepository.buscarFiltrados("cliente-123", "PENDIENTE", desde, hasta, 0L, 2))
+                .thenReturn(Flux.just(pedido1, pedido2));
+        when(detallePedidoRepository.buscarPorPedidoIds(any(Long[].class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(pedidoService.buscar("cliente-123", "PENDIENTE", desde, hasta, null, 1))
+                .expectNextMatches(pagina -> pagina.getPedidos().size() == 1
+                        && pagina.getSiguienteCursor().equals(5L))
+                .verifyComplete();
+
+        verify(pedidoRepository, never()).findAll();
+    }
+
+    @Test
+    void testBuscar_WithUnknownEstado_ShouldThrowException() {
+        StepVerifier.create(pedidoService.buscar(null, "ENVIADO", null, null, null, 50))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).buscarFiltrados(any(), any(), any(), any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void testCreate_ShouldValidateAllProductsWithSingleBatchLookup() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 2L, 3, null));
+
+        Pedido savedPedido = new Pedido(10L, "cliente-123", LocalDateTime.now(), 2060.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1, producto2));
+        prepararPersistencia(savedPedido);
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectNextMatches(dto -> dto.getId().equals(10L) && dto.getDetalles().size() == 2)
+                .verifyComplete();
+
+        verify(productoClient, times(1)).obtenerProductos(List.of(1L, 2L));
+        verify(productoClient, never()).obtenerProducto(anyLong());
+        verify(detallePedidoRepository, times(1)).insertarLote(argThat(detalles -> detalles.size() == 2));
+        verify(detallePedidoRepository, never()).save(any(DetallePedido.class));
+    }
+
+    @Test
+    void testCreate_WhenReplicaHasAllProducts_ShouldNotCallProductos() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 2L, 3, null));
+
+        Pedido savedPedido = new Pedido(10L, "cliente-123", LocalDateTime.now(), 2060.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(productoReplicaService.buscar(List.of(1L, 2L))).thenReturn(Map.of(1L, producto1, 2L, producto2));
+        prepararPersistencia(savedPedido);
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectNextMatches(dto -> dto.getTotal() == 2060.0)
+                .verifyComplete();
+
+        verify(productoClient, never()).obtenerProductos(anyCollection());
+    }
+
+    @Test
+    void testCreate_WithReplicaMiss_ShouldFetchOnlyMissingProducts() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 2L, 3, null));
+
+        Pedido savedPedido = new Pedido(10L, "cliente-123", LocalDateTime.now(), 2060.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(productoReplicaService.buscar(List.of(1L, 2L))).thenReturn(Map.of(1L, producto1));
+        when(productoClient.obtenerProductos(List.of(2L))).thenReturn(Flux.just(producto2));
+        prepararPersistencia(savedPedido);
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectNextMatches(dto -> dto.getId().equals(10L))
+                .verifyComplete();
+
+        verify(productoClient, times(1)).obtenerProductos(List.of(2L));
+    }
+
+    @Test
+    void testCreate_WhenReplicaStockLooksInsufficient_ShouldRecheckInProductos() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 2L, 3, null));
+        ProductoDTO agotadoEnReplica = new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 1, true);
+
+        Pedido savedPedido = new Pedido(10L, "cliente-123", LocalDateTime.now(), 2060.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(productoReplicaService.buscar(List.of(1L, 2L))).thenReturn(Map.of(1L, agotadoEnReplica, 2L, producto2));
+        // La reposición no llegó a la réplica: ms-productos tiene el stock vigente
+        when(productoClient.obtenerProductos(List.of(1L))).thenReturn(Flux.just(producto1));
+        prepararPersistencia(savedPedido);
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectNextMatches(dto -> dto.getId().equals(10L))
+                .verifyComplete();
+
+        verify(productoClient, times(1)).obtenerProductos(List.of(1L));
+    }
+
+    @Test
+    void testCreate_ShouldRegisterStockReservationInOutboxInsteadOfCallingProductos() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 2L, 3, null));
+
+        Pedido savedPedido = new Pedido(10L, "cliente-123", LocalDateTime.now(), 2060.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1, producto2));
+        prepararPersistencia(savedPedido);
+
+        TiemposSolicitud tiempos = new TiemposSolicitud();
+        StepVerifier.create(pedidoService.create(pedidoDTO).contextWrite(tiempos::escribir))
+                .expectNextMatches(dto -> dto.getEstado().equals("PENDIENTE"))
+                .verifyComplete();
+
+        assert tiempos.serverTiming().matches("validacion;dur=[0-9.]+, insertar_pedido;dur=[0-9.]+, guardar_detalles;dur=[0-9.]+, "
+                + "outbox;dur=[0-9.]+, transaccion;dur=[0-9.]+, total;dur=[0-9.]+") : tiempos.serverTiming();
+        assert meterRegistry.get("pedidos.creacion.etapa")
+                .tags("etapa", "insertar_pedido", "resultado", "exito", "lineas", "2-5")
+                .timer().count() == 1;
+        verify(sagaPedidoService, times(1)).iniciar(eq(10L),
+                argThat(reserva -> reserva.getReferencia().equals("pedido-10")
+                        && reserva.getItems().size() == 2));
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+        verify(productoClient, never()).reservarStock(any(ReservaStockDTO.class));
+        verify(productoClient, never()).actualizarStock(anyLong(), anyInt());
+        verify(analiticaVentasService, times(1)).registrar(argThat(dto -> dto.getId().equals(10L)));
+        verify(estadisticasEnVivoService, times(1)).registrar(argThat(dto -> dto.getId().equals(10L)));
+        verify(eventosPedidoService, times(1)).publicar("CREADO", 10L, "cliente-123", "PENDIENTE", 0L);
+        verify(eventosDominioPedidoService, times(1)).registrarCreado(argThat(dto -> dto.getId().equals(10L)
+                && dto.getDetalles().size() == 2));
+    }
+
+    @Test
+    void testCreate_WithExpiredDeadline_ShouldNotOpenTransaction() {
+        PedidoDTO pedidoDTO = nuevoPedido(new DetallePedidoDTO(null, 1L, 2, null));
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO)
+                        .contextWrite(Plazo.en(Duration.ZERO)::escribir))
+                .expectError(PlazoAgotadoException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+        verify(analiticaVentasService, never()).registrar(any());
+    }
+
+    @Test
+    void testCreate_WithRepeatedIdempotencyKey_ShouldReturnStoredResponse() {
+        PedidoDTO pedidoDTO = nuevoPedido(new DetallePedidoDTO(null, 1L, 2, null));
+        PedidoDTO guardado = new PedidoDTO(10L, "cliente-123", LocalDateTime.now(), 2000.0, "PENDIENTE", new ArrayList<>());
+
+        when(idempotenciaService.buscarRespuesta("compra-42")).thenReturn(Mono.empty());
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(idempotenciaService.reclamar("compra-42")).thenReturn(Mono.just(false));
+        when(idempotenciaService.respuestaGuardada("compra-42")).thenReturn(Mono.just(guardado));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO, "compra-42"))
+                .expectNextMatches(dto -> dto.getId().equals(10L))
+                .verifyComplete();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+        verify(sagaPedidoService, never()).iniciar(anyLong(), any(ReservaStockDTO.class));
+        verify(analiticaVentasService, never()).registrar(any());
+        verify(estadisticasEnVivoService, never()).registrar(any());
+    }
+
+    @Test
+    void testCreate_WithConfirmedIdempotencyKey_ShouldReturnStoredResponseWithoutValidating() {
+        PedidoDTO pedidoDTO = nuevoPedido(new DetallePedidoDTO(null, 1L, 2, null));
+        PedidoDTO guardado = new PedidoDTO(10L, "cliente-123", LocalDateTime.now(), 2000.0, "PENDIENTE", new ArrayList<>());
+
+        when(idempotenciaService.buscarRespuesta("compra-42")).thenReturn(Mono.just(guardado));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO, "compra-42"))
+                .expectNextMatches(dto -> dto.getId().equals(10L))
+                .verifyComplete();
+
+        // El primer intento pudo agotar el stock: el reintento no vuelve a consultar productos
+        verifyNoInteractions(productoClient, productoReplicaService, transactionalOperator);
+        verify(idempotenciaService, never()).reclamar(anyString());
+    }
+
+    @Test
+    void testUpdateStatus_ShouldTransitionWithSingleConditionalUpdate() {
+        Pedido procesado = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PROCESADO", 0L, new ArrayList<>());
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstadoConStockReservado(eq(1L), eq("PROCESADO"), aryEq(new String[]{"PENDIENTE"})))
+                .thenReturn(Mono.just(procesado));
+        when(eventosDominioPedidoService.registrarCambioEstado(any(Pedido.class))).thenReturn(Mono.empty());
+        when(detallePedidoRepository.findByPedidoId(1L)).thenReturn(Flux.empty());
+
+        StepVerifier.create(pedidoService.updateStatus(1L, "PROCESADO"))
+                .expectNextMatches(dto -> dto.getEstado().equals("PROCESADO"))
+                .verifyComplete();
+
+        verify(eventosDominioPedidoService, times(1)).registrarCambioEstado(procesado);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+        verify(pedidoRepository, never()).findById(anyLong());
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testGetById_ShouldServeRepeatedReadsFromCache() {
+        Pedido pedido = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", 2L, new ArrayList<>());
+
+        when(pedidoRepository.findById(1L)).thenReturn(Mono.just(pedido));
+        when(detallePedidoRepository.findByPedidoId(1L)).thenReturn(Flux.just(new DetallePedido(1L, 1L, 1L, 1, 100.0)));
+
+        StepVerifier.create(pedidoService.getByIdVersionado(1L))
+                .expectNextMatches(versionado -> versionado.version() == 2L && versionado.pedido().getDetalles().size() == 1)
+                .verifyComplete();
+        StepVerifier.create(pedidoService.getByIdVersionado(1L))
+                .expectNextMatches(versionado -> versionado.version() == 2L)
+                .verifyComplete();
+
+        verify(pedidoRepository, times(1)).findById(1L);
+        verify(detallePedidoRepository, times(1)).findByPedidoId(1L);
+    }
+
+    @Test
+    void testUpdateStatus_ShouldWriteThroughCacheWithNewVersion() {
+        Pedido pendiente = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", 0L, new ArrayList<>());
+        Pedido procesado = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PROCESADO", 1L, new ArrayList<>());
+
+        when(pedidoRepository.findById(1L)).thenReturn(Mono.just(pendiente));
+        when(detallePedidoRepository.findByPedidoId(1L)).thenReturn(Flux.empty());
+        when(pedidoRepository.actualizarEstadoConStockReservado(eq(1L), eq("PROCESADO"), any(String[].class))).thenReturn(Mono.just(procesado));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(eventosDominioPedidoService.registrarCambioEstado(any(Pedido.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.getById(1L)).expectNextCount(1).verifyComplete();
+        StepVerifier.create(pedidoService.updateStatus(1L, "PROCESADO")).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(pedidoService.getByIdVersionado(1L))
+                .expectNextMatches(versionado -> versionado.version() == 1L
+                        && versionado.pedido().getEstado().equals("PROCESADO"))
+                .verifyComplete();
+        verify(pedidoRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void testDelete_ShouldInvalidateCachedPedido() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.eliminarPorId(1L)).thenReturn(Mono.just(1L));
+        when(eventosDominioPedidoService.registrarEliminado(1L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.delete(1L)).verifyComplete();
+
+        verify(cachePedidosService, times(1)).invalidar(1L);
+        verify(eventosPedidoService, times(1)).publicar(EventosPedidoService.ELIMINADO, 1L, null, null, null);
+    }
+
+    @Test
+    void testUpdateStatus_ToProcesadoWhileReservationPending_ShouldThrowBadRequest() {
+        Pedido pendiente = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "PENDIENTE", 0L, new ArrayList<>());
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstadoConStockReservado(eq(1L), eq("PROCESADO"), any(String[].class)))
+                .thenReturn(Mono.empty());
+        when(pedidoRepository.findById(1L)).thenReturn(Mono.just(pendiente));
+
+        StepVerifier.create(pedidoService.updateStatus(1L, "PROCESADO"))
+                .expectErrorMatches(error -> error instanceof BadRequestException
+                        && error.getMessage().contains("todavía no tiene el stock reservado"))
+                .verify();
+        verify(pedidoRepository, never()).actualizarEstado(anyLong(), anyString(), any(String[].class));
+    }
+
+    @Test
+    void testUpdateStatus_WithDisallowedTransition_ShouldThrowBadRequest() {
+        Pedido cancelado = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "CANCELADO", 0L, new ArrayList<>());
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstadoConStockReservado(eq(1L), eq("PROCESADO"), any(String[].class))).thenReturn(Mono.empty());
+        when(pedidoRepository.findById(1L)).thenReturn(Mono.just(cancelado));
+
+        StepVerifier.create(pedidoService.updateStatus(1L, "PROCESADO"))
+                .expectErrorMatches(error -> error instanceof BadRequestException
+                        && error.getMessage().contains("CANCELADO -> PROCESADO"))
+                .verify();
+    }
+
+    @Test
+    void testUpdateStatus_ToCancelado_ShouldCompensateStockReservationInSameTransaction() {
+        Pedido cancelado = new Pedido(1L, "cliente-123", LocalDateTime.now(), 100.0, "CANCELADO", 0L, new ArrayList<>());
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstado(eq(1L), eq("CANCELADO"), aryEq(new String[]{"PENDIENTE", "RECIBIDO"})))
+                .thenReturn(Mono.just(cancelado));
+        when(sagaPedidoService.compensar(1L)).thenReturn(Mono.empty());
+        when(eventosDominioPedidoService.registrarCambioEstado(any(Pedido.class))).thenReturn(Mono.empty());
+        when(detallePedidoRepository.findByPedidoId(1L)).thenReturn(Flux.empty());
+
+        StepVerifier.create(pedidoService.updateStatus(1L, "CANCELADO"))
+                .expectNextMatches(dto -> dto.getEstado().equals("CANCELADO"))
+                .verifyComplete();
+
+        verify(sagaPedidoService, times(1)).compensar(1L);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+        verify(eventosPedidoService, times(1)).publicar("ESTADO_ACTUALIZADO", 1L, "cliente-123", "CANCELADO", 0L);
+    }
+
+    @Test
+    void testUpdateStatus_WhenPedidoNotExists_ShouldThrowNotFound() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstado(eq(99L), eq("CANCELADO"), any(String[].class))).thenReturn(Mono.empty());
+        when(pedidoRepository.findById(99L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.updateStatus(99L, "CANCELADO"))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void testDelete_ShouldUseSingleCascadingStatement() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.eliminarPorId(1L)).thenReturn(Mono.just(1L));
+        when(eventosDominioPedidoService.registrarEliminado(1L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.delete(1L))
+                .verifyComplete();
+
+        // El evento PEDIDO_DELETED se registra en la misma transacción que el DELETE
+        verify(eventosDominioPedidoService, times(1)).registrarEliminado(1L);
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+
+        verify(pedidoRepository, never()).findById(anyLong());
+        verifyNoInteractions(detallePedidoRepository);
+    }
+
+    @Test
+    void testDelete_WhenPedidoNotExists_ShouldThrowNotFound() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.eliminarPorId(99L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.delete(99L))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+
+        verify(eventosDominioPedidoService, never()).registrarEliminado(anyLong());
+    }
+
+    @Test
+    void testPurgar_ShouldDeleteInChunksUntilPartialBatch() {
+        LocalDateTime desde = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime hasta = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        when(pedidoRepository.eliminarLotePorFecha(desde, hasta, 1000))
+                .thenReturn(Mono.just(1000), Mono.just(1000), Mono.just(250));
+
+        StepVerifier.create(pedidoService.purgar(desde, hasta, null, null))
+                .expectNextMatches(resultado -> resultado.getEliminados() == 2250L)
+                .verifyComplete();
+
+        verify(pedidoRepository, times(3)).eliminarLotePorFecha(desde, hasta, 1000);
+    }
+
+    @Test
+    void testPurgar_WithBothRangeTypes_ShouldThrowException() {
+        StepVerifier.create(pedidoService.purgar(LocalDateTime.now().minusDays(1), LocalDateTime.now(), 1L, 10L))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verifyNoInteractions(pedidoRepository);
+    }
+
+    @Test
+    void testCreate_WithUnknownProduct_ShouldThrowException() {
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 2, null),
+                new DetallePedidoDTO(null, 99L, 1, null));
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testCreate_WithInsufficientStock_ShouldThrowException() {
+        PedidoDTO pedidoDTO = nuevoPedido(new DetallePedidoDTO(null, 1L, 15, null));
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testCreate_WithRepeatedLinesExceedingStock_ShouldThrowException() {
+        // 6 + 6 unidades del mismo producto contra un stock de 10: ms-productos rechazaría la reserva
+        PedidoDTO pedidoDTO = nuevoPedido(
+                new DetallePedidoDTO(null, 1L, 6, null),
+                new DetallePedidoDTO(null, 1L, 6, null));
+
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectErrorMatches(error -> error instanceof BadRequestException
+                        && error.getMessage().equals("Producto inactivo o stock insuficiente"))
+                .verify();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testCreate_WithNonPositiveOrMissingQuantity_ShouldThrowBadRequestWithoutLookup() {
+        StepVerifier.create(pedidoService.create(nuevoPedido(new DetallePedidoDTO(null, 1L, -2, null))))
+                .expectError(BadRequestException.class)
+                .verify();
+        StepVerifier.create(pedidoService.create(nuevoPedido(new DetallePedidoDTO(null, 1L, null, null))))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verifyNoInteractions(productoClient, productoReplicaService, pedidoRepository);
+    }
+
+    @Test
+    void testCreate_WithoutDetalles_ShouldThrowBadRequest() {
+        PedidoDTO pedidoDTO = nuevoPedido();
+        pedidoDTO.setDetalles(null);
+
+        StepVerifier.create(pedidoService.create(pedidoDTO))
+                .expectErrorMatches(error -> error instanceof BadRequestException
+                        && error.getMessage().equals("El pedido debe tener al menos un producto"))
+                .verify();
+    }
+
+    @Test
+    void testRegistrarRecibido_WithNonPositiveQuantity_ShouldThrowException() {
+        PedidoDTO pedidoDTO = nuevoPedido(new DetallePedidoDTO(null, 1L, 0, null));
+
+        StepVerifier.create(pedidoService.registrarRecibido(pedidoDTO))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(pedidoRepository, never()).save(any(Pedido.class));
+    }
+
+    @Test
+    void testProcesarRecibidos_ShouldValidateBatchWithSingleLookupAndConfirmEachPedido() {
+        Pedido recibido1 = new Pedido(20L, "cliente-123", LocalDateTime.now(), 0.0, "RECIBIDO", 0L, new ArrayList<>());
+        Pedido recibido2 = new Pedido(21L, "cliente-456", LocalDateTime.now(), 0.0, "RECIBIDO", 0L, new ArrayList<>());
+
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.findAllById(List.of(20L, 21L))).thenReturn(Flux.just(recibido1, recibido2));
+        when(detallePedidoRepository.buscarPorPedidoIds(any(Long[].class))).thenReturn(Flux.just(
+                new DetallePedido(1L, 20L, 1L, 2, 0.0),
+                new DetallePedido(2L, 21L, 2L, 3, 0.0)));
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1, producto2));
+        when(detallePedidoRepository.actualizarPrecios(any(Long[].class), any(Double[].class))).thenReturn(Mono.just(1));
+        when(pedidoRepository.confirmarRecibido(20L, 2000.0)).thenReturn(Mono.just(recibido1));
+        when(pedidoRepository.confirmarRecibido(21L, 60.0)).thenReturn(Mono.just(recibido2));
+        when(sagaPedidoService.iniciar(anyLong(), any(ReservaStockDTO.class))).thenReturn(Mono.empty());
+        when(eventosDominioPedidoService.registrarCambioEstado(any(Pedido.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.procesarRecibidos(List.of(20L, 21L)))
+                .verifyComplete();
+
+        verify(productoClient, times(1)).obtenerProductos(anyCollection());
+        verify(detallePedidoRepository).actualizarPrecios(aryEq(new Long[]{1L}), aryEq(new Double[]{1000.0}));
+        verify(sagaPedidoService).iniciar(eq(20L), any(ReservaStockDTO.class));
+        verify(sagaPedidoService).iniciar(eq(21L), any(ReservaStockDTO.class));
+        verify(eventosDominioPedidoService, times(2)).registrarCambioEstado(any(Pedido.class));
+    }
+
+    @Test
+    void testProcesarRecibidos_WithInsufficientStock_ShouldRejectPedido() {
+        Pedido recibido = new Pedido(20L, "cliente-123", LocalDateTime.now(), 0.0, "RECIBIDO", 0L, new ArrayList<>());
+
+        when(pedidoRepository.findAllById(List.of(20L))).thenReturn(Flux.just(recibido));
+        when(detallePedidoRepository.buscarPorPedidoIds(any(Long[].class)))
+                .thenReturn(Flux.just(new DetallePedido(1L, 20L, 1L, 15, 0.0)));
+        when(productoClient.obtenerProductos(anyCollection())).thenReturn(Flux.just(producto1));
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(pedidoRepository.actualizarEstado(eq(20L), eq("RECHAZADO"), aryEq(new String[]{"RECIBIDO"})))
+                .thenReturn(Mono.just(recibido));
+        when(eventosDominioPedidoService.registrarCambioEstado(any(Pedido.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(pedidoService.procesarRecibidos(List.of(20L)))
+                .verifyComplete();
+
+        verify(pedidoRepository, never()).confirmarRecibido(anyLong(), anyDouble());
+        verify(sagaPedidoService, never()).iniciar(anyLong(), any(ReservaStockDTO.class));
+        verify(eventosDominioPedidoService, times(1)).registrarCambioEstado(recibido);
+    }
+}
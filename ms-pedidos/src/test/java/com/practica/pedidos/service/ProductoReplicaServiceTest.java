@@ -0,0 +1,107 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.ProductoDTO;
+import com.practica.pedidos.entity.ProductoReplica;
+import com.practica.pedidos.repository.ProductoReplicaRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductoReplicaServiceTest {
+
+    @Mock
+    private ProductoReplicaRepository productoReplicaRepository;
+
+    @Mock
+    private ProductoClient productoClient;
+
+    private ProductoReplicaService productoReplicaService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        productoReplicaService = new ProductoReplicaService(productoReplicaRepository, productoClient,
+                objectMapper, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testInicializar_WithEmptyTable_ShouldLoadSnapshotFromProductos() {
+        when(productoReplicaRepository.findAll()).thenReturn(Flux.empty());
+        when(productoClient.obtenerTodos()).thenReturn(Flux.just(
+                new ProductoDTO(1L, "Laptop", "Laptop HP", 1000.0, 10, true),
+                new ProductoDTO(2L, "Mouse", "Mouse Logitech", 20.0, 50, null)));
+        when(productoReplicaRepository.guardar(anyLong(), anyString(), anyString(), anyDouble(), anyInt(), anyBoolean()))
+                .thenReturn(Mono.just(1));
+
+        StepVerifier.create(productoReplicaService.inicializar())
+                .verifyComplete();
+
+        Map<Long, ProductoDTO> encontrados = productoReplicaService.buscar(List.of(1L, 2L, 3L));
+        assertEquals(2, encontrados.size());
+        assertTrue(encontrados.get(2L).getActivo());
+    }
+
+    @Test
+    void testInicializar_WithStoredRows_ShouldNotCallProductos() {
+        when(productoReplicaRepository.findAll())
+                .thenReturn(Flux.just(new ProductoReplica(1L, "Laptop", "Laptop HP", 1000.0, 10, true)));
+
+        StepVerifier.create(productoReplicaService.inicializar())
+                .verifyComplete();
+
+        assertEquals(1, productoReplicaService.buscar(List.of(1L)).size());
+        verify(productoClient, never()).obtenerTodos();
+    }
+
+    @Test
+    void testAplicarEvento_ShouldKeepReplicaInSync() {
+        when(productoReplicaRepository.guardar(anyLong(), anyString(), anyString(), anyDouble(), anyInt(), anyBoolean()))
+                .thenReturn(Mono.just(1));
+        when(productoReplicaRepository.actualizarStock(1L, 7)).thenReturn(Mono.just(1));
+        when(productoReplicaRepository.deleteById(1L)).thenReturn(Mono.empty());
+
+        Map<String, Object> actualizado = Map.of(
+                "eventType", "PRODUCTO_UPDATED",
+                "productoId", 1,
+                "payload", Map.of("nombre", "Laptop", "descripcion", "Laptop HP", "precio", 1000.0,
+                        "stock", 10, "activo", true, "fechaCreacion", "2024-01-01T00:00:00"));
+        StepVerifier.create(productoReplicaService.aplicarEvento(actualizado)).verifyComplete();
+        assertEquals(10, productoReplicaService.buscar(List.of(1L)).get(1L).getStock());
+
+        Map<String, Object> stock = Map.of("eventType", "STOCK_UPDATED", "productoId", 1, "stockNuevo", 7);
+        StepVerifier.create(productoReplicaService.aplicarEvento(stock)).verifyComplete();
+        assertEquals(7, productoReplicaService.buscar(List.of(1L)).get(1L).getStock());
+
+        Map<String, Object> eliminado = Map.of("eventType", "PRODUCTO_DELETED", "productoId", 1);
+        StepVerifier.create(productoReplicaService.aplicarEvento(eliminado)).verifyComplete();
+        assertTrue(productoReplicaService.buscar(List.of(1L)).isEmpty());
+    }
+
+    @Test
+    void testAplicarEvento_CreatedWithoutId_ShouldBeIgnored() {
+        Map<String, Object> creado = Map.of("eventType", "PRODUCTO_CREATED", "payload", Map.of("nombre", "Teclado"));
+
+        StepVerifier.create(productoReplicaService.aplicarEvento(creado))
+                .verifyComplete();
+
+        verifyNoInteractions(productoReplicaRepository);
+    }
+}
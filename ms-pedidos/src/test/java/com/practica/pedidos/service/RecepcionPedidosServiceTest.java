@@ -0,0 +1,74 @@
+package com.practica.pedidos.service;
+
+import com.practica.pedidos.dto.PedidoDTO;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.exception.ServicioSaturadoException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecepcionPedidosServiceTest {
+
+    @Mock
+    private PedidoService pedidoService;
+
+    private MeterRegistry meterRegistry;
+    private RecepcionPedidosService recepcionPedidosService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        recepcionPedidosService = new RecepcionPedidosService(pedidoService, 1, meterRegistry);
+    }
+
+    private PedidoDTO pedidoRecibido(Long id) {
+        return new PedidoDTO(id, "cliente-123", null, 0.0, "RECIBIDO", new ArrayList<>());
+    }
+
+    @Test
+    void testRecibir_WhenQueueIsFull_ShouldShedWithoutPersisting() {
+        when(pedidoService.registrarRecibido(any(PedidoDTO.class))).thenReturn(Mono.just(pedidoRecibido(1L)));
+
+        StepVerifier.create(recepcionPedidosService.recibir(new PedidoDTO()))
+                .expectNextMatches(pedido -> pedido.getEstado().equals("RECIBIDO"))
+                .verifyComplete();
+        StepVerifier.create(recepcionPedidosService.recibir(new PedidoDTO()))
+                .expectError(ServicioSaturadoException.class)
+                .verify();
+
+        verify(pedidoService, times(1)).registrarRecibido(any(PedidoDTO.class));
+        assertEquals(1.0, meterRegistry.get("pedidos.recepcion.descartados").counter().count());
+        assertEquals(1.0, meterRegistry.get("pedidos.recepcion.cola").gauge().value());
+
+        StepVerifier.create(recepcionPedidosService.cola().take(1))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void testRecibir_WhenValidationFails_ShouldReleaseSlot() {
+        when(pedidoService.registrarRecibido(any(PedidoDTO.class)))
+                .thenReturn(Mono.error(new BadRequestException("El cliente es obligatorio")))
+                .thenReturn(Mono.just(pedidoRecibido(2L)));
+
+        StepVerifier.create(recepcionPedidosService.recibir(new PedidoDTO()))
+                .expectError(BadRequestException.class)
+                .verify();
+        StepVerifier.create(recepcionPedidosService.recibir(new PedidoDTO()))
+                .expectNextMatches(pedido -> pedido.getId().equals(2L))
+                .verifyComplete();
+    }
+}
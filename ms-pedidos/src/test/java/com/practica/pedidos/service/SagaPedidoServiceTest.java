@@ -0,0 +1,148 @@
+package com.practica.pedidos.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.practica.pedidos.client.ProductoClient;
+import com.practica.pedidos.dto.ItemReservaDTO;
+import com.practica.pedidos.dto.ReservaStockDTO;
+import com.practica.pedidos.entity.EventoOutbox;
+import com.practica.pedidos.entity.SagaPedido;
+import com.practica.pedidos.exception.BadRequestException;
+import com.practica.pedidos.outbox.LiberacionStockOutboxHandler;
+import com.practica.pedidos.outbox.ReservaStockOutboxHandler;
+import com.practica.pedidos.repository.PedidoRepository;
+import com.practica.pedidos.repository.SagaPedidoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SagaPedidoServiceTest {
+
+    @Mock
+    private SagaPedidoRepository sagaPedidoRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SagaPedidoService sagaPedidoService;
+
+    @BeforeEach
+    void setUp() {
+        sagaPedidoService = new SagaPedidoService(sagaPedidoRepository, outboxService, objectMapper, transactionalOperator);
+    }
+
+    private SagaPedido saga(Long pedidoId, String paso) throws Exception {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-" + pedidoId, List.of(new ItemReservaDTO(1L, 2)));
+        return new SagaPedido(pedidoId, paso, objectMapper.writeValueAsString(reserva), LocalDateTime.now());
+    }
+
+    private void prepararTransaccion() {
+        when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void testIniciar_ShouldRegisterReservationEventAndPersistFirstStep() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(new ItemReservaDTO(1L, 2)));
+        when(outboxService.registrar(ReservaStockOutboxHandler.TIPO, 10L, reserva)).thenReturn(Mono.just(new EventoOutbox()));
+        when(sagaPedidoRepository.iniciar(eq(10L), contains("pedido-10"), any(LocalDateTime.class))).thenReturn(Mono.just(1));
+
+        StepVerifier.create(sagaPedidoService.iniciar(10L, reserva))
+                .verifyComplete();
+
+        verify(sagaPedidoRepository, times(1)).iniciar(eq(10L), anyString(), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testCompensar_ShouldRegisterReleaseWithStoredReservation() throws Exception {
+        prepararTransaccion();
+        when(sagaPedidoRepository.avanzar(eq(10L), eq("COMPENSACION_SOLICITADA"),
+                aryEq(new String[]{"RESERVA_SOLICITADA", "STOCK_RESERVADO"}), any(LocalDateTime.class)))
+                .thenReturn(Mono.just(saga(10L, "COMPENSACION_SOLICITADA")));
+        when(outboxService.registrar(anyString(), anyLong(), any())).thenReturn(Mono.just(new EventoOutbox()));
+
+        StepVerifier.create(sagaPedidoService.compensar(10L))
+                .verifyComplete();
+
+        verify(outboxService, times(1)).registrar(eq(LiberacionStockOutboxHandler.TIPO), eq(10L),
+                argThat(payload -> payload instanceof ReservaStockDTO reserva
+                        && reserva.getReferencia().equals("pedido-10")
+                        && reserva.getItems().get(0).getCantidad() == 2));
+    }
+
+    @Test
+    void testCompensar_WhenAlreadyCompensating_ShouldNotRegisterAnotherRelease() {
+        prepararTransaccion();
+        when(sagaPedidoRepository.avanzar(eq(10L), eq("COMPENSACION_SOLICITADA"), any(String[].class), any(LocalDateTime.class)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(sagaPedidoService.compensar(10L))
+                .verifyComplete();
+
+        verify(outboxService, never()).registrar(anyString(), anyLong(), any());
+    }
+
+    @Test
+    void testRecuperar_ShouldCompensateCancelledAndReemitStalledSteps() throws Exception {
+        prepararTransaccion();
+        when(sagaPedidoRepository.buscarPorCompensar(any(LocalDateTime.class), eq(50)))
+                .thenReturn(Flux.just(saga(10L, "STOCK_RESERVADO")));
+        when(sagaPedidoRepository.avanzar(eq(10L), eq("COMPENSACION_SOLICITADA"), any(String[].class), any(LocalDateTime.class)))
+                .thenReturn(Mono.just(saga(10L, "COMPENSACION_SOLICITADA")));
+        when(sagaPedidoRepository.reclamarEstancadas(any(LocalDateTime.class), any(LocalDateTime.class), eq(50)))
+                .thenReturn(Flux.just(saga(11L, "RESERVA_SOLICITADA"), saga(12L, "COMPENSACION_SOLICITADA")));
+        when(outboxService.registrar(anyString(), anyLong(), any())).thenReturn(Mono.just(new EventoOutbox()));
+
+        StepVerifier.create(sagaPedidoService.recuperar(LocalDateTime.now().minusMinutes(5), 50))
+                .expectNext(3L)
+                .verifyComplete();
+
+        verify(outboxService).registrar(eq(LiberacionStockOutboxHandler.TIPO), eq(10L), any());
+        verify(outboxService).registrar(eq(ReservaStockOutboxHandler.TIPO), eq(11L), any());
+        verify(outboxService).registrar(eq(LiberacionStockOutboxHandler.TIPO), eq(12L), any());
+    }
+
+    @Test
+    void testDescartarReserva_WhenPedidoAlreadyProcesado_ShouldCloseSagaAsFailed() throws Exception {
+        PedidoRepository pedidoRepository = mock(PedidoRepository.class);
+        EventosDominioPedidoService eventosDominioPedidoService = mock(EventosDominioPedidoService.class);
+        ReservaStockOutboxHandler handler = new ReservaStockOutboxHandler(mock(ProductoClient.class), pedidoRepository,
+                sagaPedidoService, mock(CachePedidosService.class), mock(EventosPedidoService.class),
+                eventosDominioPedidoService, objectMapper, transactionalOperator);
+        EventoOutbox evento = new EventoOutbox(1L, ReservaStockOutboxHandler.TIPO, 10L, "{}", "PENDIENTE", 1,
+                null, LocalDateTime.now(), LocalDateTime.now());
+
+        prepararTransaccion();
+        // El pedido ya no está PENDIENTE: la cancelación condicional no actualiza ninguna fila
+        when(pedidoRepository.actualizarEstado(eq(10L), eq("CANCELADO"), aryEq(new String[]{"PENDIENTE"})))
+                .thenReturn(Mono.empty());
+        when(sagaPedidoRepository.avanzar(eq(10L), eq("RESERVA_FALLIDA"), aryEq(new String[]{"RESERVA_SOLICITADA"}),
+                any(LocalDateTime.class))).thenReturn(Mono.just(saga(10L, "RESERVA_FALLIDA")));
+
+        StepVerifier.create(handler.descartar(evento, new BadRequestException("Stock insuficiente")))
+                .verifyComplete();
+
+        // Paso terminal: reclamarEstancadas ya no la retoma y no se vuelve a pedir la reserva
+        verify(sagaPedidoRepository, never()).avanzar(eq(10L), eq("COMPENSACION_SOLICITADA"), any(String[].class),
+                any(LocalDateTime.class));
+        verifyNoInteractions(eventosDominioPedidoService, outboxService);
+    }
+}
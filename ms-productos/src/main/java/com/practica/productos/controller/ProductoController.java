@@ -1,6 +1,7 @@
 package com.practica.productos.controller;
 
 import com.practica.productos.dto.ProductoDTO;
+import com.practica.productos.dto.ReservaStockDTO;
 import com.practica.productos.service.ProductoService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,6 +15,8 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Tag(name = "Productos", description = "API para gestión de productos")
 @RestController
 @RequestMapping("/api/v1/productos")
@@ -22,14 +25,20 @@ public class ProductoController {
 
     private final ProductoService productoService;
 
-    @Operation(summary = "Listar productos", description = "Obtiene todos los productos o solo los activos")
+    @Operation(summary = "Listar productos", description = "Obtiene todos los productos, solo los activos o un lote por ids")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Lista de productos obtenida exitosamente")
+            @ApiResponse(responseCode = "200", description = "Lista de productos obtenida exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Lote de ids inválido")
     })
     @GetMapping
     public Flux<ProductoDTO> listAll(
             @Parameter(description = "Mostrar solo productos activos")
-            @RequestParam(required = false, defaultValue = "false") Boolean onlyActive) {
+            @RequestParam(required = false, defaultValue = "false") Boolean onlyActive,
+            @Parameter(description = "Ids de productos a consultar en lote (ej. ids=1,2,3)")
+            @RequestParam(required = false) List<Long> ids) {
+        if (ids != null) {
+            return productoService.getByIds(ids);
+        }
         return onlyActive ? productoService.getActive() : productoService.getAll();
     }
 
@@ -96,6 +105,28 @@ public class ProductoController {
         return productoService.updateStock(id, cantidad);
     }
 
+    @Operation(summary = "Reservar stock en lote", description = "Descuenta el stock de varios productos en una sola transacción (todo o nada)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Stock reservado exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Líneas inválidas, stock insuficiente o producto inactivo")
+    })
+    @PostMapping("/stock/reservations")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Void> reservarStock(@RequestBody ReservaStockDTO reservaDTO) {
+        return productoService.reservarStock(reservaDTO);
+    }
+
+    @Operation(summary = "Liberar una reserva de stock", description = "Devuelve el stock de una reserva por su referencia; repetir la liberación no suma dos veces")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reserva liberada o ya liberada"),
+            @ApiResponse(responseCode = "400", description = "Referencia o líneas inválidas")
+    })
+    @PostMapping("/stock/releases")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Void> liberarStock(@RequestBody ReservaStockDTO reservaDTO) {
+        return productoService.liberarStock(reservaDTO);
+    }
+
     @Operation(summary = "Productos con stock bajo", description = "Obtiene productos con stock menor al mínimo especificado")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Lista obtenida exitosamente")
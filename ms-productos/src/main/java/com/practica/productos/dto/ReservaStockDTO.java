@@ -0,0 +1,16 @@
+package com.practica.productos.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReservaStockDTO {
+    // Opcional: si se envía, una reserva repetida con la misma referencia no vuelve a descontar stock
+    private String referencia;
+    private List<ItemReservaDTO> items;
+}
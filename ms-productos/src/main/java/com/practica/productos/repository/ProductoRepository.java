@@ -1,6 +1,7 @@
 package com.practica.productos.repository;
 
 import com.practica.productos.entity.Producto;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -12,6 +13,38 @@ public interface ProductoRepository extends ReactiveCrudRepository<Producto, Lon
     Flux<Producto> findByActivoTrue();
     Flux<Producto> findByStockLessThanEqual(Integer stock);
 
+    // Búsqueda por lote: un solo parámetro de tipo arreglo, una sola consulta
+    @Query("SELECT * FROM productos WHERE id = ANY(:ids)")
+    Flux<Producto> buscarPorIds(Long[] ids);
+
+    // Reserva por lote: descuenta todas las cantidades en una sentencia y devuelve solo los ids
+    // que tenían stock suficiente; el servicio compara contra el total para decidir el rollback
+    @Query("UPDATE productos p SET stock = p.stock - r.cantidad " +
+            "FROM unnest(:ids, :cantidades) AS r(id, cantidad) " +
+            "WHERE p.id = r.id AND p.activo = true AND p.stock >= r.cantidad " +
+            "RETURNING p.id")
+    Flux<Long> reservarStock(Long[] ids, Integer[] cantidades);
+
+    @Modifying
+    @Query("INSERT INTO reservas_stock (referencia) VALUES (:referencia) ON CONFLICT (referencia) DO NOTHING")
+    Mono<Integer> registrarReserva(String referencia);
+
+    // Devuelve 1 solo la primera vez: una reserva aplicada pasa a liberada una única vez
+    @Modifying
+    @Query("UPDATE reservas_stock SET liberada = true WHERE referencia = :referencia AND NOT liberada")
+    Mono<Integer> marcarReservaLiberada(String referencia);
+
+    // Liberación sin reserva previa: deja la referencia ocupada para que una reserva atrasada no descuente
+    @Modifying
+    @Query("INSERT INTO reservas_stock (referencia, liberada) VALUES (:referencia, true) ON CONFLICT (referencia) DO NOTHING")
+    Mono<Integer> registrarLiberacionAnticipada(String referencia);
+
+    @Modifying
+    @Query("UPDATE productos p SET stock = p.stock + r.cantidad " +
+            "FROM unnest(:ids, :cantidades) AS r(id, cantidad) " +
+            "WHERE p.id = r.id")
+    Mono<Integer> devolverStock(Long[] ids, Integer[] cantidades);
+
     // Procedimiento almacenado: actualizar_stock
     @Query("SELECT actualizar_stock(:productoId, :cantidad)")
     Mono<Void> actualizarStockConProcedimiento(Long productoId, Integer cantidad);
@@ -1,19 +1,33 @@
 package com.practica.productos.service;
 
+import com.practica.productos.dto.ItemReservaDTO;
 import com.practica.productos.dto.ProductoDTO;
+import com.practica.productos.dto.ReservaStockDTO;
 import com.practica.productos.entity.Producto;
 import com.practica.productos.exception.BadRequestException;
 import com.practica.productos.exception.ResourceNotFoundException;
 import com.practica.productos.repository.ProductoRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductoService {
 
+    private static final int MAX_IDS_POR_CONSULTA = 500;
+
     private final ProductoRepository productoRepository;
 
     public Flux<ProductoDTO> getAll() {
@@ -36,6 +50,20 @@ public class ProductoService {
                 .map(this::convertToDTO);
     }
 
+    public Flux<ProductoDTO> getByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Flux.error(new BadRequestException("Debe indicar al menos un id de producto"));
+        }
+        Long[] idsUnicos = ids.stream().distinct().toArray(Long[]::new);
+        if (idsUnicos.length > MAX_IDS_POR_CONSULTA) {
+            return Flux.error(new BadRequestException("No se pueden consultar más de " + MAX_IDS_POR_CONSULTA + " productos por solicitud"));
+        }
+        return productoRepository.buscarPorIds(idsUnicos)
+                .map(this::convertToDTO)
+                .onErrorResume(error ->
+                        Flux.error(new RuntimeException("Error al obtener productos por ids: " + error.getMessage(), error)));
+    }
+
     public Mono<ProductoDTO> create(ProductoDTO productoDTO) {
         return Mono.just(productoDTO)
                 .doOnNext(this::validateProduct)
@@ -90,6 +118,80 @@ public class ProductoService {
                 .then();
     }
 
+    /**
+     * Descuenta el stock de todas las líneas de un pedido en una sola transacción: o se aplican
+     * todas o ninguna. Con referencia, repetir la misma reserva (p. ej. un reintento) no descuenta dos veces.
+     */
+    @Transactional
+    public Mono<Void> reservarStock(ReservaStockDTO reservaDTO) {
+        String referencia = reservaDTO.getReferencia();
+        return Mono.fromCallable(() -> agruparItems(reservaDTO))
+                .flatMap(cantidades -> {
+                    Mono<Boolean> esNueva = referencia == null || referencia.isBlank()
+                            ? Mono.just(true)
+                            : productoRepository.registrarReserva(referencia).map(filas -> filas > 0);
+                    return esNueva.flatMap(nueva -> {
+                        if (!nueva) {
+                            log.info("Reserva de stock {} ya aplicada o liberada, se ignora", referencia);
+                            return Mono.empty();
+                        }
+                        return aplicarReserva(cantidades);
+                    });
+                })
+                .then();
+    }
+
+    /**
+     * Compensa una reserva: devuelve su stock una sola vez. Si la reserva todavía no llegó (o fue
+     * rechazada), la referencia queda registrada como liberada y la reserva ya no se aplicará.
+     */
+    @Transactional
+    public Mono<Void> liberarStock(ReservaStockDTO reservaDTO) {
+        String referencia = reservaDTO.getReferencia();
+        if (referencia == null || referencia.isBlank()) {
+            return Mono.error(new BadRequestException("La referencia de la reserva es obligatoria para liberarla"));
+        }
+        return Mono.fromCallable(() -> agruparItems(reservaDTO))
+                .flatMap(cantidades -> productoRepository.marcarReservaLiberada(referencia)
+                        .flatMap(filas -> filas > 0 ? Mono.just(true) : liberarSinReserva(referencia))
+                        .flatMap(aplicada -> {
+                            if (!aplicada) {
+                                log.info("Reserva de stock {} sin aplicar o ya liberada, no se devuelve stock", referencia);
+                                return Mono.empty();
+                            }
+                            return productoRepository.devolverStock(
+                                    cantidades.keySet().toArray(Long[]::new),
+                                    cantidades.values().toArray(Integer[]::new));
+                        }))
+                .then();
+    }
+
+    // Si otra transacción insertó la reserva mientras tanto, el INSERT espera su commit y no inserta:
+    // se vuelve a intentar marcarla, ahora visible
+    private Mono<Boolean> liberarSinReserva(String referencia) {
+        return productoRepository.registrarLiberacionAnticipada(referencia)
+                .flatMap(filas -> filas > 0
+                        ? Mono.just(false)
+                        : productoRepository.marcarReservaLiberada(referencia).map(marcadas -> marcadas > 0));
+    }
+
+    private Mono<Void> aplicarReserva(Map<Long, Integer> cantidades) {
+        Long[] ids = cantidades.keySet().toArray(Long[]::new);
+        Integer[] valores = cantidades.values().toArray(Integer[]::new);
+        return productoRepository.reservarStock(ids, valores)
+                .collectList()
+                .flatMap(reservados -> {
+                    if (reservados.size() == ids.length) {
+                        return Mono.<Void>empty();
+                    }
+                    // El error revierte la transacción, incluidas las filas que sí se habían descontado
+                    Set<Long> rechazados = new TreeSet<>(cantidades.keySet());
+                    reservados.forEach(rechazados::remove);
+                    return Mono.error(new BadRequestException(
+                            "Stock insuficiente o producto inactivo/no encontrado: " + rechazados));
+                });
+    }
+
     public Flux<ProductoDTO> getProductsLowStock(Integer minimo) {
         if (minimo == null) {
             minimo = 10;
@@ -101,6 +203,28 @@ public class ProductoService {
                         Flux.error(new RuntimeException("Error al ejecutar procedimiento de productos con stock bajo: " + error.getMessage(), error)));
     }
 
+    // Suma las líneas repetidas de un mismo producto para que unnest reciba un id por fila
+    private Map<Long, Integer> agruparItems(ReservaStockDTO reservaDTO) {
+        List<ItemReservaDTO> items = reservaDTO.getItems();
+        if (items == null || items.isEmpty()) {
+            throw new BadRequestException("La reserva debe incluir al menos un producto");
+        }
+        if (items.size() > MAX_IDS_POR_CONSULTA) {
+            throw new BadRequestException("No se pueden reservar más de " + MAX_IDS_POR_CONSULTA + " líneas por solicitud");
+        }
+        Map<Long, Integer> cantidades = new TreeMap<>();
+        for (ItemReservaDTO item : items) {
+            if (item.getProductoId() == null) {
+                throw new BadRequestException("El id del producto es obligatorio");
+            }
+            if (item.getCantidad() == null || item.getCantidad() <= 0) {
+                throw new BadRequestException("La cantidad a reservar debe ser mayor a 0");
+            }
+            cantidades.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
     private void validateProduct(ProductoDTO productoDTO) {
         if (productoDTO.getNombre() == null || productoDTO.getNombre().trim().isEmpty()) {
             throw new BadRequestException("El nombre del producto es obligatorio");
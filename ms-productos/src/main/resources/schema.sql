@@ -7,3 +7,9 @@ CREATE TABLE IF NOT EXISTS productos (
     activo BOOLEAN DEFAULT true,
     fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+
+CREATE TABLE IF NOT EXISTS reservas_stock (
+    referencia VARCHAR(100) PRIMARY KEY,
+    liberada BOOLEAN NOT NULL DEFAULT false,
+    fecha_creacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
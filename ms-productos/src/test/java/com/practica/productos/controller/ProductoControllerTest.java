@@ -1,6 +1,8 @@
 package com.practica.productos.controller;
 
+import com.practica.productos.dto.ItemReservaDTO;
 import com.practica.productos.dto.ProductoDTO;
+import com.practica.productos.dto.ReservaStockDTO;
 import com.practica.productos.service.ProductoService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,9 +18,10 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @WebFluxTest(controllers = ProductoController.class)
 @Import(com.practica.productos.config.SecurityConfig.class)
@@ -67,6 +70,19 @@ class ProductoControllerTest {
                 .hasSize(2);
     }
 
+    @Test
+    @WithMockUser
+    void testListAll_WithIds_ShouldReturnBatch() {
+        when(productoService.getByIds(List.of(1L, 2L))).thenReturn(Flux.just(productoDTO1, productoDTO2));
+
+        webTestClient.get()
+                .uri("/api/v1/productos?ids=1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ProductoDTO.class)
+                .hasSize(2);
+    }
+
     @Test
     @WithMockUser
     void testGetById_ShouldReturnProduct() {
@@ -146,6 +162,23 @@ class ProductoControllerTest {
                 .expectStatus().isOk();
     }
 
+    @Test
+    @WithMockUser
+    void testReservarStock_ShouldReturnOk() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(new ItemReservaDTO(1L, 2)));
+
+        when(productoService.reservarStock(any(ReservaStockDTO.class))).thenReturn(Mono.empty());
+
+        webTestClient.post()
+                .uri("/api/v1/productos/stock/reservations")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(reserva)
+                .exchange()
+                .expectStatus().isOk();
+
+        verify(productoService, times(1)).reservarStock(reserva);
+    }
+
     @Test
     @WithMockUser
     void testGetLowStock_ShouldReturnProductsWithLowStock() {
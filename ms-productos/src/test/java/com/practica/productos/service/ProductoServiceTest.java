@@ -1,6 +1,8 @@
 package com.practica.productos.service;
 
+import com.practica.productos.dto.ItemReservaDTO;
 import com.practica.productos.dto.ProductoDTO;
+import com.practica.productos.dto.ReservaStockDTO;
 import com.practica.productos.entity.Producto;
 import com.practica.productos.exception.BadRequestException;
 import com.practica.productos.exception.ResourceNotFoundException;
@@ -16,7 +18,9 @@ import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -102,6 +106,28 @@ class ProductoServiceTest {
         verify(productoRepository, times(1)).findById(99L);
     }
 
+    @Test
+    void testGetByIds_ShouldQueryOnceWithDistinctIds() {
+        when(productoRepository.buscarPorIds(any(Long[].class))).thenReturn(Flux.just(producto1, producto2));
+
+        StepVerifier.create(productoService.getByIds(List.of(1L, 2L, 1L)))
+                .expectNextMatches(dto -> dto.getId().equals(1L))
+                .expectNextMatches(dto -> dto.getId().equals(2L))
+                .verifyComplete();
+
+        verify(productoRepository, times(1)).buscarPorIds(aryEq(new Long[]{1L, 2L}));
+        verify(productoRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void testGetByIds_WithEmptyList_ShouldThrowException() {
+        StepVerifier.create(productoService.getByIds(List.of()))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(productoRepository, never()).buscarPorIds(any(Long[].class));
+    }
+
     @Test
     void testCreate_WithValidData_ShouldCreateProduct() {
         Producto savedProducto = new Producto();
@@ -247,6 +273,117 @@ class ProductoServiceTest {
         verify(productoRepository, never()).actualizarStockConProcedimiento(anyLong(), anyInt());
     }
 
+    @Test
+    void testReservarStock_ShouldApplyAllLinesInOneStatement() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(
+                new ItemReservaDTO(2L, 1),
+                new ItemReservaDTO(1L, 2),
+                new ItemReservaDTO(2L, 3)));
+
+        when(productoRepository.registrarReserva("pedido-10")).thenReturn(Mono.just(1));
+        when(productoRepository.reservarStock(any(Long[].class), any(Integer[].class))).thenReturn(Flux.just(1L, 2L));
+
+        StepVerifier.create(productoService.reservarStock(reserva))
+                .verifyComplete();
+
+        verify(productoRepository, times(1)).reservarStock(aryEq(new Long[]{1L, 2L}), aryEq(new Integer[]{2, 4}));
+        verify(productoRepository, never()).actualizarStockConProcedimiento(anyLong(), anyInt());
+    }
+
+    @Test
+    void testReservarStock_WithInsufficientStock_ShouldFailWholeReservation() {
+        ReservaStockDTO reserva = new ReservaStockDTO(null, List.of(
+                new ItemReservaDTO(1L, 2),
+                new ItemReservaDTO(2L, 500)));
+
+        when(productoRepository.reservarStock(any(Long[].class), any(Integer[].class))).thenReturn(Flux.just(1L));
+
+        StepVerifier.create(productoService.reservarStock(reserva))
+                .expectErrorMatches(error -> error instanceof BadRequestException
+                        && error.getMessage().contains("[2]"))
+                .verify();
+
+        verify(productoRepository, never()).registrarReserva(anyString());
+    }
+
+    @Test
+    void testReservarStock_WithRepeatedReference_ShouldNotDecrementAgain() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(new ItemReservaDTO(1L, 2)));
+
+        when(productoRepository.registrarReserva("pedido-10")).thenReturn(Mono.just(0));
+
+        StepVerifier.create(productoService.reservarStock(reserva))
+                .verifyComplete();
+
+        verify(productoRepository, never()).reservarStock(any(Long[].class), any(Integer[].class));
+    }
+
+    @Test
+    void testReservarStock_WithNonPositiveQuantity_ShouldThrowException() {
+        ReservaStockDTO reserva = new ReservaStockDTO(null, List.of(new ItemReservaDTO(1L, 0)));
+
+        StepVerifier.create(productoService.reservarStock(reserva))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(productoRepository, never()).reservarStock(any(Long[].class), any(Integer[].class));
+    }
+
+    @Test
+    void testLiberarStock_WhenReservationApplied_ShouldRestoreAllLinesInOneStatement() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(
+                new ItemReservaDTO(2L, 1),
+                new ItemReservaDTO(1L, 2),
+                new ItemReservaDTO(2L, 3)));
+
+        when(productoRepository.marcarReservaLiberada("pedido-10")).thenReturn(Mono.just(1));
+        when(productoRepository.devolverStock(any(Long[].class), any(Integer[].class))).thenReturn(Mono.just(2));
+
+        StepVerifier.create(productoService.liberarStock(reserva))
+                .verifyComplete();
+
+        verify(productoRepository, times(1)).devolverStock(aryEq(new Long[]{1L, 2L}), aryEq(new Integer[]{2, 4}));
+        verify(productoRepository, never()).registrarLiberacionAnticipada(anyString());
+    }
+
+    @Test
+    void testLiberarStock_BeforeReservation_ShouldLeaveTombstoneWithoutRestoring() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(new ItemReservaDTO(1L, 2)));
+
+        when(productoRepository.marcarReservaLiberada("pedido-10")).thenReturn(Mono.just(0));
+        when(productoRepository.registrarLiberacionAnticipada("pedido-10")).thenReturn(Mono.just(1));
+
+        StepVerifier.create(productoService.liberarStock(reserva))
+                .verifyComplete();
+
+        verify(productoRepository, never()).devolverStock(any(Long[].class), any(Integer[].class));
+    }
+
+    @Test
+    void testLiberarStock_WhenAlreadyReleased_ShouldNotRestoreAgain() {
+        ReservaStockDTO reserva = new ReservaStockDTO("pedido-10", List.of(new ItemReservaDTO(1L, 2)));
+
+        when(productoRepository.marcarReservaLiberada("pedido-10")).thenReturn(Mono.just(0));
+        when(productoRepository.registrarLiberacionAnticipada("pedido-10")).thenReturn(Mono.just(0));
+
+        StepVerifier.create(productoService.liberarStock(reserva))
+                .verifyComplete();
+
+        verify(productoRepository, times(2)).marcarReservaLiberada("pedido-10");
+        verify(productoRepository, never()).devolverStock(any(Long[].class), any(Integer[].class));
+    }
+
+    @Test
+    void testLiberarStock_WithoutReference_ShouldThrowException() {
+        ReservaStockDTO reserva = new ReservaStockDTO(null, List.of(new ItemReservaDTO(1L, 2)));
+
+        StepVerifier.create(productoService.liberarStock(reserva))
+                .expectError(BadRequestException.class)
+                .verify();
+
+        verify(productoRepository, never()).devolverStock(any(Long[].class), any(Integer[].class));
+    }
+
     @Test
     void testGetProductsLowStock_ShouldReturnLowStockProducts() {
         when(productoRepository.obtenerProductosBajoStockConProcedimiento(10))